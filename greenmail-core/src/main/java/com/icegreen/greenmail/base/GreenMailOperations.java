@@ -13,6 +13,7 @@ import jakarta.mail.internet.MimeMessage;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -79,6 +80,20 @@ public interface GreenMailOperations {
      */
     boolean waitForIncomingEmail(int emailCount);
 
+    /**
+     * Non-blocking alternative to {@link #waitForIncomingEmail(long, int)}.
+     * <p>
+     * Completes once there are at least emailCount messages in any mailbox for any user.
+     * Cancel the returned future when no longer interested, for releasing the waiter.
+     *
+     * @param emailCount waits for these many emails to arrive
+     * @return the future, completing when the emails arrived.
+     * @throws UnsupportedOperationException if not supported by the implementation.
+     */
+    default CompletableFuture<Void> awaitIncomingEmail(int emailCount) {
+        throw new UnsupportedOperationException("Awaiting incoming email not supported by " + getClass());
+    }
+
     /**
      * @return Returns all messages in all folders for all users
      * {@link com.icegreen.greenmail.util.GreenMailUtil} has a bunch of static helper methods to extract body text etc.
@@ -18,11 +18,26 @@ public abstract class ConfiguredGreenMail implements GreenMailOperations {
         return this;
     }
 
+    /**
+     * Gets the configuration.
+     *
+     * @return the configuration, or null if not configured.
+     */
+    protected GreenMailConfiguration getConfiguration() {
+        return config;
+    }
+
     /**
      * This method can be used by child classes to apply the configuration that is stored in config.
      */
     protected void doConfigure() {
         if (config != null) {
+            getManagers().getImapHostManager().getStore().setRawMessageStorage(config.isRawMessageStorageEnabled());
+            getManagers().getImapHostManager().setCompressionSupported(config.isImapCompressionEnabled());
+            if (config.getAsyncDeliveryWorkers() > 0) {
+                getManagers().getSmtpManager().startAsyncDelivery(config.getAsyncDeliveryWorkers(),
+                    config.getAsyncDeliveryQueueCapacity(), config.getDeliveryBackpressure());
+            }
             for (UserBean user : config.getUsersToCreate()) {
                 setUser(user.getEmail(), user.getLogin(), user.getPassword());
             }
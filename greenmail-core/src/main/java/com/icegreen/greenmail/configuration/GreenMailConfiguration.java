@@ -1,8 +1,12 @@
 package com.icegreen.greenmail.configuration;
 
+import com.icegreen.greenmail.smtp.DeliveryBackpressure;
+
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 
 /**
  * Properties that can be defined to configure a GreenMail instance or GreenMailRule.
@@ -11,7 +15,13 @@ public class GreenMailConfiguration {
     private final List<UserBean> usersToCreate = new ArrayList<>();
     private boolean disableAuthenticationCheck = false;
     private boolean sieveIgnoreDetail = false;
+    private boolean rawMessageStorage = false;
+    private boolean imapCompression = false;
     private String preloadDir;
+    private Supplier<ExecutorService> connectionExecutor;
+    private int asyncDeliveryWorkers = 0;
+    private int asyncDeliveryQueueCapacity = 0;
+    private DeliveryBackpressure deliveryBackpressure = DeliveryBackpressure.BLOCK;
 
 
     /**
@@ -92,6 +102,47 @@ public class GreenMailConfiguration {
         return sieveIgnoreDetail;
     }
 
+    /**
+     * Stores messages as raw RFC 822 bytes, parsing them only on demand.
+     * <p>
+     * Reduces the heap used per retained message, at the cost of parsing a message again
+     * when accessed after the garbage collector dropped the parsed form.
+     *
+     * @return Modified configuration.
+     */
+    public GreenMailConfiguration withRawMessageStorage() {
+        rawMessageStorage = true;
+        return this;
+    }
+
+    /**
+     * @return true, if raw message storage is enabled.
+     *
+     * @see GreenMailConfiguration#withRawMessageStorage()
+     */
+    public boolean isRawMessageStorageEnabled() {
+        return rawMessageStorage;
+    }
+
+    /**
+     * Enables IMAP connection compression, which clients can then negotiate via COMPRESS=DEFLATE (RFC 4978).
+     *
+     * @return Modified configuration.
+     */
+    public GreenMailConfiguration withImapCompression() {
+        imapCompression = true;
+        return this;
+    }
+
+    /**
+     * @return true, if IMAP compression is enabled.
+     *
+     * @see GreenMailConfiguration#withImapCompression()
+     */
+    public boolean isImapCompressionEnabled() {
+        return imapCompression;
+    }
+
     /**
      * Configures directory path for preloading emails from filesystem.
      * @param preloadDir directory containing emails
@@ -118,4 +169,69 @@ public class GreenMailConfiguration {
     public boolean hasPreloadDir() {
         return null != preloadDir;
     }
+
+    /**
+     * Configures the executor running client connection handlers, for all servers
+     * not having an own executor configured via {@link com.icegreen.greenmail.util.ServerSetup#setConnectionExecutor(Supplier)}.
+     *
+     * @param connectionExecutor supplier of a new executor, invoked once per server start.
+     * @return Modified configuration.
+     */
+    public GreenMailConfiguration withConnectionExecutor(Supplier<ExecutorService> connectionExecutor) {
+        this.connectionExecutor = connectionExecutor;
+        return this;
+    }
+
+    /**
+     * Gets the connection executor or null if not set.
+     *
+     * @return the supplier of the connection executor.
+     */
+    public Supplier<ExecutorService> getConnectionExecutor() {
+        return connectionExecutor;
+    }
+
+    /**
+     * Delivers received SMTP messages asynchronously via a bounded queue and a pool of delivery threads,
+     * instead of delivering on the SMTP connection thread.
+     * <p>
+     * SMTP acknowledges a message once queued, so use {@link com.icegreen.greenmail.base.GreenMailOperations#waitForIncomingEmail(long, int)}
+     * before accessing received messages.
+     *
+     * @param workers       the number of delivery threads.
+     * @param queueCapacity the maximum number of queued messages.
+     * @param backpressure  the policy when the queue is full.
+     * @return Modified configuration.
+     */
+    public GreenMailConfiguration withAsyncDelivery(int workers, int queueCapacity, DeliveryBackpressure backpressure) {
+        if (workers < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Requires at least one worker and queue capacity, but got " +
+                workers + " workers and capacity " + queueCapacity);
+        }
+        this.asyncDeliveryWorkers = workers;
+        this.asyncDeliveryQueueCapacity = queueCapacity;
+        this.deliveryBackpressure = backpressure;
+        return this;
+    }
+
+    /**
+     * @return the number of asynchronous delivery threads, or 0 for synchronous delivery.
+     */
+    public int getAsyncDeliveryWorkers() {
+        return asyncDeliveryWorkers;
+    }
+
+    /**
+     * @return the asynchronous delivery queue capacity.
+     */
+    public int getAsyncDeliveryQueueCapacity() {
+        return asyncDeliveryQueueCapacity;
+    }
+
+    /**
+     * @return the policy when the asynchronous delivery queue is full.
+     */
+    public DeliveryBackpressure getDeliveryBackpressure() {
+        return deliveryBackpressure;
+    }
 }
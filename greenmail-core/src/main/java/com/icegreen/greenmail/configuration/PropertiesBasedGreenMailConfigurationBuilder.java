@@ -1,7 +1,10 @@
 package com.icegreen.greenmail.configuration;
 
+import com.icegreen.greenmail.smtp.DeliveryBackpressure;
+
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Locale;
 import java.util.Properties;
 import java.util.function.BinaryOperator;
 
@@ -21,6 +24,11 @@ import java.util.function.BinaryOperator;
  * </li>
  * <li>greenmail.preload.dir : Preloads emails from filesystem
  *     (see {@link com.icegreen.greenmail.base.GreenMailOperations#loadEmails(Path)} for expected structure)</li>
+ * <li>greenmail.store.raw : Stores messages as raw bytes, parsing them on demand (true/false)</li>
+ * <li>greenmail.imap.compress : Enables IMAP COMPRESS=DEFLATE</li>
+ * <li>greenmail.delivery.workers : Number of threads for asynchronous delivery of SMTP messages (default 0, synchronous)</li>
+ * <li>greenmail.delivery.queue : Capacity of asynchronous delivery queue (default 1000)</li>
+ * <li>greenmail.delivery.backpressure : BLOCK (default) or REJECT, if asynchronous delivery queue is full</li>
  * </ul>
  */
 public class PropertiesBasedGreenMailConfigurationBuilder {
@@ -43,6 +51,32 @@ public class PropertiesBasedGreenMailConfigurationBuilder {
 
     public static final String GREENMAIL_SIEVE_IGNORE_DETAIL = "greenmail.sieve.ignore.detail";
     public static final String GREENMAIL_PRELOAD_DIR = "greenmail.preload.dir";
+    /**
+     * Stores messages as raw bytes.
+     *
+     * @see GreenMailConfiguration#withRawMessageStorage()
+     */
+    public static final String GREENMAIL_STORE_RAW = "greenmail.store.raw";
+    /**
+     * Enables IMAP compression.
+     *
+     * @see GreenMailConfiguration#withImapCompression()
+     */
+    public static final String GREENMAIL_IMAP_COMPRESS = "greenmail.imap.compress";
+    /**
+     * Number of asynchronous delivery threads, enabling asynchronous delivery.
+     *
+     * @see GreenMailConfiguration#withAsyncDelivery(int, int, DeliveryBackpressure)
+     */
+    public static final String GREENMAIL_DELIVERY_WORKERS = "greenmail.delivery.workers";
+    /**
+     * Capacity of the asynchronous delivery queue, defaults to 1000.
+     */
+    public static final String GREENMAIL_DELIVERY_QUEUE = "greenmail.delivery.queue";
+    /**
+     * Policy when the asynchronous delivery queue is full, BLOCK (default) or REJECT.
+     */
+    public static final String GREENMAIL_DELIVERY_BACKPRESSURE = "greenmail.delivery.backpressure";
 
     /**
      * Configures how user login should be extracted from user of pattern local-part:password@domain .
@@ -84,6 +118,24 @@ public class PropertiesBasedGreenMailConfigurationBuilder {
             configuration.withSieveIgnoreDetail();
         }
 
+        String rawMessageStorage = properties.getProperty(GREENMAIL_STORE_RAW, "false");
+        if (Boolean.TRUE.toString().equalsIgnoreCase(rawMessageStorage)) {
+            configuration.withRawMessageStorage();
+        }
+
+        if (null != properties.getProperty(GREENMAIL_IMAP_COMPRESS)) {
+            configuration.withImapCompression();
+        }
+
+        int deliveryWorkers = Integer.parseInt(properties.getProperty(GREENMAIL_DELIVERY_WORKERS, "0"));
+        if (deliveryWorkers > 0) {
+            configuration.withAsyncDelivery(deliveryWorkers,
+                Integer.parseInt(properties.getProperty(GREENMAIL_DELIVERY_QUEUE, "1000")),
+                DeliveryBackpressure.valueOf(
+                    properties.getProperty(GREENMAIL_DELIVERY_BACKPRESSURE, DeliveryBackpressure.BLOCK.name())
+                        .toUpperCase(Locale.ENGLISH)));
+        }
+
         String preloadDir = properties.getProperty(GREENMAIL_PRELOAD_DIR);
         if (null != preloadDir) {
             configuration.withPreloadDir(preloadDir);
@@ -0,0 +1,101 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.imap;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Raw DEFLATE compression of an IMAP connection, as negotiated by the COMPRESS command.
+ * <p>
+ * Inflater and deflater are not ended explicitly, as other threads such as idle notifications might
+ * still write while the connection gets closed. Their native resources get released once unreachable.
+ * <p>
+ * Reference: <a href="https://tools.ietf.org/html/rfc4978">RFC 4978 - The IMAP COMPRESS Extension</a>
+ */
+final class ImapCompression {
+    private final Inflater inflater = new Inflater(true);
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    /**
+     * @param in the compressed input.
+     * @return the decompressing input.
+     */
+    InputStream inflate(InputStream in) {
+        return new InflatingInputStream(in, inflater);
+    }
+
+    /**
+     * Compresses the output, completing the compressed data on every flush.
+     *
+     * @param out        the output for compressed data.
+     * @param bufferSize the size for buffering uncompressed data.
+     * @return the compressing output.
+     */
+    OutputStream deflate(OutputStream out, int bufferSize) {
+        return new BufferedOutputStream(new DeflaterOutputStream(out, deflater, bufferSize, true), bufferSize);
+    }
+
+    /**
+     * Reports only inflated data as available, instead of {@link InflaterInputStream#available()} always
+     * reporting 1 until the end of the stream. Compressed input already received gets inflated ahead without
+     * blocking, as it may inflate to nothing, such as the empty block terminating a flush by the client.
+     */
+    private static final class InflatingInputStream extends InflaterInputStream {
+        private final byte[] inflatedAhead = new byte[512];
+        private int position;
+        private int limit;
+
+        InflatingInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater, 8192);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position < limit) {
+                final int n = Math.min(len, limit - position);
+                System.arraycopy(inflatedAhead, position, b, off, n);
+                position += n;
+                return n;
+            }
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (position < limit) {
+                return limit - position;
+            }
+            try {
+                while (!inf.finished()) {
+                    if (inf.needsInput()) {
+                        if (in.available() <= 0) {
+                            break;
+                        }
+                        fill(); // Does not block, as input is available
+                    }
+                    limit = inf.inflate(inflatedAhead);
+                    position = 0;
+                    if (limit > 0) {
+                        return limit;
+                    }
+                    if (!inf.needsInput()) {
+                        break; // Requires dictionary, not supported
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid compressed input", e);
+            }
+            return 0;
+        }
+    }
+}
@@ -22,10 +22,19 @@ import java.net.Socket;
  * @author Peter M. Goldstein &lt;farsight@alum.mit.edu&gt;
  */
 public class ImapHandler extends AbstractSocketProtocolHandler implements ImapConstants {
+    /**
+     * Responses are coalesced up to this size, before being sent without explicit flush.
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+
     private final ImapRequestHandler requestHandler = new ImapRequestHandler();
     private ImapSession session;
 
     private ImapResponse response;
+    private ImapRequestLineReader request;
+    private InputStream socketInput;
+    private OutputStream socketOutput;
+    private volatile ImapCompression compression;
 
     final UserManager userManager;
     private final ImapHostManager imapHost;
@@ -37,29 +46,40 @@ public class ImapHandler extends AbstractSocketProtocolHandler implements ImapCo
     }
 
     public void forceConnectionClose(final String message) {
-        response.byeResponse(message);
+        final ImapResponse connectionResponse = response;
+        if (null != connectionResponse) {
+            connectionResponse.byeResponse(message);
+        }
         close();
     }
 
     @Override
     public void run() {
         // Closed automatically when socket is closed via #close()
-        try (InputStream ins = prepareInputStream();
-             OutputStream outs = prepareOutputStream()
+        try (InputStream ins = new BufferedInputStream(socket.getInputStream(), 512);
+             OutputStream outs = new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE)
         ) {
-            response = new ImapResponse(outs);
+            socketInput = ins;
+            socketOutput = outs;
+            // Reader and response are reused for all commands of this connection
+            final OutputStream output = prepareOutputStream(outs);
+            request = new ImapRequestLineReader(prepareInputStream(ins), output);
+            final ImapResponse connectionResponse = new ImapResponse(output);
+            response = connectionResponse;
 
             // Write welcome message
             String responseBuffer = VERSION + " Server GreenMail v" +
                     BuildInfo.INSTANCE.getProjectVersion() + " ready";
-            response.okResponse(null, responseBuffer);
+            connectionResponse.okResponse(null, responseBuffer);
 
             session = new ImapSessionImpl(imapHost,
                     userManager,
                     this,
                     socket.getInetAddress().getHostAddress());
 
-            while (requestHandler.handleRequest(ins, outs, session)) {
+            // Stops once the client can not receive responses anymore
+            while (!connectionResponse.checkError()
+                && requestHandler.handleRequest(request, connectionResponse, session)) {
                 // Loop ...
             }
         } catch (Exception e) {
@@ -69,27 +89,62 @@ public class ImapHandler extends AbstractSocketProtocolHandler implements ImapCo
         }
     }
 
-    private InputStream prepareInputStream() throws IOException {
-        InputStream is = new BufferedInputStream(socket.getInputStream(), 512);
+    private InputStream prepareInputStream(InputStream is) {
         if (log.isDebugEnabled()) {
             is = new LoggingInputStream(is, "C: ");
         }
         return is;
     }
 
-    private OutputStream prepareOutputStream() throws IOException {
-        OutputStream outputStream = new BufferedOutputStream(socket.getOutputStream(), 1024);
+    private OutputStream prepareOutputStream(OutputStream outputStream) {
         if (log.isDebugEnabled()) {
             outputStream = new LoggingOutputStream(outputStream, "S: ");
         }
         return outputStream;
     }
 
+    /**
+     * Compresses all further input and output of this connection.
+     * <p>
+     * Must be invoked by the connection thread, after the response completing the COMPRESS command.
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc4978">RFC 4978 - The IMAP COMPRESS Extension</a>
+     */
+    void startCompression() {
+        if (null != compression) {
+            throw new IllegalStateException("Compression already active");
+        }
+        // Completion of COMPRESS command must be sent uncompressed
+        response.flush();
+
+        final ImapCompression connectionCompression = new ImapCompression();
+        final byte[] pending = request.takeBufferedInput();
+        final InputStream compressedInput = pending.length == 0 ? socketInput :
+                new SequenceInputStream(new ByteArrayInputStream(pending), socketInput);
+        final OutputStream output = prepareOutputStream(
+                connectionCompression.deflate(socketOutput, OUTPUT_BUFFER_SIZE));
+        request.setStreams(prepareInputStream(connectionCompression.inflate(compressedInput)), output);
+        response.setOutput(output);
+        compression = connectionCompression;
+    }
+
+    /**
+     * @return true, if compression was started.
+     */
+    boolean isCompressionActive() {
+        return null != compression;
+    }
+
     /**
      * Resets the handler data to a basic state.
      */
     @Override
     public void close() {
+        // Send pending responses, such as a final BYE
+        final ImapResponse pendingResponse = response;
+        if (null != pendingResponse) {
+            pendingResponse.flush();
+        }
         super.close();
 
         // Clear user data
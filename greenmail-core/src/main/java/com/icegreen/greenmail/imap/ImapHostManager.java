@@ -276,5 +276,26 @@ public interface ImapHostManager {
      * @return the store.
      */
     Store getStore();
+
+    /**
+     * Checks if clients may compress IMAP connections, via COMPRESS=DEFLATE.
+     *
+     * @return true, if supported. Not supported by default.
+     */
+    default boolean isCompressionSupported() {
+        return false;
+    }
+
+    /**
+     * Enables or disables support of COMPRESS=DEFLATE.
+     *
+     * @param compressionSupported true, if supported.
+     * @throws UnsupportedOperationException if enabling and not supported by the implementation.
+     */
+    default void setCompressionSupported(boolean compressionSupported) {
+        if (compressionSupported) {
+            throw new UnsupportedOperationException("Compression not supported by " + getClass());
+        }
+    }
 }
 
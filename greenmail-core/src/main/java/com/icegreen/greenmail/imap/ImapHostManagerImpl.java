@@ -25,6 +25,7 @@ public class ImapHostManagerImpl
 
     private final Store store;
     private final MailboxSubscriptions subscriptions;
+    private volatile boolean compressionSupported;
 
     /**
      * Hack constructor which creates an in-memory store, and creates a console logger.
@@ -237,9 +238,8 @@ public class ImapHostManagerImpl
     }
 
     /**
-     * Partial implementation of list functionality.
-     * TODO: Handle wildcards anywhere in store pattern
-     * (currently only supported as last character of pattern)
+     * Lists the mailboxes matching the pattern, with wildcards anywhere in the pattern.
+     * Filters subscribed mailboxes while listing.
      *
      * @see com.icegreen.greenmail.imap.ImapHostManager#listMailboxes
      */
@@ -250,15 +250,14 @@ public class ImapHostManagerImpl
         List<MailFolder> mailboxes = new ArrayList<>();
         String qualifiedPattern = getQualifiedMailboxName(user, mailboxPattern);
 
-        for (MailFolder folder : store.listMailboxes(qualifiedPattern)) {
-            if (subscribedOnly && !subscriptions.isSubscribed(user, folder)) {
-                // if not subscribed
-                folder = null;
-            }
-
-            if (folder != null) {
-                mailboxes.add(folder);
-            }
+        if (subscribedOnly) {
+            store.listMailboxes(qualifiedPattern, folder -> {
+                if (subscriptions.isSubscribed(user, folder)) {
+                    mailboxes.add(folder);
+                }
+            });
+        } else {
+            store.listMailboxes(qualifiedPattern, mailboxes::add);
         }
 
         return mailboxes;
@@ -321,7 +320,7 @@ public class ImapHostManagerImpl
      * TODO persist
      */
     private static class MailboxSubscriptions {
-        private final Map<String, List<String>> userSubs = new ConcurrentHashMap<>();
+        private final Map<String, Set<String>> userSubs = new ConcurrentHashMap<>();
 
         /**
          * Subscribes the user to the store.
@@ -356,8 +355,8 @@ public class ImapHostManagerImpl
             return getUserSubs(user).contains(folder.getFullName());
         }
 
-        private List<String> getUserSubs(GreenMailUser user) {
-            return userSubs.computeIfAbsent(user.getLogin(), k -> new ArrayList<>());
+        private Set<String> getUserSubs(GreenMailUser user) {
+            return userSubs.computeIfAbsent(user.getLogin(), k -> ConcurrentHashMap.newKeySet());
         }
     }
 
@@ -365,4 +364,14 @@ public class ImapHostManagerImpl
     public Store getStore() {
         return store;
     }
+
+    @Override
+    public boolean isCompressionSupported() {
+        return compressionSupported;
+    }
+
+    @Override
+    public void setCompressionSupported(boolean compressionSupported) {
+        this.compressionSupported = compressionSupported;
+    }
 }
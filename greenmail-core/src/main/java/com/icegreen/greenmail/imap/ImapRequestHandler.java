@@ -12,9 +12,6 @@ import com.icegreen.greenmail.imap.commands.ImapCommandFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.InputStream;
-import java.io.OutputStream;
-
 /**
  * @author Darrell DeBoer <darrell@apache.org>
  */
@@ -32,24 +29,22 @@ public final class ImapRequestHandler {
      * to parse the raw command string to determine exactly which handler should
      * be called.  It returns true if expecting additional commands, false otherwise.
      *
-     * @param input stream containing commands
-     * @param output stream for response
+     * @param request reader for commands, reused for all commands of the connection
+     * @param response writer for responses, reused for all commands of the connection
      * @param session current IMAP session (state)
      * @return whether additional commands are expected.
      */
-    public boolean handleRequest(InputStream input,
-                                 OutputStream output,
+    public boolean handleRequest(ImapRequestLineReader request,
+                                 ImapResponse response,
                                  ImapSession session)
             throws ProtocolException {
-        ImapRequestLineReader request = new ImapRequestLineReader(input, output);
         try {
             request.nextChar();
         } catch (ProtocolException e) {
             return false;
         }
 
-        ImapResponse response = new ImapResponse(output);
-
+        response.setTag(ImapConstants.UNTAGGED);
         doProcessRequest(request, response, session);
 
         // Consume the rest of the line, throwing away any extras. This allows us
@@ -9,25 +9,43 @@ package com.icegreen.greenmail.imap;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
 
 /**
  * Wraps the client input reader with a bunch of convenience methods, allowing lookahead=1
  * on the underlying character stream.
- * TODO need to look at encoding, and whether we should be wrapping an InputStream instead.
+ * <p>
+ * Reads the input in chunks into a reusable buffer window, so that tokens can be scanned
+ * without a stream call per character. As the window may already contain subsequent
+ * pipelined commands, use a single reader per connection.
+ * <p>
+ * Pending responses get flushed before blocking on the client input, so that responses
+ * to pipelined commands are sent together. See
+ * <a href="https://tools.ietf.org/html/rfc3501#section-5.5">RFC 3501 - Multiple Commands in Progress</a>.
  *
  * @author Darrell DeBoer <darrell@apache.org>
  * @version $Revision: 109034 $
  */
 public class ImapRequestLineReader {
-    private final InputStream input;
-    private final OutputStream output;
+    static final int DEFAULT_BUFFER_SIZE = 8192;
 
-    private boolean nextSeen = false;
-    private char nextChar; // unknown
+    private InputStream input;
+    private OutputStream output;
+
+    private final byte[] buffer;
+    private int position;
+    private int limit;
 
     public ImapRequestLineReader(InputStream input, OutputStream output) {
+        this(input, output, DEFAULT_BUFFER_SIZE);
+    }
+
+    ImapRequestLineReader(InputStream input, OutputStream output, int bufferSize) {
         this.input = input;
         this.output = output;
+        this.buffer = new byte[bufferSize];
     }
 
     /**
@@ -61,20 +79,102 @@ public class ImapRequestLineReader {
      * @throws ProtocolException If the end-of-stream is reached.
      */
     public char nextChar() throws ProtocolException {
-        if (!nextSeen) {
+        if (position == limit) {
+            fill();
+        }
+        return (char) (buffer[position] & 0xff);
+    }
+
+    /**
+     * Consumes the characters of a word, up to the next whitespace or the first character
+     * not accepted by the given filter. The terminating character is not consumed.
+     *
+     * @param validChar the filter for accepted characters.
+     * @return the consumed characters, possibly empty.
+     * @throws ProtocolException If the end-of-stream is reached.
+     */
+    public String consumeWordChars(IntPredicate validChar) throws ProtocolException {
+        StringBuilder overflow = null;
+        while (true) {
+            if (position == limit) {
+                fill();
+            }
+            final int start = position;
+            while (position < limit && isWordChar(buffer[position] & 0xff, validChar)) {
+                position++;
+            }
+            if (position < limit) {
+                final String chars = new String(buffer, start, position - start, StandardCharsets.ISO_8859_1);
+                return null == overflow ? chars : overflow.append(chars).toString();
+            }
+            // Word continues beyond the buffer window
+            if (null == overflow) {
+                overflow = new StringBuilder();
+            }
+            overflow.append(new String(buffer, start, limit - start, StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    private static boolean isWordChar(int chr, IntPredicate validChar) {
+        return chr != ' ' && chr != '\r' && chr != '\n' && chr != '\t' && validChar.test(chr);
+    }
+
+    private void fill() throws ProtocolException {
+        flushIfNoPendingInput();
+        try {
+            int read;
+            do {
+                read = input.read(buffer, 0, buffer.length);
+            } while (read == 0);
+            if (read == -1) {
+                throw new ProtocolException("End of stream");
+            }
+            position = 0;
+            limit = read;
+        } catch (IOException e) {
+            throw new ProtocolException("Error reading from stream.", e);
+        }
+    }
+
+    /**
+     * Takes the buffered input following the current line, for passing it on when switching streams.
+     * The end of the current line stays buffered, for consuming it as usual.
+     *
+     * @return the bytes following the current line, possibly empty.
+     */
+    byte[] takeBufferedInput() {
+        int lineEnd = position;
+        while (lineEnd < limit && buffer[lineEnd] != '\n') {
+            lineEnd++;
+        }
+        final int pendingStart = Math.min(lineEnd + 1, limit);
+        final byte[] pending = Arrays.copyOfRange(buffer, pendingStart, limit);
+        limit = pendingStart;
+        return pending;
+    }
+
+    /**
+     * Switches the streams, such as for compression.
+     *
+     * @param input  the new input.
+     * @param output the new output.
+     * @see #takeBufferedInput()
+     */
+    void setStreams(InputStream input, OutputStream output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    private void flushIfNoPendingInput() throws ProtocolException {
+        if (null != output) {
             try {
-                final int read = input.read();
-                final char c = (char) read;
-                if (read == -1) {
-                    throw new ProtocolException("End of stream");
+                if (input.available() == 0) {
+                    output.flush();
                 }
-                nextChar = c;
-                nextSeen = true;
             } catch (IOException e) {
-                throw new ProtocolException("Error reading from stream.", e);
+                throw new ProtocolException("Can not flush response.", e);
             }
         }
-        return nextChar;
     }
 
     /**
@@ -116,8 +216,7 @@ public class ImapRequestLineReader {
      */
     public char consume() throws ProtocolException {
         char current = nextChar();
-        nextSeen = false;
-        nextChar = 0;
+        position++;
         return current;
     }
 
@@ -130,7 +229,10 @@ public class ImapRequestLineReader {
      * @throws ProtocolException If a char can't be read into each array element.
      */
     public void read(byte[] holder) throws ProtocolException {
-        int readTotal = 0;
+        // Buffered bytes first
+        int readTotal = Math.min(limit - position, holder.length);
+        System.arraycopy(buffer, position, holder, 0, readTotal);
+        position += readTotal;
         try {
             while (readTotal < holder.length) {
                 int count = input.read(holder, readTotal, holder.length - readTotal);
@@ -139,9 +241,6 @@ public class ImapRequestLineReader {
                 }
                 readTotal += count;
             }
-            // Unset the next char.
-            nextSeen = false;
-            nextChar = 0;
         } catch (IOException e) {
             throw new ProtocolException("Error reading from stream.", e);
         }
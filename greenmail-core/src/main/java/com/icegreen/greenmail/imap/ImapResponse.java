@@ -9,21 +9,43 @@ package com.icegreen.greenmail.imap;
 import com.icegreen.greenmail.imap.commands.ImapCommand;
 import com.icegreen.greenmail.store.MessageFlags;
 import com.icegreen.greenmail.util.EncodingUtil;
-import com.icegreen.greenmail.util.InternetPrintWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import jakarta.mail.Flags;
+import java.io.IOException;
 import java.io.OutputStream;
 
 /**
  * Class providing methods to send response messages from the server
  * to the client.
+ * <p>
+ * Responses are written as bytes directly to the output, and literals are copied as is.
+ * Like a print writer, write errors are remembered instead of thrown, see {@link #checkError()}.
+ * <p>
+ * Response lines are not flushed individually, but coalesced in the buffered connection output.
+ * The output gets flushed once the request reader runs out of pipelined input, or explicitly via {@link #flush()}.
  */
 public class ImapResponse implements ImapConstants {
-    private final InternetPrintWriter writer;
+    private static final Logger log = LoggerFactory.getLogger(ImapResponse.class);
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private volatile OutputStream output;
     private String tag = UNTAGGED;
+    private boolean error;
+    private boolean firstFetchItem;
 
     public ImapResponse(OutputStream output) {
-        this.writer = InternetPrintWriter.createForEncoding(output, true, EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
+        this.output = output;
+    }
+
+    /**
+     * Switches the output, such as for compression.
+     *
+     * @param output the new output.
+     */
+    void setOutput(OutputStream output) {
+        this.output = output;
     }
 
     public void setTag(String tag) {
@@ -162,6 +184,40 @@ public class ImapResponse implements ImapConstants {
         end();
     }
 
+    /**
+     * Writes an untagged ESEARCH response, correlated to the current command by tag.
+     *
+     * @param uid        true, if reporting UIDs.
+     * @param returnData the result data, such as <code>" MIN 2 COUNT 3"</code>, with leading space.
+     * @see <a href="https://tools.ietf.org/html/rfc4731#section-3.2">RFC 4731 - ESEARCH response</a>
+     */
+    public void esearchResponse(boolean uid, String returnData) {
+        untagged();
+        message("ESEARCH");
+        message("(TAG \"" + tag + "\")");
+        if (uid) {
+            message("UID");
+        }
+        write(returnData);
+        end();
+    }
+
+    /**
+     * Writes an untagged VANISHED response, reporting expunged messages by UID.
+     *
+     * @param uidSet  the UIDs as sequence set.
+     * @param earlier true, if reporting messages expunged before the current command (QRESYNC).
+     */
+    public void vanishedResponse(String uidSet, boolean earlier) {
+        untagged();
+        message("VANISHED");
+        if (earlier) {
+            message("(EARLIER)");
+        }
+        message(uidSet);
+        end();
+    }
+
     public void fetchResponse(int msn, String msgData) {
         untagged();
         message(msn);
@@ -170,6 +226,101 @@ public class ImapResponse implements ImapConstants {
         end();
     }
 
+    /**
+     * Starts streaming a FETCH response, to be continued by fetch items and
+     * completed by {@link #fetchResponseEnd()}.
+     * <pre>     * 1 FETCH (</pre>
+     *
+     * @param msn the message sequence number.
+     */
+    public void fetchResponseStart(int msn) {
+        untagged();
+        message(msn);
+        message("FETCH");
+        write(" (");
+        firstFetchItem = true;
+    }
+
+    /**
+     * Writes the name of a fetch item, separated from any previous item.
+     * A value or literal must follow, unless the name includes the value.
+     *
+     * @param name the name, such as FLAGS or BODY[TEXT].
+     */
+    public void fetchItem(String name) {
+        if (firstFetchItem) {
+            firstFetchItem = false;
+        } else {
+            write(SP);
+        }
+        write(name);
+    }
+
+    /**
+     * Writes a fetch item with given value.
+     *
+     * @param name  the name.
+     * @param value the value, such as a number or a parenthesized list.
+     */
+    public void fetchItem(String name, String value) {
+        fetchItem(name);
+        write(SP);
+        write(value);
+    }
+
+    /**
+     * Writes a fetch item with a pre-encoded value, such as a cached envelope.
+     *
+     * @param name  the name.
+     * @param value the encoded value.
+     */
+    public void fetchItem(String name, byte[] value) {
+        fetchItem(name);
+        write(SP);
+        write(value, 0, value.length);
+    }
+
+    /**
+     * Writes a literal, preceded by a space.
+     * <pre>      {length}CRLF bytes</pre>
+     *
+     * @param bytes  the source.
+     * @param offset the offset of the literal in the source.
+     * @param length the length of the literal.
+     */
+    public void literal(byte[] bytes, int offset, int length) {
+        literal(length, out -> out.write(bytes, offset, length));
+    }
+
+    /**
+     * Writes a literal, preceded by a space, with the content written by given writer.
+     * Avoids copying the content, for example when writing from stored message bytes.
+     *
+     * @param length  the exact number of bytes written by the content writer.
+     * @param content writes the content.
+     */
+    public void literal(long length, LiteralContent content) {
+        write(" {");
+        write(Long.toString(length));
+        write("}");
+        write(CRLF, 0, CRLF.length);
+        if (!error) {
+            try {
+                content.writeTo(output);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    /**
+     * Completes a FETCH response started by {@link #fetchResponseStart(int)}.
+     */
+    public void fetchResponseEnd() {
+        write(")");
+        end();
+    }
+
     public void commandResponse(ImapCommand command, String message) {
         untagged();
         commandName(command);
@@ -206,42 +357,84 @@ public class ImapResponse implements ImapConstants {
     }
 
     private void untagged() {
-        writer.print(UNTAGGED);
+        write(UNTAGGED);
     }
 
     private void tag() {
-        writer.print(tag);
+        write(tag);
     }
 
     private void commandName(ImapCommand command) {
         String name = command.getName();
-        writer.print(SP);
-        writer.print(name);
+        write(SP);
+        write(name);
     }
 
     private void message(String message) {
         if (message != null && !message.isEmpty()) {
-            writer.print(SP);
-            writer.print(message);
+            write(SP);
+            write(message);
         }
     }
 
     private void message(int number) {
-        writer.print(SP);
-        writer.print(number);
+        write(SP);
+        write(Integer.toString(number));
     }
 
     private void responseCode(String responseCode) {
         if (responseCode != null) {
-            writer.print(" [");
-            writer.print(responseCode);
-            writer.print("]");
+            write(" [");
+            write(responseCode);
+            write("]");
         }
     }
 
     private void end() {
-        writer.println();
-        writer.flush();
+        write(CRLF, 0, CRLF.length);
+    }
+
+    /**
+     * Flushes the written responses, for responses not triggered by a client request
+     * such as updates while idling.
+     */
+    public void flush() {
+        if (!error) {
+            try {
+                output.flush();
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    private void write(String text) {
+        final byte[] bytes = text.getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
+        write(bytes, 0, bytes.length);
+    }
+
+    private void write(byte[] bytes, int offset, int length) {
+        if (!error) {
+            try {
+                output.write(bytes, offset, length);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    private void failed(IOException e) {
+        error = true;
+        log.debug("Can not write response", e);
+    }
+
+    /**
+     * Checks if writing a response failed, for example due to a closed connection.
+     *
+     * @return true, if writing failed.
+     */
+    public boolean checkError() {
+        return error;
     }
 
     public void permanentFlagsResponse(Flags flags) {
@@ -250,4 +443,16 @@ public class ImapResponse implements ImapConstants {
         responseCode("PERMANENTFLAGS " + MessageFlags.format(flags));
         end();
     }
+
+    /**
+     * Writes the content of a literal.
+     */
+    @FunctionalInterface
+    public interface LiteralContent {
+        /**
+         * @param out the output, which must not be closed.
+         * @throws IOException on write error.
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
 }
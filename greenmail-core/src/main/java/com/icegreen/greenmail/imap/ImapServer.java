@@ -26,6 +26,11 @@ public final class ImapServer extends AbstractServer {
         return new ImapHandler(managers.getUserManager(), managers.getImapHostManager(), clientSocket);
     }
 
+    @Override
+    protected String getConnectionRefusedResponse() {
+        return "* BYE Service not available, too many connections";
+    }
+
     @Override
     public IMAPStore createStore() throws NoSuchProviderException {
         return (IMAPStore) super.createStore();
@@ -40,6 +40,22 @@ public interface ImapSession {
      */
     void closeConnection(String byeMessage);
 
+    /**
+     * Compresses the connection, once the COMPRESS command completed.
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc4978">RFC 4978 - The IMAP COMPRESS Extension</a>
+     */
+    default void startCompression() {
+        throw new UnsupportedOperationException("Compression not supported by " + getClass());
+    }
+
+    /**
+     * @return true, if the connection is compressed.
+     */
+    default boolean isCompressionActive() {
+        return false;
+    }
+
     /**
      * Provides the Imap host for this server, which is used for all access to mail
      * storage and subscriptions.
@@ -108,4 +124,38 @@ public interface ImapSession {
 
     void unsolicitedResponses(ImapResponse request, boolean omitExpunged) throws FolderException;
 
+    /**
+     * Checks if mod-sequences are reported, as enabled by any CONDSTORE enabling command.
+     *
+     * @return true, if enabled.
+     * @see <a href="https://tools.ietf.org/html/rfc7162#section-3.1">RFC 7162 - CONDSTORE</a>
+     */
+    default boolean isCondstoreEnabled() {
+        return false;
+    }
+
+    /**
+     * Enables CONDSTORE for the rest of the session. Ignored by default.
+     */
+    default void enableCondstore() {
+        // Not supported
+    }
+
+    /**
+     * Checks if expunged messages are reported as VANISHED, as enabled by ENABLE QRESYNC.
+     *
+     * @return true, if enabled.
+     * @see <a href="https://tools.ietf.org/html/rfc7162#section-3.2">RFC 7162 - QRESYNC</a>
+     */
+    default boolean isQresyncEnabled() {
+        return false;
+    }
+
+    /**
+     * Enables QRESYNC, including CONDSTORE, for the rest of the session. Ignored by default.
+     */
+    default void enableQresync() {
+        // Not supported
+    }
+
 }
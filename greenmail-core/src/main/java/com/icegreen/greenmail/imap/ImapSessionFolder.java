@@ -12,6 +12,8 @@ import com.icegreen.greenmail.mail.MovingMessage;
 import com.icegreen.greenmail.store.FolderException;
 import com.icegreen.greenmail.store.FolderListener;
 import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.store.MessageToAppend;
+import com.icegreen.greenmail.store.SequencedMessage;
 import com.icegreen.greenmail.store.StoredMessage;
 import jakarta.mail.Flags;
 import jakarta.mail.Message;
@@ -27,7 +29,9 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
     private ImapSession session;
     private boolean readonly;
     private volatile boolean sizeChanged;
-    private final List<Integer> expungedMsns = Collections.synchronizedList(new LinkedList<>());
+    private final List<Integer> expungedMsns = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> expungedUids = new ArrayList<>(); // Guarded by expungedMsns
+    private volatile long[] searchResult = new long[0];
     private final Map<Integer, FlagUpdate> modifiedFlags = Collections.synchronizedMap(new TreeMap<>());
 
     public ImapSessionFolder(MailFolder folder, ImapSession session, boolean readonly) {
@@ -45,14 +49,11 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
 
     @Override
     public int getMsn(long uid) throws FolderException {
-        long[] uids = folder.getMessageUids();
-        for (int i = 0; i < uids.length; i++) {
-            long messageUid = uids[i];
-            if (uid == messageUid) {
-                return i + 1;
-            }
+        try {
+            return folder.getMsn(uid);
+        } catch (FolderException e) {
+            throw new FolderException("No such message with uid " + uid + " in folder " + folder.getName(), e);
         }
-        throw new FolderException("No such message with uid " + uid + " in folder " + folder.getName());
     }
 
     @Override
@@ -70,6 +71,11 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         return folder.getMessages();
     }
 
+    @Override
+    public List<SequencedMessage> getMessages(IdRange[] idSet, boolean useUids) {
+        return folder.getMessages(idSet, useUids);
+    }
+
     @Override
     public List<StoredMessage> getNonDeletedMessages() {
         return folder.getNonDeletedMessages();
@@ -87,6 +93,7 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
                 expungedMsnsArray[i] = msn;
             }
             this.expungedMsns.clear();
+            this.expungedUids.clear();
 
             // TODO - renumber any cached ids (for now we assume the modifiedFlags has been cleared)\
             if (!(modifiedFlags.isEmpty() && !sizeChanged)) {
@@ -96,6 +103,24 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         }
     }
 
+    /**
+     * Gets the UIDs of messages expunged since last call, for reporting as VANISHED (QRESYNC).
+     *
+     * @return the UIDs, in ascending order.
+     */
+    public long[] getVanished() {
+        synchronized (expungedMsns) {
+            long[] uids = new long[expungedUids.size()];
+            for (int i = 0; i < uids.length; i++) {
+                uids[i] = expungedUids.get(i);
+            }
+            expungedMsns.clear();
+            expungedUids.clear();
+            Arrays.sort(uids);
+            return uids;
+        }
+    }
+
     public List<ImapSessionFolder.FlagUpdate> getFlagUpdates() {
         if (modifiedFlags.isEmpty()) {
             return Collections.emptyList();
@@ -113,6 +138,24 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         }
     }
 
+    @Override
+    public void expunged(int msn, long uid) {
+        synchronized (expungedMsns) {
+            expungedMsns.add(msn);
+            expungedUids.add(uid);
+        }
+    }
+
+    @Override
+    public void expunged(int[] msns, long[] uids) {
+        synchronized (expungedMsns) {
+            for (int i = 0; i < msns.length; i++) {
+                expungedMsns.add(msns[i]);
+                expungedUids.add(uids[i]);
+            }
+        }
+    }
+
     @Override
     public void added(int msn) {
         sizeChanged = true;
@@ -124,6 +167,12 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         modifiedFlags.put(msn, new FlagUpdate(msn, uid, flags));
     }
 
+    @Override
+    public void flagsUpdated(int msn, Flags flags, Long uid, long modSeq) {
+        // This will overwrite any earlier changes
+        modifiedFlags.put(msn, new FlagUpdate(msn, uid, flags, modSeq));
+    }
+
     @Override
     public void mailboxDeleted() {
         session.closeConnection("Mailbox " + folder.getName() + " has been deleted");
@@ -176,11 +225,13 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
      */
     private int correctForExpungedMessages(int absoluteMsn) {
         int correctedMsn = absoluteMsn;
-        // Loop through the expunged list backwards, adjusting the msn as we go.
-        for (int i = expungedMsns.size() - 1; i >= 0; i--) {
-            int expunged = expungedMsns.get(i);
-            if (expunged <= absoluteMsn) {
-                correctedMsn++;
+        synchronized (expungedMsns) {
+            // Loop through the expunged list backwards, adjusting the msn as we go.
+            for (int i = expungedMsns.size() - 1; i >= 0; i--) {
+                int expunged = expungedMsns.get(i);
+                if (expunged <= absoluteMsn) {
+                    correctedMsn++;
+                }
             }
         }
         return correctedMsn;
@@ -191,6 +242,39 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         return folder.isSelectable();
     }
 
+    @Override
+    public long getHighestModSeq() {
+        return folder.getHighestModSeq();
+    }
+
+    @Override
+    public long[] getExpungedUids(long modSeq) {
+        return folder.getExpungedUids(modSeq);
+    }
+
+    /**
+     * Gets the UIDs vanished since given mod-sequence, for reporting VANISHED (EARLIER).
+     * <p>
+     * If expunges since the mod-sequence are no longer remembered, all UIDs of given ranges
+     * which no longer exist are reported. RFC 7162 allows this, as clients ignore unknown UIDs.
+     *
+     * @param modSeq    the mod-sequence known by the client.
+     * @param uidRanges the UIDs of interest.
+     * @return the vanished UIDs as sequence set, or null if none.
+     * @see <a href="https://tools.ietf.org/html/rfc7162#section-3.2.5.2">RFC 7162 - QRESYNC without full expunge history</a>
+     */
+    public String getVanished(long modSeq, IdRange[] uidRanges) {
+        final long[] expunged = getExpungedUids(modSeq);
+        final IdRange[] vanished;
+        if (null != expunged) {
+            vanished = IdRange.rangesOf(IdRange.retainUids(expunged, uidRanges));
+        } else {
+            final long maxUid = getUIDNext() - 1; // Before UIDs, so that appended messages are out of range
+            vanished = IdRange.missingUids(uidRanges, getMessageUids(), maxUid);
+        }
+        return vanished.length > 0 ? IdRange.idRangesToString(vanished) : null;
+    }
+
     @Override
     public int getUnseenCount() {
         return folder.getUnseenCount();
@@ -201,6 +285,11 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         return folder.appendMessage(message, flags, receivedDate);
     }
 
+    @Override
+    public long[] appendMessages(List<MessageToAppend> messages) {
+        return folder.appendMessages(messages);
+    }
+
     @Override
     public void store(MovingMessage mail) throws Exception {
         folder.store(mail);
@@ -236,6 +325,41 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         return folder.search(searchTerm);
     }
 
+    @Override
+    public List<SequencedMessage> searchMessages(SearchTerm searchTerm) {
+        return folder.searchMessages(searchTerm);
+    }
+
+    /**
+     * Saves a search result, for later reference as <code>$</code>.
+     * <p>
+     * See https://tools.ietf.org/html/rfc5182
+     *
+     * @param uids the UIDs of the matching messages, in ascending order.
+     */
+    public void saveSearchResult(long[] uids) {
+        searchResult = uids;
+    }
+
+    /**
+     * Gets the saved search result. Expunged messages are no longer included.
+     *
+     * @param useUids true, for UIDs instead of message sequence numbers.
+     * @return the ranges of the saved result, empty if nothing was saved.
+     */
+    public IdRange[] getSearchResult(boolean useUids) {
+        IdRange[] uidRanges = IdRange.rangesOf(searchResult);
+        if (useUids || uidRanges.length == 0) {
+            return uidRanges;
+        }
+        List<SequencedMessage> messages = folder.getMessages(uidRanges, true);
+        long[] msns = new long[messages.size()];
+        for (int i = 0; i < msns.length; i++) {
+            msns[i] = messages.get(i).getMsn();
+        }
+        return IdRange.rangesOf(msns);
+    }
+
     @Override
     public long copyMessage(long uid, MailFolder toFolder) throws FolderException {
         return folder.copyMessage(uid, toFolder);
@@ -266,6 +390,28 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         folder.replaceFlags(flags, uid, silentListener, addUid);
     }
 
+    @Override
+    public void setFlags(Flags flags, boolean value, IdRange[] idSet, boolean useUids, FolderListener silentListener) {
+        folder.setFlags(flags, value, idSet, useUids, silentListener);
+    }
+
+    @Override
+    public void replaceFlags(Flags flags, IdRange[] idSet, boolean useUids, FolderListener silentListener) {
+        folder.replaceFlags(flags, idSet, useUids, silentListener);
+    }
+
+    @Override
+    public List<SequencedMessage> setFlags(Flags flags, boolean value, IdRange[] idSet, boolean useUids,
+                                           long unchangedSince, FolderListener silentListener) {
+        return folder.setFlags(flags, value, idSet, useUids, unchangedSince, silentListener);
+    }
+
+    @Override
+    public List<SequencedMessage> replaceFlags(Flags flags, IdRange[] idSet, boolean useUids,
+                                               long unchangedSince, FolderListener silentListener) {
+        return folder.replaceFlags(flags, idSet, useUids, unchangedSince, silentListener);
+    }
+
     @Override
     public void deleteAllMessages() {
         folder.deleteAllMessages();
@@ -320,11 +466,17 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         private int msn;
         private Long uid;
         private Flags flags;
+        private long modSeq;
 
         public FlagUpdate(int msn, Long uid, Flags flags) {
+            this(msn, uid, flags, 0L);
+        }
+
+        public FlagUpdate(int msn, Long uid, Flags flags, long modSeq) {
             this.msn = msn;
             this.uid = uid;
             this.flags = flags;
+            this.modSeq = modSeq;
         }
 
         public int getMsn() {
@@ -338,6 +490,13 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         public Flags getFlags() {
             return flags;
         }
+
+        /**
+         * @return the mod-sequence of the update, or 0 if unknown.
+         */
+        public long getModSeq() {
+            return modSeq;
+        }
     }
 
 }
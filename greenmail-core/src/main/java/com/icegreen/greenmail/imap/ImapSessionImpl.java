@@ -6,9 +6,11 @@
  */
 package com.icegreen.greenmail.imap;
 
+import com.icegreen.greenmail.imap.commands.IdRange;
 import com.icegreen.greenmail.store.FolderException;
 import com.icegreen.greenmail.store.MailFolder;
 import com.icegreen.greenmail.store.MessageFlags;
+import com.icegreen.greenmail.store.SequencedMessage;
 import com.icegreen.greenmail.user.GreenMailUser;
 import com.icegreen.greenmail.user.UserManager;
 
@@ -22,6 +24,8 @@ public final class ImapSessionImpl implements ImapSession {
     private ImapSessionState state = ImapSessionState.NON_AUTHENTICATED;
     private GreenMailUser user = null;
     private ImapSessionFolder selectedMailbox = null;
+    private boolean condstoreEnabled;
+    private boolean qresyncEnabled;
 
     private String clientAddress;
 
@@ -68,23 +72,64 @@ public final class ImapSessionImpl implements ImapSession {
                 Flags updatedFlags = update.getFlags();
                 StringBuilder out = new StringBuilder("FLAGS ");
                 out.append(MessageFlags.format(updatedFlags));
-                if (update.getUid() != null) {
+                Long uid = update.getUid();
+                if (uid == null && qresyncEnabled) {
+                    // QRESYNC requires UID in all FETCH responses
+                    uid = getUid(selected, msn);
+                }
+                if (uid != null) {
                     out.append(" UID ");
-                    out.append(update.getUid());
+                    out.append(uid);
+                }
+                if (condstoreEnabled && update.getModSeq() > 0) {
+                    out.append(" MODSEQ (").append(update.getModSeq()).append(')');
                 }
                 response.fetchResponse(msn, out.toString());
             }
 
             // Expunged messages
             if (!omitExpunged) {
-                int[] expunged = selected.getExpunged();
-                for (int msn : expunged) {
-                    response.expungeResponse(msn);
+                if (qresyncEnabled) {
+                    long[] vanished = selected.getVanished();
+                    if (vanished.length > 0) {
+                        response.vanishedResponse(IdRange.uidsToRangeString(vanished), false);
+                    }
+                } else {
+                    int[] expunged = selected.getExpunged();
+                    for (int msn : expunged) {
+                        response.expungeResponse(msn);
+                    }
                 }
             }
         }
     }
 
+    private static Long getUid(ImapSessionFolder selected, int msn) {
+        List<SequencedMessage> messages = selected.getMessages(new IdRange[]{new IdRange(msn)}, false);
+        return messages.isEmpty() ? null : messages.get(0).getUid();
+    }
+
+    @Override
+    public boolean isCondstoreEnabled() {
+        return condstoreEnabled;
+    }
+
+    @Override
+    public void enableCondstore() {
+        condstoreEnabled = true;
+    }
+
+    @Override
+    public boolean isQresyncEnabled() {
+        return qresyncEnabled;
+    }
+
+    @Override
+    public void enableQresync() {
+        qresyncEnabled = true;
+        condstoreEnabled = true;
+    }
+
     @Override
     public void closeConnection(String byeMessage) {
         handler.forceConnectionClose(byeMessage);
@@ -95,6 +140,16 @@ public final class ImapSessionImpl implements ImapSession {
         handler.close();
     }
 
+    @Override
+    public void startCompression() {
+        handler.startCompression();
+    }
+
+    @Override
+    public boolean isCompressionActive() {
+        return handler.isCompressionActive();
+    }
+
     @Override
     public UserManager getUserManager() {
         return users;
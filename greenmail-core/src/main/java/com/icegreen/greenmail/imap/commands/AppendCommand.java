@@ -12,22 +12,32 @@ import com.icegreen.greenmail.imap.ImapSession;
 import com.icegreen.greenmail.imap.ProtocolException;
 import com.icegreen.greenmail.store.FolderException;
 import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.store.MessageToAppend;
 import com.icegreen.greenmail.util.GreenMailUtil;
 
 import jakarta.mail.Flags;
 import jakarta.mail.internet.MimeMessage;
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Handles processing for the APPEND imap command.
+ * <p>
+ * Supports appending several messages at once, see https://tools.ietf.org/html/rfc3502 :
+ * <pre>
+ * append         = "APPEND" SP mailbox 1*append-message
+ * append-message = append-opts SP append-data
+ * </pre>
  *
  * @author Darrell DeBoer <darrell@apache.org>
  * @version $Revision: 109034 $
  */
 class AppendCommand extends AuthenticatedStateCommand {
     public static final String NAME = "APPEND";
-    public static final String ARGS = "<mailbox> [<flag_list>] [<date_time>] literal";
+    public static final String ARGS = "<mailbox> ([<flag_list>] [<date_time>] literal)+";
+    public static final String CAPABILITY = "MULTIAPPEND";
 
     private final AppendCommandParser appendCommandParser = new AppendCommandParser();
 
@@ -44,15 +54,19 @@ class AppendCommand extends AuthenticatedStateCommand {
                              ImapSession session)
             throws ProtocolException, FolderException {
         String mailboxName = appendCommandParser.mailbox(request);
-        Flags flags = appendCommandParser.optionalAppendFlags(request);
-        if (flags == null) {
-            flags = new Flags();
-        }
-        Date receivedDate = appendCommandParser.optionalDateTime(request);
-        if (receivedDate == null) {
-            receivedDate = new Date();
-        }
-        MimeMessage message = appendCommandParser.mimeMessage(request);
+        List<MessageToAppend> messages = new ArrayList<>();
+        do {
+            Flags flags = appendCommandParser.optionalAppendFlags(request);
+            if (flags == null) {
+                flags = new Flags();
+            }
+            Date receivedDate = appendCommandParser.optionalDateTime(request);
+            if (receivedDate == null) {
+                receivedDate = new Date();
+            }
+            MimeMessage message = appendCommandParser.mimeMessage(request);
+            messages.add(new MessageToAppend(message, flags, receivedDate));
+        } while (request.nextChar() == ' '); // Next message of MULTIAPPEND
         appendCommandParser.endLine(request);
 
         MailFolder folder;
@@ -63,10 +77,11 @@ class AppendCommand extends AuthenticatedStateCommand {
             throw e;
         }
 
-        long uid = folder.appendMessage(message, flags, receivedDate);
+        final long[] uids = folder.appendMessages(messages);
 
         session.unsolicitedResponses(response);
-        response.commandComplete(this, "APPENDUID" + SP + folder.getUidValidity() + SP + uid);
+        response.commandComplete(this, "APPENDUID" + SP + folder.getUidValidity() + SP
+                + IdRange.uidsToRangeString(uids));
     }
 
     private static class AppendCommandParser extends CommandParser {
@@ -23,9 +23,14 @@ class CapabilityCommand extends CommandTemplate {
     public static final String ARGS = null;
 
     public static final String CAPABILITIES = "LITERAL+" + SP + "UIDPLUS"
+        + SP + AppendCommand.CAPABILITY
         + SP + SortCommand.CAPABILITY
         + SP + IdleCommand.CAPABILITY
-        + SP + MoveCommand.CAPABILITY;
+        + SP + MoveCommand.CAPABILITY
+        + SP + SearchCommand.CAPABILITY
+        + SP + EnableCommand.CAPABILITY
+        + SP + EnableCommand.CONDSTORE
+        + SP + EnableCommand.QRESYNC;
 
     public static final String CAPABILITY_RESPONSE = NAME + SP + VERSION + SP + CAPABILITIES;
 
@@ -43,12 +48,14 @@ class CapabilityCommand extends CommandTemplate {
             throws ProtocolException, FolderException {
         parser.endLine(request);
 
-        if( session.getHost().getStore().isQuotaSupported()) {
-            response.untaggedResponse(CAPABILITY_RESPONSE + SP + "QUOTA");
+        StringBuilder capabilities = new StringBuilder(CAPABILITY_RESPONSE);
+        if (session.getHost().getStore().isQuotaSupported()) {
+            capabilities.append(SP).append("QUOTA");
         }
-        else {
-            response.untaggedResponse(CAPABILITY_RESPONSE);
+        if (session.getHost().isCompressionSupported()) {
+            capabilities.append(SP).append(CompressCommand.CAPABILITY);
         }
+        response.untaggedResponse(capabilities.toString());
         session.unsolicitedResponses(response);
         response.commandComplete(this);
     }
@@ -8,6 +8,7 @@ package com.icegreen.greenmail.imap.commands;
 
 import com.icegreen.greenmail.imap.ImapConstants;
 import com.icegreen.greenmail.imap.ImapRequestLineReader;
+import com.icegreen.greenmail.imap.ImapSessionFolder;
 import com.icegreen.greenmail.imap.ProtocolException;
 import com.icegreen.greenmail.store.MessageFlags;
 import org.eclipse.angus.mail.imap.protocol.BASE64MailboxDecoder;
@@ -17,10 +18,9 @@ import jakarta.mail.Flags;
 import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
+import java.util.function.IntPredicate;
 
 /**
  * @author Darrell DeBoer <darrell@apache.org>
@@ -36,26 +36,37 @@ public class CommandParser {
      */
     static final char CHR_CR = '\r';
 
+    private static final CharacterValidator NOOP_VALIDATOR = new NoopCharValidator();
+    private static final CharacterValidator DIGIT_VALIDATOR = new DigitCharValidator();
+    private static final CharacterValidator MESSAGE_SET_VALIDATOR = new MessageSetCharValidator();
+    /**
+     * Reference to the saved search result
+     */
+    static final String SAVED_RESULT = "$";
+    private static final IntPredicate DECIMAL_DIGIT = chr -> chr >= '0' && chr <= '9';
+
+    private final CharacterValidator atomValidator = new AtomCharValidator();
+    private final CharacterValidator tagValidator = new TagCharValidator();
+
     /**
      * Reads an argument of type "atom" from the request.
      */
     public String atom(ImapRequestLineReader request) throws ProtocolException {
-        return consumeWord(request, new AtomCharValidator());
+        return consumeWord(request, atomValidator);
     }
 
     /**
      * Reads an argument of type "atom" from the request. Stops reading when non-atom chars are read.
      */
     public String atomOnly(ImapRequestLineReader request) throws ProtocolException {
-        return consumeWordOnly(request, new AtomCharValidator());
+        return consumeWordOnly(request, atomValidator);
     }
 
     /**
      * Reads a command "tag" from the request.
      */
     public String tag(ImapRequestLineReader request) throws ProtocolException {
-        CharacterValidator validator = new TagCharValidator();
-        return consumeWord(request, validator);
+        return consumeWord(request, tagValidator);
     }
 
     /**
@@ -160,7 +171,7 @@ public class CommandParser {
      * Reads the next "word" from the request, comprising all characters up to the next SPACE.
      */
     protected String consumeWord(ImapRequestLineReader request) throws ProtocolException {
-        return consumeWord(request, new NoopCharValidator());
+        return consumeWord(request, NOOP_VALIDATOR);
     }
 
     /**
@@ -171,19 +182,13 @@ public class CommandParser {
     protected String consumeWord(ImapRequestLineReader request,
                                  CharacterValidator validator)
             throws ProtocolException {
-        StringBuilder atom = new StringBuilder();
-
-        char next = request.nextWordChar();
-        while (!isWhitespace(next)) {
-            if (validator.isValid(next)) {
-                atom.append(next);
-                request.consume();
-            } else {
-                throw new ProtocolException("Invalid character: '" + next + '\'');
-            }
-            next = request.nextChar();
+        request.nextWordChar();
+        String atom = request.consumeWordChars(validator);
+        char next = request.nextChar();
+        if (!isWhitespace(next)) {
+            throw new ProtocolException("Invalid character: '" + next + '\'');
         }
-        return atom.toString();
+        return atom;
     }
 
     /**
@@ -194,19 +199,8 @@ public class CommandParser {
     protected String consumeWordOnly(ImapRequestLineReader request,
                                      CharacterValidator validator)
             throws ProtocolException {
-        StringBuilder atom = new StringBuilder();
-
-        char next = request.nextWordChar();
-        while (!isWhitespace(next)) {
-            if (validator.isValid(next)) {
-                atom.append(next);
-                request.consume();
-            } else {
-                return atom.toString();
-            }
-            next = request.nextChar();
-        }
-        return atom.toString();
+        request.nextWordChar();
+        return request.consumeWordChars(validator);
     }
 
     private boolean isWhitespace(char next) {
@@ -214,14 +208,8 @@ public class CommandParser {
     }
 
     public long consumeLong(ImapRequestLineReader request) throws ProtocolException {
-        StringBuilder atom = new StringBuilder();
-        char next = request.nextWordChar();
-        while (Character.isDigit(next)) {
-            atom.append(next);
-            request.consume();
-            next = request.nextChar();
-        }
-        return Long.parseLong(atom.toString());
+        request.nextWordChar();
+        return Long.parseLong(request.consumeWordChars(DECIMAL_DIGIT));
     }
 
     /**
@@ -240,13 +228,8 @@ public class CommandParser {
         // The 1st character must be '{'
         consumeChar(request, '{');
 
-        StringBuilder digits = new StringBuilder();
+        String digits = request.consumeWordChars(DECIMAL_DIGIT);
         char next = request.nextChar();
-        while (next != '}' && next != '+') {
-            digits.append(next);
-            request.consume();
-            next = request.nextChar();
-        }
 
         // If the number is *not* suffixed with a '+', we *are* using a synchronized literal,
         // and we need to send command continuation request before reading data.
@@ -265,7 +248,12 @@ public class CommandParser {
             request.commandContinuationRequest();
         }
 
-        int size = Integer.parseInt(digits.toString());
+        int size;
+        try {
+            size = Integer.parseInt(digits);
+        } catch (NumberFormatException ex) {
+            throw new ProtocolException("Invalid literal size '" + digits + '\'', ex);
+        }
         byte[] buffer = new byte[size];
         request.read(buffer);
 
@@ -335,11 +323,10 @@ public class CommandParser {
         Flags flags = new Flags();
         request.nextWordChar();
         consumeChar(request, '(');
-        CharacterValidator validator = new NoopCharValidator();
-        String nextWord = consumeWord(request, validator);
+        String nextWord = consumeWord(request, NOOP_VALIDATOR);
         while (!nextWord.endsWith(")")) {
             setFlag(nextWord, flags);
-            nextWord = consumeWord(request, validator);
+            nextWord = consumeWord(request, NOOP_VALIDATOR);
         }
         // Got the closing ")", may be attached to a word.
         if (nextWord.length() > 1) {
@@ -372,7 +359,7 @@ public class CommandParser {
      * Reads an argument of type "number" from the request.
      */
     public long number(ImapRequestLineReader request) throws ProtocolException {
-        String digits = consumeWord(request, new DigitCharValidator());
+        String digits = consumeWord(request, DIGIT_VALIDATOR);
         try {
             return Long.parseLong(digits);
         } catch (NumberFormatException ex) {
@@ -428,37 +415,42 @@ public class CommandParser {
 
     /**
      * Reads a "message set" argument, and parses into an IdSet.
-     * Currently only supports a single range of values.
      */
     public IdRange[] parseIdRange(ImapRequestLineReader request)
             throws ProtocolException {
-        CharacterValidator validator = new MessageSetCharValidator();
-        String nextWord = consumeWord(request, validator);
+        return IdRange.parseSequenceSet(consumeWord(request, MESSAGE_SET_VALIDATOR));
+    }
 
-        int commaPos = nextWord.indexOf(',');
-        if (commaPos == -1) {
-            return new IdRange[]{IdRange.parseRange(nextWord)};
+    /**
+     * Reads a "message set" argument, which may reference the saved search result as <code>$</code>.
+     * <p>
+     * See https://tools.ietf.org/html/rfc5182
+     */
+    public IdRange[] parseIdRange(ImapRequestLineReader request, ImapSessionFolder mailbox, boolean useUids)
+            throws ProtocolException {
+        String sequenceSet = consumeWord(request, MESSAGE_SET_VALIDATOR);
+        if (SAVED_RESULT.equals(sequenceSet)) {
+            return mailbox.getSearchResult(useUids);
         }
+        return IdRange.parseSequenceSet(sequenceSet);
+    }
 
-        List<IdRange> rangeList = new ArrayList<>();
-        int pos = 0;
-        while (commaPos != -1) {
-            String range = nextWord.substring(pos, commaPos);
-            IdRange set = IdRange.parseRange(range);
-            rangeList.add(set);
-
-            pos = commaPos + 1;
-            commaPos = nextWord.indexOf(',', pos);
+    /**
+     * Reads a "sequence-set" argument, stopping at the first non sequence-set char such as a closing parenthesis.
+     */
+    public IdRange[] sequenceSet(ImapRequestLineReader request) throws ProtocolException {
+        String sequenceSet = consumeWordOnly(request, MESSAGE_SET_VALIDATOR);
+        try {
+            return IdRange.parseSequenceSet(sequenceSet);
+        } catch (IllegalArgumentException e) {
+            throw new ProtocolException(e.getMessage());
         }
-        String range = nextWord.substring(pos);
-        rangeList.add(IdRange.parseRange(range));
-        return rangeList.toArray(new IdRange[0]);
     }
 
     /**
      * Provides the ability to ensure characters are part of a permitted set.
      */
-    protected interface CharacterValidator {
+    protected interface CharacterValidator extends IntPredicate {
         /**
          * Validates the supplied character.
          *
@@ -466,6 +458,11 @@ public class CommandParser {
          * @return <code>true</code> if chr is valid, <code>false</code> if not.
          */
         boolean isValid(char chr);
+
+        @Override
+        default boolean test(int chr) {
+            return isValid((char) chr);
+        }
     }
 
     protected static class NoopCharValidator implements CharacterValidator {
@@ -524,7 +521,8 @@ public class CommandParser {
             return Character.isDigit(chr) ||
                     chr == ':' ||
                     chr == '*' ||
-                    chr == ',';
+                    chr == ',' ||
+                    chr == '$';
         }
     }
 
@@ -0,0 +1,53 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.imap.commands;
+
+import com.icegreen.greenmail.imap.ImapRequestLineReader;
+import com.icegreen.greenmail.imap.ImapResponse;
+import com.icegreen.greenmail.imap.ImapSession;
+import com.icegreen.greenmail.imap.ProtocolException;
+import com.icegreen.greenmail.store.FolderException;
+
+/**
+ * Handles COMPRESS imap command.
+ * <p>
+ * See https://tools.ietf.org/html/rfc4978
+ * <p>
+ * capability     =/ "COMPRESS=" algorithm
+ * <p>
+ * command-auth   =/ compress
+ * compress       = "COMPRESS" SP algorithm
+ * algorithm      = "DEFLATE"
+ */
+class CompressCommand extends AuthenticatedStateCommand {
+    public static final String NAME = "COMPRESS";
+    public static final String ARGS = "DEFLATE";
+    public static final String DEFLATE = "DEFLATE";
+    public static final String CAPABILITY = "COMPRESS=" + DEFLATE;
+
+    CompressCommand() {
+        super(NAME, ARGS);
+    }
+
+    @Override
+    protected void doProcess(ImapRequestLineReader request,
+                             ImapResponse response,
+                             ImapSession session)
+            throws ProtocolException, FolderException {
+        String algorithm = parser.atom(request);
+        parser.endLine(request);
+
+        if (!session.getHost().isCompressionSupported() || !DEFLATE.equalsIgnoreCase(algorithm)) {
+            throw new ProtocolException("Unsupported compression algorithm " + algorithm);
+        }
+        if (session.isCompressionActive()) {
+            response.commandFailed(this, "COMPRESSIONACTIVE", "DEFLATE active via COMPRESS");
+            return;
+        }
+
+        response.commandComplete(this, null);
+        session.startCompression();
+    }
+}
@@ -0,0 +1,59 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.imap.commands;
+
+import com.icegreen.greenmail.imap.ImapRequestLineReader;
+import com.icegreen.greenmail.imap.ImapResponse;
+import com.icegreen.greenmail.imap.ImapSession;
+import com.icegreen.greenmail.imap.ProtocolException;
+import com.icegreen.greenmail.store.FolderException;
+
+/**
+ * Handles ENABLE imap command.
+ * <p>
+ * See https://tools.ietf.org/html/rfc5161
+ * <p>
+ * capability     =/ "ENABLE"
+ * <p>
+ * command-any    =/ "ENABLE" 1*(SP capability)
+ * response-data  =/ "*" SP enable-data CRLF
+ * enable-data    = "ENABLED" *(SP capability)
+ * <p>
+ * Supports enabling CONDSTORE and QRESYNC (https://tools.ietf.org/html/rfc7162).
+ * Unknown capabilities are ignored.
+ */
+class EnableCommand extends AuthenticatedStateCommand {
+    public static final String NAME = "ENABLE";
+    public static final String ARGS = "capability+";
+    public static final String CAPABILITY = "ENABLE";
+    public static final String CONDSTORE = "CONDSTORE";
+    public static final String QRESYNC = "QRESYNC";
+
+    EnableCommand() {
+        super(NAME, ARGS);
+    }
+
+    @Override
+    protected void doProcess(ImapRequestLineReader request,
+                             ImapResponse response,
+                             ImapSession session)
+            throws ProtocolException, FolderException {
+        StringBuilder enabled = new StringBuilder("ENABLED");
+        do {
+            String capability = parser.atom(request);
+            if (CONDSTORE.equalsIgnoreCase(capability) && !session.isCondstoreEnabled()) {
+                session.enableCondstore();
+                enabled.append(SP).append(CONDSTORE);
+            } else if (QRESYNC.equalsIgnoreCase(capability) && !session.isQresyncEnabled()) {
+                session.enableQresync();
+                enabled.append(SP).append(QRESYNC);
+            }
+        } while (!CommandParser.isCrOrLf(request.nextChar()));
+        parser.endLine(request);
+
+        response.untaggedResponse(enabled.toString());
+        response.commandComplete(this);
+    }
+}
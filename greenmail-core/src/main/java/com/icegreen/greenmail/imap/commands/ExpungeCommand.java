@@ -47,7 +47,7 @@ class ExpungeCommand extends SelectedStateCommand implements UidEnabledCommand {
             throws ProtocolException, FolderException {
         IdRange[] idSet = null;
         if (useUids) {
-            idSet = parser.parseIdRange(request);
+            idSet = parser.parseIdRange(request, session.getSelected(), true);
         }
         parser.endLine(request);
 
@@ -8,8 +8,11 @@ package com.icegreen.greenmail.imap.commands;
 
 import com.icegreen.greenmail.imap.*;
 import com.icegreen.greenmail.store.FolderException;
+import com.icegreen.greenmail.store.MessageBytes;
 import com.icegreen.greenmail.store.MessageFlags;
+import com.icegreen.greenmail.store.SequencedMessage;
 import com.icegreen.greenmail.store.StoredMessage;
+import com.icegreen.greenmail.util.EncodingUtil;
 import com.icegreen.greenmail.util.GreenMailUtil;
 import jakarta.mail.BodyPart;
 import jakarta.mail.Flags;
@@ -59,32 +62,39 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
                           ImapSession session,
                           boolean useUids)
         throws ProtocolException, FolderException {
-        IdRange[] idSet = fetchParser.parseIdRange(request);
+        IdRange[] idSet = fetchParser.parseIdRange(request, session.getSelected(), useUids);
         FetchRequest fetch = fetchParser.fetchRequest(request);
+        fetchParser.fetchModifiers(request, fetch);
         fetchParser.endLine(request);
 
-        if (useUids) {
+        if (fetch.vanished && (!useUids || !session.isQresyncEnabled() || fetch.changedSince < 0)) {
+            throw new ProtocolException("VANISHED requires UID FETCH with CHANGEDSINCE and enabled QRESYNC");
+        }
+        if (fetch.changedSince >= 0) {
+            fetch.modSeq = true;
+        }
+        if (fetch.modSeq) {
+            session.enableCondstore();
+        }
+        if (useUids || session.isQresyncEnabled()) {
             fetch.uid = true;
         }
 
         ImapSessionFolder mailbox = session.getSelected();
-        long[] uids = mailbox.getMessageUids();
-        for (long uid : uids) {
-            int msn = mailbox.getMsn(uid);
-
-            if ((useUids && includes(idSet, uid)) ||
-                (!useUids && includes(idSet, msn))) {
-                String msgData = getMessageData(useUids, fetch, mailbox, uid);
-                response.fetchResponse(msn, msgData);
+        if (fetch.vanished) {
+            String vanished = mailbox.getVanished(fetch.changedSince, idSet);
+            if (null != vanished) {
+                response.vanishedResponse(vanished, true);
             }
         }
-
-        // a wildcard search must include the last message if the folder is not empty,
-        // as per https://tools.ietf.org/html/rfc3501#section-6.4.8
-        long lastMessageUid = uids.length > 0 ? uids[uids.length - 1] : -1L;
-        if (mailbox.getMessageCount() > 0 && includes(idSet, Long.MAX_VALUE) && !includes(idSet, lastMessageUid)) {
-            String msgData = getMessageData(useUids, fetch, mailbox, lastMessageUid);
-            response.fetchResponse(mailbox.getMsn(lastMessageUid), msgData);
+        final boolean condstore = session.isCondstoreEnabled();
+        for (SequencedMessage message : mailbox.getMessages(idSet, useUids)) {
+            if (response.checkError()) {
+                return; // Client is gone, skip loading and encoding remaining messages
+            }
+            if (fetch.changedSince < 0 || message.getMessage().getModSeq() > fetch.changedSince) {
+                outputMessage(fetch, message, mailbox, useUids, condstore, response);
+            }
         }
 
         boolean omitExpunged = !useUids;
@@ -92,15 +102,11 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
         response.commandComplete(this);
     }
 
-    private String getMessageData(boolean useUids, FetchRequest fetch, ImapSessionFolder mailbox, long uid) throws FolderException {
-        StoredMessage storedMessage = mailbox.getMessage(uid);
-        return outputMessage(fetch, storedMessage, mailbox, useUids);
-    }
-
-
-    private String outputMessage(FetchRequest fetch, StoredMessage message,
-                                 ImapSessionFolder folder, boolean useUids)
+    private void outputMessage(FetchRequest fetch, SequencedMessage sequencedMessage,
+                               ImapSessionFolder folder, boolean useUids, boolean condstore,
+                               ImapResponse response)
         throws FolderException {
+        final StoredMessage message = sequencedMessage.getMessage();
         // Check if this fetch will cause the "SEEN" flag to be set on this message
         // If so, update the flags, and ensure that a flags response is included in the response.
         boolean ensureFlagsResponse = false;
@@ -110,79 +116,67 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
             ensureFlagsResponse = true;
         }
 
-        StringBuilder response = new StringBuilder();
+        // Prepare BODY part literals before writing, so that a failure does not leave a partial response.
+        // Literals reference the message content instead of copying it.
+        Collection<BodyFetchElement> elements = fetch.getBodyElements();
+        List<BodyLiteral> literals = new ArrayList<>(elements.size());
+        for (BodyFetchElement fetchElement : elements) {
+            try {
+                literals.add(handleBodyFetch(message, fetchElement));
+            } catch (Exception e) {
+                throw new FolderException(e);
+            }
+        }
+
+        response.fetchResponseStart(sequencedMessage.getMsn());
 
         // FLAGS response
         if (fetch.flags || ensureFlagsResponse) {
-            response.append(" FLAGS ");
-            response.append(MessageFlags.format(message.getFlags()));
+            response.fetchItem("FLAGS", MessageFlags.format(message.getFlags()));
         }
 
         // INTERNALDATE response
         if (fetch.internalDate) {
-            response.append(" INTERNALDATE \"");
             // TODO format properly
-            response.append(message.getAttributes().getReceivedDateAsString());
-            response.append('\"');
+            response.fetchItem("INTERNALDATE", '"' + message.getAttributes().getReceivedDateAsString() + '"');
         }
 
         // RFC822.SIZE response
         if (fetch.size) {
-            response.append(" RFC822.SIZE ");
-            response.append(message.getAttributes().getSize());
+            response.fetchItem("RFC822.SIZE", Integer.toString(message.getAttributes().getSize()));
         }
 
         // ENVELOPE response
         if (fetch.envelope) {
-            response.append(" ENVELOPE ");
-            response.append(message.getAttributes().getEnvelope());
+            response.fetchItem("ENVELOPE", message.getAttributes().getEnvelopeBytes());
         }
 
         // BODY response
         if (fetch.body) {
-            response.append(" BODY ");
-            response.append(message.getAttributes().getBodyStructure(false));
+            response.fetchItem("BODY", message.getAttributes().getBodyStructureBytes(false));
         }
 
         // BODYSTRUCTURE response
         if (fetch.bodyStructure) {
-            response.append(" BODYSTRUCTURE ");
-            response.append(message.getAttributes().getBodyStructure(true));
+            response.fetchItem("BODYSTRUCTURE", message.getAttributes().getBodyStructureBytes(true));
         }
 
         // UID response
         if (fetch.uid) {
-            response.append(" UID ");
-            response.append(message.getUid());
+            response.fetchItem("UID", Long.toString(message.getUid()));
         }
 
-        // BODY part responses.
-        Collection<BodyFetchElement> elements = fetch.getBodyElements();
-        for (BodyFetchElement fetchElement : elements) {
-            response.append(SP);
-            response.append(fetchElement.getResponseName());
-            final Partial partial = fetchElement.getPartial();
-            if (null == partial) {
-                response.append(SP);
-            }
-
-            // Various mechanisms for returning message body.
-            String sectionSpecifier = fetchElement.getParameters();
-
-            MimeMessage mimeMessage = message.getMimeMessage();
-            try {
-                handleBodyFetch(mimeMessage, sectionSpecifier, partial, response);
-            } catch (Exception e) {
-                throw new FolderException(e);
-            }
+        // MODSEQ response, also included for FLAGS once CONDSTORE is enabled
+        if (fetch.modSeq || (condstore && (fetch.flags || ensureFlagsResponse))) {
+            response.fetchItem("MODSEQ", "(" + message.getModSeq() + ')');
         }
 
-        if (response.length() > 0) {
-            // Remove the leading " ".
-            return response.substring(1);
-        } else {
-            return "";
+        // BODY part responses.
+        for (BodyLiteral literal : literals) {
+            literal.writeTo(response);
         }
+
+        response.fetchResponseEnd();
     }
 
     private static byte[] readAllBytes(InputStream inputStream) throws IOException {
@@ -196,50 +190,65 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
         return Base64.getEncoder().encode(byteArrayOutputStream.toByteArray());
     }
 
-    private void handleBodyFetch(MimeMessage mimeMessage,
-                                 String sectionSpecifier,
-                                 Partial partial,
-                                 StringBuilder response) throws IOException, MessagingException {
+    private BodyLiteral handleBodyFetch(StoredMessage message, BodyFetchElement fetchElement)
+        throws IOException, MessagingException {
+        // Various mechanisms for returning message body.
+        final String sectionSpecifier = fetchElement.getParameters();
+        final Partial partial = fetchElement.getPartial();
+        if (sectionSpecifier.isEmpty()) {
+            // Whole message, as stored
+            return BodyLiteral.of(fetchElement, partial, message.getMessageBytes());
+        } else if ("TEXT".equalsIgnoreCase(sectionSpecifier)) {
+            return BodyLiteral.of(fetchElement, partial, message.getBodyBytes());
+        } else if (Character.isDigit(sectionSpecifier.charAt(0))) {
+            // MIME part, if indexed
+            final MessageBytes section = message.getSectionBytes(sectionSpecifier);
+            if (null != section) {
+                return BodyLiteral.of(fetchElement, partial, section);
+            }
+        }
+        return handleBodyFetch(message.getMimeMessage(), fetchElement, sectionSpecifier, partial);
+    }
+
+    private BodyLiteral handleBodyFetch(MimeMessage mimeMessage,
+                                        BodyFetchElement fetchElement,
+                                        String sectionSpecifier,
+                                        Partial partial) throws IOException, MessagingException {
         if (log.isDebugEnabled()) {
             log.debug("Fetching body part for section specifier {} and mime message (contentType={})",
                 sectionSpecifier, mimeMessage.getContentType());
         }
 
         if (sectionSpecifier.isEmpty()) {
-            // TODO - need to use an InputStream from the response here.
             ByteArrayOutputStream bout = new ByteArrayOutputStream();
             mimeMessage.writeTo(bout);
-            byte[] bytes = bout.toByteArray();
-            bytes = doPartial(partial, bytes, response);
-            addLiteral(bytes, response);
+            return BodyLiteral.of(fetchElement, partial, bout.toByteArray());
         } else if ("HEADER".equalsIgnoreCase(sectionSpecifier)) {
             Enumeration<?> inum = mimeMessage.getAllHeaderLines();
-            addHeaders(inum, response, partial);
+            return BodyLiteral.of(fetchElement, partial, headers(inum));
         } else if (sectionSpecifier.startsWith("HEADER.FIELDS.NOT")) {
             String[] excludeNames = extractHeaderList(sectionSpecifier, "HEADER.FIELDS.NOT".length());
             Enumeration<?> inum = mimeMessage.getNonMatchingHeaderLines(excludeNames);
-            addHeaders(inum, response, partial);
+            return BodyLiteral.of(fetchElement, partial, headers(inum));
         } else if (sectionSpecifier.startsWith("HEADER.FIELDS ")) {
             String[] includeNames = extractHeaderList(sectionSpecifier, "HEADER.FIELDS ".length());
             Enumeration<?> inum = mimeMessage.getMatchingHeaderLines(includeNames);
-            addHeaders(inum, response, partial);
+            return BodyLiteral.of(fetchElement, partial, headers(inum));
         } else if (sectionSpecifier.endsWith("MIME")) {
             String[] strs = sectionSpecifier.trim().split("\\.");
             int partNumber = Integer.parseInt(strs[0]) - 1;
             MimeMultipart mp = (MimeMultipart) mimeMessage.getContent();
             byte[] bytes = GreenMailUtil.getHeaderAsBytes(mp.getBodyPart(partNumber));
-            bytes = doPartial(partial, bytes, response);
-            addLiteral(bytes, response);
+            return BodyLiteral.of(fetchElement, partial, bytes);
         } else if ("TEXT".equalsIgnoreCase(sectionSpecifier)) {
-            handleBodyFetchForText(mimeMessage, partial, response);
+            return handleBodyFetchForText(mimeMessage, fetchElement, partial);
         } else {
             Object content = mimeMessage.getContent();
             if (content instanceof String) {
-                handleBodyFetchForText(mimeMessage, partial, response);
+                return handleBodyFetchForText(mimeMessage, fetchElement, partial);
             } else if (content instanceof InputStream) {
                 byte[] bytes = readAllBytes((InputStream) content);
-                bytes = doPartial(partial, bytes, response);
-                addLiteral(bytes, response);
+                return BodyLiteral.of(fetchElement, partial, bytes);
             } else {
                 MimeMultipart mp = (MimeMultipart) content;
                 BodyPart part = null;
@@ -273,51 +282,23 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
 
                 // A bit optimistic to only cover theses cases ... TODO
                 if ("message/rfc822".equalsIgnoreCase(part.getContentType())) {
-                    handleBodyFetch((MimeMessage) part.getContent(), spec, partial, response);
+                    return handleBodyFetch((MimeMessage) part.getContent(), fetchElement, spec, partial);
                 } else if ("TEXT".equalsIgnoreCase(spec)) {
-                    handleBodyFetchForText(mimeMessage, partial, response);
+                    return handleBodyFetchForText(mimeMessage, fetchElement, partial);
                 } else {
                     byte[] bytes = GreenMailUtil.getBodyAsBytes(part);
-                    bytes = doPartial(partial, bytes, response);
-                    addLiteral(bytes, response);
+                    return BodyLiteral.of(fetchElement, partial, bytes);
                 }
             }
         }
     }
 
-    private void handleBodyFetchForText(MimeMessage mimeMessage, Partial partial, StringBuilder response) {
-        // TODO - need to use an InputStream from the response here.
+    private BodyLiteral handleBodyFetchForText(MimeMessage mimeMessage, BodyFetchElement fetchElement,
+                                               Partial partial) {
         // TODO - this is a hack. To get just the body content, I'm using a null
         // input stream to take the headers. Need to have a way of ignoring headers.
-
         byte[] bytes = GreenMailUtil.getBodyAsBytes(mimeMessage);
-        bytes = doPartial(partial, bytes, response);
-        addLiteral(bytes, response);
-    }
-
-    private byte[] doPartial(Partial partial, byte[] bytes, StringBuilder response) {
-        if (null != partial) {
-            int len = partial.computeLength(bytes.length);
-            int start = partial.computeStart(bytes.length);
-            byte[] newBytes = new byte[len];
-            System.arraycopy(bytes, start, newBytes, 0, len);
-            bytes = newBytes;
-            response.append('<').append(partial.start).append('>');
-        }
-        return bytes;
-    }
-
-    private void addLiteral(byte[] bytes, StringBuilder response) {
-        response.append('{');
-        response.append(bytes.length);
-        response.append('}');
-        response.append("\r\n");
-
-        for (byte b : bytes) {
-            // See https://github.com/greenmail-mail-test/greenmail/issues/257
-            final char c = (char) (b & 0xFF);
-            response.append(c);
-        }
+        return BodyLiteral.of(fetchElement, partial, bytes);
     }
 
     // TODO should do this at parse time.
@@ -342,38 +323,64 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
         return strings.toArray(new String[0]);
     }
 
-    private void addHeaders(Enumeration<?> inum, StringBuilder response, Partial partial) {
+    private byte[] headers(Enumeration<?> inum) {
         StringBuilder buf = new StringBuilder();
-
-        int count = 0;
         while (inum.hasMoreElements()) {
             String line = (String) inum.nextElement();
-            count += line.length() + 2;
             buf.append(line).append("\r\n");
         }
+        return buf.toString().getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
+    }
+
+    /**
+     * A BODY fetch item, written as literal.
+     * If partial, the literal only contains the requested range of the content.
+     */
+    private static final class BodyLiteral {
+        private final String name;
+        private final int length;
+        private final ImapResponse.LiteralContent content;
+
+        private BodyLiteral(String name, int length, ImapResponse.LiteralContent content) {
+            this.name = name;
+            this.length = length;
+            this.content = content;
+        }
 
-        if (null != partial) {
-            final String partialContent = buf.toString();
-            int len = partial.computeLength(partialContent.length()); // TODO : Charset?
-            int start = partial.computeStart(partialContent.length());
+        static BodyLiteral of(BodyFetchElement fetchElement, Partial partial, byte[] bytes) {
+            return of(fetchElement, partial, bytes.length,
+                (offset, length) -> out -> out.write(bytes, offset, length));
+        }
 
-            response.append('<').append(partial.start).append('>');
-            response.append(" {");
-            response.append(len);
-            response.append('}');
-            response.append("\r\n");
+        /**
+         * Creates a literal reading only the requested range of the stored bytes.
+         */
+        static BodyLiteral of(BodyFetchElement fetchElement, Partial partial, MessageBytes bytes) {
+            return of(fetchElement, partial, bytes.getSize(),
+                (offset, length) -> out -> bytes.writeTo(out, offset, length));
+        }
 
-            response.append(partialContent, start, start + len);
-        } else {
-            response.append("{");
-            response.append(count);
-            response.append('}');
-            response.append("\r\n");
+        static BodyLiteral of(BodyFetchElement fetchElement, Partial partial, int size, ContentRange range) {
+            if (null == partial) {
+                return new BodyLiteral(fetchElement.getResponseName(), size, range.of(0, size));
+            }
+            final int start = partial.computeStart(size);
+            final int length = Math.max(0, Math.min(partial.computeLength(size), size - start));
+            return new BodyLiteral(fetchElement.getResponseName() + '<' + partial.start + '>',
+                length, range.of(start, length));
+        }
 
-            response.append(buf);
+        void writeTo(ImapResponse response) {
+            response.fetchItem(name);
+            response.literal(length, content);
         }
     }
 
+    @FunctionalInterface
+    private interface ContentRange {
+        ImapResponse.LiteralContent of(int offset, int length);
+    }
+
     private static class FetchCommandParser extends CommandParser {
 
         FetchRequest fetchRequest(ImapRequestLineReader request)
@@ -401,6 +408,29 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
             return fetch;
         }
 
+        /**
+         * Parses optional fetch modifiers, such as <code>(CHANGEDSINCE 12345 VANISHED)</code>.
+         * <p>
+         * See https://tools.ietf.org/html/rfc7162#section-3.1.4
+         */
+        void fetchModifiers(ImapRequestLineReader request, FetchRequest fetch) throws ProtocolException {
+            if (nextNonSpaceChar(request) != '(') {
+                return;
+            }
+            consumeChar(request, '(');
+            while (nextNonSpaceChar(request) != ')') {
+                String modifier = atomOnly(request);
+                if ("CHANGEDSINCE".equalsIgnoreCase(modifier)) {
+                    fetch.changedSince = consumeLong(request);
+                } else if ("VANISHED".equalsIgnoreCase(modifier)) {
+                    fetch.vanished = true;
+                } else {
+                    throw new ProtocolException("Invalid fetch modifier: " + modifier);
+                }
+            }
+            consumeChar(request, ')');
+        }
+
         private void addNextElement(ImapRequestLineReader command, FetchRequest fetch)
             throws ProtocolException {
             char next = nextCharInLine(command);
@@ -442,6 +472,8 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
                     fetch.bodyStructure = true;
                 } else if ("UID".equalsIgnoreCase(name)) {
                     fetch.uid = true;
+                } else if ("MODSEQ".equalsIgnoreCase(name)) {
+                    fetch.modSeq = true;
                 } else if ("RFC822".equalsIgnoreCase(name)) {
                     fetch.add(new BodyFetchElement("RFC822", ""), false);
                 } else if ("RFC822.HEADER".equalsIgnoreCase(name)) {
@@ -523,6 +555,9 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
         boolean envelope;
         boolean body;
         boolean bodyStructure;
+        boolean modSeq;
+        long changedSince = -1;
+        boolean vanished;
 
         private boolean setSeen = false;
 
@@ -107,6 +107,25 @@ public class IdRange {
         return ranges;
     }
 
+    /**
+     * Parses a sequence set, a comma separated list of ranges, without creating
+     * intermediate strings for each range.
+     *
+     * @param sequenceSet the sequence set, eg "1,2:5,8:*".
+     * @return the parsed ranges.
+     */
+    static IdRange[] parseSequenceSet(String sequenceSet) {
+        List<IdRange> ranges = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = sequenceSet.indexOf(',', start)) >= 0) {
+            ranges.add(parseRange(sequenceSet, start, end));
+            start = end + 1;
+        }
+        ranges.add(parseRange(sequenceSet, start, sequenceSet.length()));
+        return ranges.toArray(new IdRange[0]);
+    }
+
     /**
      * Parses a single id range, eg "1" or "1:2" or "4:*".
      *
@@ -114,25 +133,41 @@ public class IdRange {
      * @return the parsed id range.
      */
     public static IdRange parseRange(String range) {
-        int pos = range.indexOf(':');
-        try {
-            if (pos == -1) {
-                long value = parseLong(range);
-                return new IdRange(value);
-            } else {
-                long lowVal = parseLong(range.substring(0, pos));
-                long highVal = parseLong(range.substring(pos + 1));
-                // two seq-number values and all values between these two regardless of order
-                // 2:4 is equivalent to 4:2
-                if (lowVal > highVal) {
-                    return new IdRange(highVal, lowVal);
-                } else {
-                    return new IdRange(lowVal, highVal);
-                }
+        return parseRange(range, 0, range.length());
+    }
+
+    private static IdRange parseRange(String text, int start, int end) {
+        int pos = text.indexOf(':', start);
+        if (pos == -1 || pos >= end) {
+            return new IdRange(parseSeqNumber(text, start, end));
+        }
+        long lowVal = parseSeqNumber(text, start, pos);
+        long highVal = parseSeqNumber(text, pos + 1, end);
+        // two seq-number values and all values between these two regardless of order
+        // 2:4 is equivalent to 4:2
+        if (lowVal > highVal) {
+            return new IdRange(highVal, lowVal);
+        } else {
+            return new IdRange(lowVal, highVal);
+        }
+    }
+
+    private static long parseSeqNumber(String text, int start, int end) {
+        if (end - start == 1 && text.charAt(start) == '*') {
+            return VALUE_WILDCARD;
+        }
+        if (start == end) {
+            throw new IllegalArgumentException("Invalid message set " + text);
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            final int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+                throw new IllegalArgumentException("Invalid message set " + text);
             }
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Invalid message set " + range);
+            value = value * 10 + digit;
         }
+        return value;
     }
 
     public static IdRange[] convertUidsToIdRangeArray(List<Long> uids) {
@@ -166,6 +201,38 @@ public class IdRange {
         return idRangesToString(convertUidsToIdRangeArray(uids));
     }
 
+    /**
+     * Formats ascending ids as compact sequence set, such as <code>1:3,5</code>.
+     *
+     * @param ascendingUids the ids, sorted ascending.
+     * @return the sequence set.
+     */
+    public static String uidsToRangeString(long[] ascendingUids) {
+        return idRangesToString(rangesOf(ascendingUids));
+    }
+
+    /**
+     * Merges ascending ids into ranges of consecutive ids.
+     *
+     * @param ascendingIds the ids, sorted ascending.
+     * @return the ranges.
+     */
+    public static IdRange[] rangesOf(long[] ascendingIds) {
+        List<IdRange> ranges = new ArrayList<>();
+        int i = 0;
+        while (i < ascendingIds.length) {
+            long low = ascendingIds[i];
+            long high = low;
+            i++;
+            while (i < ascendingIds.length && ascendingIds[i] <= high + 1) {
+                high = ascendingIds[i];
+                i++;
+            }
+            ranges.add(new IdRange(low, high));
+        }
+        return ranges.toArray(new IdRange[0]);
+    }
+
     public static String idRangeToString(IdRange idRange) {
         return idRange.getHighVal() == idRange.getLowVal()
                 ? Long.toString(idRange.getLowVal())
@@ -185,11 +252,54 @@ public class IdRange {
         return sb.toString();
     }
 
-    private static long parseLong(String value) {
-        if (value.length() == 1 && value.charAt(0) == '*') {
-            return VALUE_WILDCARD;
+    /**
+     * Gets the uids of the ranges which are not contained in ascending uids.
+     *
+     * @param idRanges      the id ranges, possibly with wildcard.
+     * @param ascendingUids the existing uids, sorted ascending.
+     * @param maxUid        the highest uid to consider, replacing a wildcard.
+     * @return the missing uids, as ranges.
+     */
+    public static IdRange[] missingUids(IdRange[] idRanges, long[] ascendingUids, long maxUid) {
+        List<IdRange> missing = new ArrayList<>();
+        for (IdRange range : idRanges) {
+            long low = Math.max(1L, range.getLowVal());
+            final long high = Math.min(maxUid, range.getHighVal());
+            int idx = Arrays.binarySearch(ascendingUids, low);
+            if (idx < 0) {
+                idx = -(idx + 1);
+            }
+            while (low <= high) {
+                final long next = idx < ascendingUids.length ? ascendingUids[idx] : Long.MAX_VALUE;
+                if (next > low) {
+                    missing.add(new IdRange(low, Math.min(high, next - 1)));
+                }
+                if (next == Long.MAX_VALUE) {
+                    break;
+                }
+                low = next + 1;
+                idx++;
+            }
+        }
+        return missing.toArray(new IdRange[0]);
+    }
+
+    /**
+     * Retains the uids contained in the ranges.
+     *
+     * @param uids     the uids
+     * @param idRanges the id ranges
+     * @return the contained uids, in given order
+     */
+    public static long[] retainUids(long[] uids, IdRange[] idRanges) {
+        int count = 0;
+        long[] retained = new long[uids.length];
+        for (long uid : uids) {
+            if (containsUid(idRanges, uid)) {
+                retained[count++] = uid;
+            }
         }
-        return Long.parseLong(value);
+        return count == uids.length ? uids : Arrays.copyOf(retained, count);
     }
 
     /**
@@ -6,6 +6,7 @@ import com.icegreen.greenmail.store.FolderListener;
 import jakarta.mail.Flags;
 
 import java.net.SocketTimeoutException;
+import java.util.Arrays;
 
 class IdleCommand extends SelectedStateCommand {
     public static final String NAME = "IDLE";
@@ -24,7 +25,7 @@ class IdleCommand extends SelectedStateCommand {
         session.unsolicitedResponses(response);
         request.commandContinuationRequest();
         ImapSessionFolder folder = session.getSelected();
-        IdleFolderListener listener = new IdleFolderListener(response);
+        IdleFolderListener listener = new IdleFolderListener(response, session.isQresyncEnabled());
         try {
             folder.addListener(listener);
             waitForClientDone(request);
@@ -51,9 +52,11 @@ class IdleCommand extends SelectedStateCommand {
 
     private static class IdleFolderListener implements FolderListener {
         private final ImapResponse response;
+        private final boolean qresync;
 
-        private IdleFolderListener(ImapResponse response) {
+        private IdleFolderListener(ImapResponse response, boolean qresync) {
             this.response = response;
+            this.qresync = qresync;
         }
 
         @Override
@@ -67,11 +70,37 @@ class IdleCommand extends SelectedStateCommand {
         @Override
         public void expunged(int msn) {
             response.expungeResponse(msn);
+            response.flush();
+        }
+
+        @Override
+        public void expunged(int msn, long uid) {
+            if (qresync) {
+                response.vanishedResponse(Long.toString(uid), false);
+                response.flush();
+            } else {
+                expunged(msn);
+            }
+        }
+
+        @Override
+        public void expunged(int[] msns, long[] uids) {
+            if (qresync) {
+                final long[] ascendingUids = uids.clone();
+                Arrays.sort(ascendingUids);
+                response.vanishedResponse(IdRange.uidsToRangeString(ascendingUids), false);
+            } else {
+                for (int msn : msns) {
+                    response.expungeResponse(msn);
+                }
+            }
+            response.flush();
         }
 
         @Override
         public void added(int msn) {
             response.existsResponse(msn);
+            response.flush();
         }
     }
 }
@@ -44,6 +44,8 @@ public class ImapCommandFactory {
         imapCommands.put(LsubCommand.NAME, LsubCommand.class);
         imapCommands.put(StatusCommand.NAME, StatusCommand.class);
         imapCommands.put(AppendCommand.NAME, AppendCommand.class);
+        imapCommands.put(EnableCommand.NAME, EnableCommand.class);
+        imapCommands.put(CompressCommand.NAME, CompressCommand.class);
 
 //        // RFC2342 NAMESPACE
 //        imapCommands.put( "NAMESPACE", NamespaceCommand.class );
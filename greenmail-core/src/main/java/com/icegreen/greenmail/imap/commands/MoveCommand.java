@@ -50,7 +50,7 @@ class MoveCommand extends SelectedStateCommand implements UidEnabledCommand {
                           ImapSession session,
                           boolean useUids)
         throws ProtocolException, FolderException {
-        IdRange[] idSet = parser.parseIdRange(request);
+        IdRange[] idSet = parser.parseIdRange(request, session.getSelected(), useUids);
         String mailboxName = parser.mailbox(request);
         parser.endLine(request);
 
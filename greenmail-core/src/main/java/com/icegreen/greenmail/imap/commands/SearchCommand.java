@@ -7,23 +7,31 @@
 package com.icegreen.greenmail.imap.commands;
 
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.List;
+
 import jakarta.mail.search.SearchTerm;
 
 import com.icegreen.greenmail.imap.ImapRequestLineReader;
 import com.icegreen.greenmail.imap.ImapResponse;
 import com.icegreen.greenmail.imap.ImapSession;
+import com.icegreen.greenmail.imap.ImapSessionFolder;
 import com.icegreen.greenmail.imap.ProtocolException;
 import com.icegreen.greenmail.store.FolderException;
-import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.store.SequencedMessage;
 
 /**
  * Handles processing for the SEARCH imap command.
+ * <p>
+ * Supports extended search result options (<a href="https://tools.ietf.org/html/rfc4731">ESEARCH</a>)
+ * and saving the result for later reference as <code>$</code>
+ * (<a href="https://tools.ietf.org/html/rfc5182">SEARCHRES</a>).
  *
  * @author Darrell DeBoer <darrell@apache.org>
  */
 class SearchCommand extends SelectedStateCommand implements UidEnabledCommand {
     public static final String NAME = "SEARCH";
-    public static final String ARGS = "<search term>";
+    public static final String ARGS = "[RETURN (<result option>*)] <search term>";
+    public static final String CAPABILITY = "ESEARCH SEARCHRES";
 
     private final SearchCommandParser searchParser = new SearchCommandParser();
 
@@ -45,10 +53,14 @@ class SearchCommand extends SelectedStateCommand implements UidEnabledCommand {
                           ImapSession session,
                           boolean useUids)
             throws ProtocolException, FolderException {
+        ImapSessionFolder folder = session.getSelected();
+        searchParser.setSavedResult(folder.getSearchResult(true));
+
         // Parse the search term from the request
+        final SearchCommandParser.ReturnOptions returnOptions = new SearchCommandParser.ReturnOptions();
         final SearchTerm searchTerm;
         try {
-            searchTerm = searchParser.searchTerm(request);
+            searchTerm = searchParser.searchTerm(request, returnOptions);
         } catch (UnsupportedCharsetException e) {
             // Not support => return "NO"
             response.commandFailed(this, "Search command does not support charset " + e.getMessage());
@@ -67,29 +79,82 @@ class SearchCommand extends SelectedStateCommand implements UidEnabledCommand {
 
         searchParser.endLine(request);
 
-        MailFolder folder = session.getSelected();
-        long[] uids = folder.search(searchTerm);
-        StringBuilder idList = new StringBuilder();
-        for (int i = 0; i < uids.length; i++) {
-            if (i > 0) {
-                idList.append(SP);
-            }
-            long uid = uids[i];
-            if (useUids) {
-                idList.append(uid);
-            } else {
-                int msn = folder.getMsn(uid);
-                idList.append(msn);
+        List<SequencedMessage> matches = folder.searchMessages(searchTerm);
+        if (returnOptions.enabled) {
+            extendedSearchResponse(matches, returnOptions, folder, useUids, response);
+        } else {
+            StringBuilder idList = new StringBuilder();
+            for (int i = 0; i < matches.size(); i++) {
+                if (i > 0) {
+                    idList.append(SP);
+                }
+                SequencedMessage message = matches.get(i);
+                idList.append(useUids ? message.getUid() : message.getMsn());
             }
+            response.commandResponse(this, idList.toString());
         }
 
-        response.commandResponse(this, idList.toString());
-
         boolean omitExpunged = !useUids;
         session.unsolicitedResponses(response, omitExpunged);
         response.commandComplete(this);
     }
 
+    private void extendedSearchResponse(List<SequencedMessage> matches, SearchCommandParser.ReturnOptions options,
+                                        ImapSessionFolder folder, boolean useUids, ImapResponse response) {
+        if (options.save) {
+            folder.saveSearchResult(savedUids(matches, options));
+            if (!(options.min || options.max || options.count || options.all)) {
+                return; // SAVE only, see https://tools.ietf.org/html/rfc5182#section-2.4
+            }
+        }
+
+        StringBuilder data = new StringBuilder();
+        if (!matches.isEmpty()) {
+            if (options.min) {
+                data.append(" MIN ").append(id(matches.get(0), useUids));
+            }
+            if (options.max) {
+                data.append(" MAX ").append(id(matches.get(matches.size() - 1), useUids));
+            }
+        }
+        if (options.count) {
+            data.append(" COUNT ").append(matches.size());
+        }
+        if (options.all && !matches.isEmpty()) {
+            long[] ids = new long[matches.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = id(matches.get(i), useUids);
+            }
+            data.append(" ALL ").append(IdRange.uidsToRangeString(ids));
+        }
+        response.esearchResponse(useUids, data.toString());
+    }
+
+    /**
+     * Only MIN and/or MAX get saved, if requested without ALL or COUNT.
+     */
+    private static long[] savedUids(List<SequencedMessage> matches, SearchCommandParser.ReturnOptions options) {
+        if (matches.isEmpty()) {
+            return new long[0];
+        }
+        if ((options.min || options.max) && !(options.all || options.count)) {
+            long min = matches.get(0).getUid();
+            long max = matches.get(matches.size() - 1).getUid();
+            if (options.min && options.max && min != max) {
+                return new long[]{min, max};
+            }
+            return new long[]{options.min ? min : max};
+        }
+        long[] uids = new long[matches.size()];
+        for (int i = 0; i < uids.length; i++) {
+            uids[i] = matches.get(i).getUid();
+        }
+        return uids;
+    }
+
+    private static long id(SequencedMessage message, boolean useUids) {
+        return useUids ? message.getUid() : message.getMsn();
+    }
 }
 
 /*
@@ -18,6 +18,7 @@ import org.slf4j.LoggerFactory;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.LinkedList;
 
@@ -34,6 +35,9 @@ import static com.icegreen.greenmail.imap.commands.IdRange.SEQUENCE;
 class SearchCommandParser extends CommandParser {
     private final Logger log = LoggerFactory.getLogger(SearchCommandParser.class);
     private static final String CHARSET_TOKEN = "CHARSET";
+    private static final String RETURN_TOKEN = "RETURN";
+
+    private IdRange[] savedResult = new IdRange[0];
 
     /**
      * Marker for stack when parsing search
@@ -58,6 +62,19 @@ class SearchCommandParser extends CommandParser {
      * Throws an UnsupportedCharsetException if provided CHARSET is not supported.
      */
     public SearchTerm searchTerm(ImapRequestLineReader request)
+        throws ProtocolException {
+        return searchTerm(request, null);
+    }
+
+    /**
+     * Parses the request argument into a valid search term, including leading ESEARCH result options.
+     *
+     * @param request       the request.
+     * @param returnOptions the result options to populate, or null if not supported.
+     * @return the search term.
+     * @see <a href="https://tools.ietf.org/html/rfc4731">RFC 4731 ESEARCH</a>
+     */
+    public SearchTerm searchTerm(ImapRequestLineReader request, ReturnOptions returnOptions)
         throws ProtocolException {
         Charset charset = StandardCharsets.US_ASCII; // Default
         // Stack contains mix of SearchOperator and SearchTerm instances
@@ -88,8 +105,16 @@ class SearchCommandParser extends CommandParser {
                 }
             } else {
                 String token = atomOnly(request);
+                // Saved search result?
+                if (SAVED_RESULT.equals(token)) {
+                    stack.push(savedResultTerm());
+                }
+                // Result options, only before any search key
+                else if (null != returnOptions && RETURN_TOKEN.equals(token) && stack.size() == 1) {
+                    returnOptions(request, returnOptions);
+                }
                 // Sequence-set?
-                if (SEQUENCE.matcher(token).matches()) {
+                else if (SEQUENCE.matcher(token).matches()) {
                     stack.push(SearchTermBuilder.create(SearchKey.SEQUENCE_SET).addParameter(token).build());
                 }
                 // Charset?
@@ -123,7 +148,11 @@ class SearchCommandParser extends CommandParser {
                                 handleSearchArg(request, key, b, charset);
                             }
                         }
-                        stack.push(b.build());
+                        if (key == SearchKey.UID && SAVED_RESULT.equals(b.getParameter(0))) {
+                            stack.push(savedResultTerm());
+                        } else {
+                            stack.push(b.build());
+                        }
                     }
                 }
             }
@@ -133,6 +162,50 @@ class SearchCommandParser extends CommandParser {
         return handleOperators(stack);
     }
 
+    /**
+     * Sets the saved search result, referenced as <code>$</code> by search keys.
+     *
+     * @param uidRanges the saved result as UID ranges.
+     */
+    void setSavedResult(IdRange[] uidRanges) {
+        savedResult = uidRanges;
+    }
+
+    private SearchTerm savedResultTerm() {
+        return new SearchTermBuilder.UidSearchTerm(Arrays.asList(savedResult));
+    }
+
+    /**
+     * Parses <code>"(" [search-return-opt *(SP search-return-opt)] ")"</code>.
+     */
+    private void returnOptions(ImapRequestLineReader request, ReturnOptions returnOptions)
+        throws ProtocolException {
+        returnOptions.enabled = true;
+        request.consumeAll(CHR_SPACE);
+        consumeChar(request, '(');
+        while (request.consumeAll(CHR_SPACE) != ')') {
+            String option = atomOnly(request);
+            if ("MIN".equalsIgnoreCase(option)) {
+                returnOptions.min = true;
+            } else if ("MAX".equalsIgnoreCase(option)) {
+                returnOptions.max = true;
+            } else if ("ALL".equalsIgnoreCase(option)) {
+                returnOptions.all = true;
+            } else if ("COUNT".equalsIgnoreCase(option)) {
+                returnOptions.count = true;
+            } else if ("SAVE".equalsIgnoreCase(option)) {
+                returnOptions.save = true;
+            } else {
+                throw new ProtocolException("Unsupported search return option " + option);
+            }
+        }
+        consumeChar(request, ')');
+        if (!(returnOptions.min || returnOptions.max || returnOptions.count || returnOptions.all
+            || returnOptions.save)) {
+            returnOptions.all = true; // RETURN () is equivalent to RETURN (ALL)
+        }
+    }
+
     private void handleGroup(Deque<Object> stack) {
         Deque<Object> groupItems = new LinkedList<>();
         Object item;
@@ -201,4 +274,17 @@ class SearchCommandParser extends CommandParser {
         }
     }
 
+    /**
+     * Result options of an extended search.
+     * <p>
+     * See https://tools.ietf.org/html/rfc4731#section-3.1 and https://tools.ietf.org/html/rfc5182
+     */
+    static class ReturnOptions {
+        boolean enabled;
+        boolean min;
+        boolean max;
+        boolean all;
+        boolean count;
+        boolean save;
+    }
 }
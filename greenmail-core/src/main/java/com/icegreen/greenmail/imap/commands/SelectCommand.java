@@ -9,6 +9,8 @@ package com.icegreen.greenmail.imap.commands;
 import com.icegreen.greenmail.imap.*;
 import com.icegreen.greenmail.store.FolderException;
 import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.store.MessageFlags;
+import com.icegreen.greenmail.store.SequencedMessage;
 
 /**
  * Handles processeing for the SELECT imap command.
@@ -18,7 +20,9 @@ import com.icegreen.greenmail.store.MailFolder;
  */
 class SelectCommand extends AuthenticatedStateCommand {
     public static final String NAME = "SELECT";
-    public static final String ARGS = "mailbox";
+    public static final String ARGS = "mailbox [(CONDSTORE | QRESYNC (uidvalidity modseq [known-uids]))]";
+
+    private final SelectCommandParser selectParser = new SelectCommandParser();
 
     SelectCommand() {
         super(NAME, ARGS);
@@ -34,9 +38,21 @@ class SelectCommand extends AuthenticatedStateCommand {
                              ImapSession session)
             throws ProtocolException, FolderException {
         String mailboxName = parser.mailbox(request);
+        SelectParameters parameters = selectParser.selectParameters(request);
         parser.endLine(request);
 
+        if (null != parameters.qresync && !session.isQresyncEnabled()) {
+            throw new ProtocolException("QRESYNC parameter requires ENABLE QRESYNC");
+        }
+        if (parameters.condstore) {
+            session.enableCondstore();
+        }
+
+        final boolean closed = null != session.getSelected();
         session.deselect();
+        if (closed && session.isQresyncEnabled()) {
+            response.okResponse("CLOSED", null);
+        }
 
         final boolean isExamine = this instanceof ExamineCommand;
         try {
@@ -63,6 +79,11 @@ class SelectCommand extends AuthenticatedStateCommand {
         }
 
         response.permanentFlagsResponse(mailbox.getPermanentFlags());
+        response.okResponse("HIGHESTMODSEQ " + mailbox.getHighestModSeq(), null);
+
+        if (null != parameters.qresync && parameters.qresync.uidValidity == mailbox.getUidValidity()) {
+            resynchronize(parameters.qresync, mailbox, response);
+        }
 
         if (mailbox.isReadonly()) {
             response.commandComplete(this, "READ-ONLY");
@@ -71,6 +92,28 @@ class SelectCommand extends AuthenticatedStateCommand {
         }
     }
 
+    /**
+     * Reports changes since the client known mod-sequence, as VANISHED (EARLIER) and FETCH responses.
+     * <p>
+     * See https://tools.ietf.org/html/rfc7162#section-3.2.5
+     */
+    private void resynchronize(QresyncParameters qresync, ImapSessionFolder mailbox, ImapResponse response) {
+        IdRange[] all = {new IdRange(1, IdRange.VALUE_WILDCARD)};
+        String vanished = mailbox.getVanished(qresync.modSeq, null != qresync.knownUids ? qresync.knownUids : all);
+        if (null != vanished) {
+            response.vanishedResponse(vanished, true);
+        }
+
+        for (SequencedMessage message : mailbox.getMessages(all, true)) {
+            long modSeq = message.getMessage().getModSeq();
+            if (modSeq > qresync.modSeq) {
+                response.fetchResponse(message.getMsn(), "UID " + message.getUid()
+                        + " FLAGS " + MessageFlags.format(message.getMessage().getFlags())
+                        + " MODSEQ (" + modSeq + ')');
+            }
+        }
+    }
+
     private boolean selectMailbox(String mailboxName, ImapSession session, boolean readOnly) throws FolderException {
         MailFolder folder = getMailbox(mailboxName, session, true);
 
@@ -81,6 +124,71 @@ class SelectCommand extends AuthenticatedStateCommand {
         session.setSelected(folder, readOnly);
         return readOnly;
     }
+
+    private static class SelectCommandParser extends CommandParser {
+        /**
+         * Parses optional select parameters, see https://tools.ietf.org/html/rfc7162#section-7 :
+         * <pre>
+         * select-param =/ condstore-param / "QRESYNC" SP "(" uidvalidity SP mod-sequence-value
+         *                 [SP known-uids] [SP seq-match-data] ")"
+         * </pre>
+         */
+        SelectParameters selectParameters(ImapRequestLineReader request) throws ProtocolException {
+            SelectParameters parameters = new SelectParameters();
+            if (request.nextChar() != ' ') {
+                return parameters;
+            }
+            request.nextWordChar();
+            consumeChar(request, '(');
+            while (request.nextWordChar() != ')') {
+                String name = atomOnly(request);
+                if (EnableCommand.CONDSTORE.equalsIgnoreCase(name)) {
+                    parameters.condstore = true;
+                } else if (EnableCommand.QRESYNC.equalsIgnoreCase(name)) {
+                    parameters.qresync = qresyncParameters(request);
+                } else {
+                    throw new ProtocolException("Invalid select parameter: " + name);
+                }
+            }
+            consumeChar(request, ')');
+            return parameters;
+        }
+
+        private QresyncParameters qresyncParameters(ImapRequestLineReader request) throws ProtocolException {
+            QresyncParameters qresync = new QresyncParameters();
+            request.nextWordChar();
+            consumeChar(request, '(');
+            qresync.uidValidity = consumeLong(request);
+            qresync.modSeq = consumeLong(request);
+            char next = request.nextWordChar();
+            if (next != '(' && next != ')') {
+                qresync.knownUids = sequenceSet(request);
+                next = request.nextWordChar();
+            }
+            if (next == '(') {
+                // Sequence match data is only an optimization for the client, and not used
+                consumeChar(request, '(');
+                sequenceSet(request);
+                sequenceSet(request);
+                request.nextWordChar();
+                consumeChar(request, ')');
+                request.nextWordChar();
+            }
+            consumeChar(request, ')');
+            return qresync;
+        }
+    }
+
+    private static class SelectParameters {
+        boolean condstore;
+        QresyncParameters qresync;
+    }
+
+    private static class QresyncParameters {
+        long uidValidity;
+        long modSeq;
+        IdRange[] knownUids;
+    }
 }
 
 /*
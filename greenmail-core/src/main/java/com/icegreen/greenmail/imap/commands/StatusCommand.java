@@ -29,6 +29,7 @@ class StatusCommand extends AuthenticatedStateCommand {
     private static final String UIDNEXT = "UIDNEXT";
     private static final String UIDVALIDITY = "UIDVALIDITY";
     private static final String UNSEEN = "UNSEEN";
+    private static final String HIGHESTMODSEQ = "HIGHESTMODSEQ";
 
     private StatusCommandParser statusParser = new StatusCommandParser();
 
@@ -95,6 +96,13 @@ class StatusCommand extends AuthenticatedStateCommand {
             buffer.append(folder.getUnseenCount());
             buffer.append(SP);
         }
+
+        if (statusDataItems.highestModSeq) {
+            buffer.append(HIGHESTMODSEQ);
+            buffer.append(SP);
+            buffer.append(folder.getHighestModSeq());
+            buffer.append(SP);
+        }
         if (buffer.charAt(buffer.length() - 1) == ' ') {
             buffer.setLength(buffer.length() - 1);
         }
@@ -138,6 +146,8 @@ class StatusCommand extends AuthenticatedStateCommand {
                 items.uidValidity = true;
             } else if (nextWord.equals(UNSEEN)) {
                 items.unseen = true;
+            } else if (nextWord.equals(HIGHESTMODSEQ)) {
+                items.highestModSeq = true;
             } else {
                 throw new ProtocolException("Unknown status item: '" + nextWord + '\'');
             }
@@ -150,6 +160,7 @@ class StatusCommand extends AuthenticatedStateCommand {
         boolean uidNext;
         boolean uidValidity;
         boolean unseen;
+        boolean highestModSeq;
     }
 }
 
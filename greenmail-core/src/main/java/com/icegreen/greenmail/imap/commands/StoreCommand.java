@@ -9,9 +9,15 @@ package com.icegreen.greenmail.imap.commands;
 import com.icegreen.greenmail.imap.*;
 import com.icegreen.greenmail.store.FolderException;
 import com.icegreen.greenmail.store.FolderListener;
+import com.icegreen.greenmail.store.SequencedMessage;
 
 import jakarta.mail.Flags;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 
 /**
  * Handles processeing for the STORE imap command.
@@ -43,56 +49,82 @@ class StoreCommand extends SelectedStateCommand implements UidEnabledCommand {
                           ImapSession session,
                           boolean useUids)
             throws ProtocolException, FolderException {
-        IdRange[] idSet = storeParser.parseIdRange(request);
+        IdRange[] idSet = storeParser.parseIdRange(request, session.getSelected(), useUids);
+        long unchangedSince = storeParser.unchangedSince(request);
         StoreDirective directive = storeParser.storeDirective(request);
         Flags flags = storeParser.flagList(request);
         storeParser.endLine(request);
 
-        ImapSessionFolder mailbox = session.getSelected();
-//        IdRange[] uidSet;
-//        if (useUids) {
-//           uidSet = idSet;
-//        } else {
-//            uidSet = mailbox.msnsToUids(idSet);
-//        }
-//        if (directive.getSign() < 0) {
-//            mailbox.setFlags(flags, false, uidSet, directive.isSilent());
-//        }
-//        else if (directive.getSign() > 0) {
-//            mailbox.setFlags(flags, true, uidSet, directive.isSilent());
-//        }
-//        else {
-//            mailbox.replaceFlags(flags, uidSet, directive.isSilent());
-//        }
+        final boolean conditional = unchangedSince >= 0;
+        if (conditional) {
+            session.enableCondstore();
+        } else {
+            unchangedSince = Long.MAX_VALUE;
+        }
 
+        ImapSessionFolder mailbox = session.getSelected();
         FolderListener silentListener = null;
         if (directive.isSilent()) {
             silentListener = mailbox;
         }
 
-        // TODO do this in one hit.
-        long[] uids = mailbox.getMessageUids();
-        for (long uid : uids) {
-            int msn = mailbox.getMsn(uid);
-
-            if ((useUids && includes(idSet, uid)) ||
-                    (!useUids && includes(idSet, msn))) {
-                if (directive.getSign() < 0) {
-                    mailbox.setFlags(flags, false, uid, silentListener, useUids);
-                } else if (directive.getSign() > 0) {
-                    mailbox.setFlags(flags, true, uid, silentListener, useUids);
-                } else {
-                    mailbox.replaceFlags(flags, uid, silentListener, useUids);
+        List<SequencedMessage> modified;
+        if (directive.getSign() < 0) {
+            modified = mailbox.setFlags(flags, false, idSet, useUids, unchangedSince, silentListener);
+        } else if (directive.getSign() > 0) {
+            modified = mailbox.setFlags(flags, true, idSet, useUids, unchangedSince, silentListener);
+        } else {
+            modified = mailbox.replaceFlags(flags, idSet, useUids, unchangedSince, silentListener);
+        }
+
+        if (conditional && directive.isSilent()) {
+            // Silent conditional store still reports the new mod-sequences
+            Set<Long> modifiedUids = new HashSet<>();
+            for (SequencedMessage message : modified) {
+                modifiedUids.add(message.getUid());
+            }
+            for (SequencedMessage message : mailbox.getMessages(idSet, useUids)) {
+                if (!modifiedUids.contains(message.getUid())) {
+                    String uid = useUids || session.isQresyncEnabled() ? "UID " + message.getUid() + SP : "";
+                    response.fetchResponse(message.getMsn(), uid + "MODSEQ (" + message.getMessage().getModSeq() + ')');
                 }
             }
         }
 
         boolean omitExpunged = !useUids;
         session.unsolicitedResponses(response, omitExpunged);
-        response.commandComplete(this);
+        if (modified.isEmpty()) {
+            response.commandComplete(this);
+        } else {
+            long[] ids = new long[modified.size()];
+            for (int i = 0; i < ids.length; i++) {
+                SequencedMessage message = modified.get(i);
+                ids[i] = useUids ? message.getUid() : message.getMsn();
+            }
+            Arrays.sort(ids);
+            response.commandComplete(this, "MODIFIED " + IdRange.uidsToRangeString(ids));
+        }
     }
 
     private static class StoreCommandParser extends CommandParser {
+        /**
+         * Parses the optional <code>(UNCHANGEDSINCE modseq)</code> store modifier.
+         *
+         * @return the mod-sequence, or -1 if not present.
+         */
+        long unchangedSince(ImapRequestLineReader request) throws ProtocolException {
+            if (request.nextWordChar() != '(') {
+                return -1;
+            }
+            consumeChar(request, '(');
+            String modifier = atomOnly(request);
+            if (!"UNCHANGEDSINCE".equalsIgnoreCase(modifier)) {
+                throw new ProtocolException("Invalid store modifier: " + modifier);
+            }
+            long modSeq = consumeLong(request);
+            consumeChar(request, ')');
+            return modSeq;
+        }
         StoreDirective storeDirective(ImapRequestLineReader request) throws ProtocolException {
             int sign = 0;
             boolean silent;
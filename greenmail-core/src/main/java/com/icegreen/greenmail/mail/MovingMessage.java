@@ -9,8 +9,10 @@ package com.icegreen.greenmail.mail;
 import jakarta.mail.internet.MimeMessage;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Supplier;
 
 import com.icegreen.greenmail.smtp.auth.AuthenticationState;
+import com.icegreen.greenmail.store.MessageContent;
 import com.icegreen.greenmail.smtp.auth.LoginAuthenticationState;
 import com.icegreen.greenmail.smtp.auth.PlainAuthenticationState;
 
@@ -23,6 +25,8 @@ public class MovingMessage {
     private MailAddress returnPath;
     private final List<MailAddress> toAddresses = new LinkedList<>();
     private MimeMessage message;
+    private MessageContent content;
+    private Supplier<MessageContent> contentSource;
 
     /**
      * Retrieves the state object with the data used for authentication. Currently
@@ -110,8 +114,32 @@ public class MovingMessage {
      * and the body.
      * @param message The message that was sent.
      */
-    public void setMimeMessage(MimeMessage message) {
+    public synchronized void setMimeMessage(MimeMessage message) {
+        setMimeMessage(message, null);
+    }
+
+    /**
+     * Sets or overwrites the contents of the mail message, including all mail headers
+     * and the body, together with the raw content as received.
+     * @param message The message that was sent.
+     * @param contentSource Supplies the raw content on first access, or null for serializing the message.
+     */
+    public synchronized void setMimeMessage(MimeMessage message, Supplier<MessageContent> contentSource) {
         this.message = message;
+        this.contentSource = contentSource;
+        this.content = null;
+    }
+
+    /**
+     * Retrieves the raw content of the mail message, serialized once and shared by all recipients.
+     * @return The immutable content of the message.
+     */
+    public synchronized MessageContent getContent() {
+        if (null == content) {
+            content = null == contentSource ? MessageContent.of(message) : contentSource.get();
+            contentSource = null;
+        }
+        return content;
     }
 
     @Override
@@ -27,6 +27,11 @@ public class Pop3Server extends AbstractServer {
         return new Pop3Handler(new Pop3CommandRegistry(), managers.getUserManager(), clientSocket);
     }
 
+    @Override
+    protected String getConnectionRefusedResponse() {
+        return "-ERR Service not available, too many connections";
+    }
+
     @Override
     public POP3Store createStore() throws NoSuchProviderException {
         return (POP3Store) super.createStore();
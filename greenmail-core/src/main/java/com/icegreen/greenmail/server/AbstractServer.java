@@ -15,19 +15,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 /**
  * @author Wael Chatila
@@ -39,6 +45,7 @@ public abstract class AbstractServer extends Thread implements Service {
     protected final InetAddress bindTo;
     protected ServerSocket serverSocket = null;
     protected static final int CLIENT_SOCKET_SO_TIMEOUT = 30 * 1000;
+    private static final int REFUSED_SOCKET_SO_TIMEOUT = 1000; // Bounds TLS handshake of refusal
     private int clientSocketTimeout = CLIENT_SOCKET_SO_TIMEOUT;
     protected final Managers managers;
     protected ServerSetup setup;
@@ -46,6 +53,12 @@ public abstract class AbstractServer extends Thread implements Service {
     private volatile boolean keepRunning = false;
     private volatile boolean running = false;
     private final CountDownLatch startupMonitor = new CountDownLatch(1);
+    private volatile ExecutorService connectionExecutor;
+    private final AtomicLong rejectedConnectionCount = new AtomicLong();
+    // Accept rate window, only accessed by server thread
+    private long acceptWindowStart;
+    private int acceptWindowCount;
+    private volatile LongSupplier clock = System::currentTimeMillis;
 
     protected AbstractServer(ServerSetup setup, Managers managers) {
         this.setup = setup;
@@ -71,6 +84,15 @@ public abstract class AbstractServer extends Thread implements Service {
      */
     protected abstract ProtocolHandler createProtocolHandler(Socket clientSocket);
 
+    /**
+     * Gets the protocol specific response line sent to clients refused due to connection limits.
+     *
+     * @return the response line, without line ending.
+     * @see ServerSetup#setMaxConnections(int)
+     * @see ServerSetup#setMaxAcceptRate(int)
+     */
+    protected abstract String getConnectionRefusedResponse();
+
     protected ServerSocket openServerSocket() throws IOException {
         final ServerSocket socket;
         if (setup.isSecure()) {
@@ -101,6 +123,7 @@ public abstract class AbstractServer extends Thread implements Service {
     public void run() {
         try {
             initServerSocket();
+            connectionExecutor = createConnectionExecutor();
 
             log.debug("Started {}", getName());
 
@@ -119,6 +142,27 @@ public abstract class AbstractServer extends Thread implements Service {
             }
         } finally {
             closeServerSocket();
+            shutdownConnectionExecutor();
+        }
+    }
+
+    /**
+     * Creates the executor for running client connection handlers.
+     *
+     * @return the configured executor, or the default one using virtual threads if available.
+     * @see ServerSetup#setConnectionExecutor(java.util.function.Supplier)
+     */
+    protected ExecutorService createConnectionExecutor() {
+        if (null != setup.getConnectionExecutor()) {
+            return setup.getConnectionExecutor().get();
+        }
+        return ConnectionExecutors.newDefaultExecutor();
+    }
+
+    private void shutdownConnectionExecutor() {
+        final ExecutorService executor = connectionExecutor;
+        if (null != executor) {
+            executor.shutdown();
         }
     }
 
@@ -165,21 +209,129 @@ public abstract class AbstractServer extends Thread implements Service {
     }
 
     protected void handleClientSocket(Socket clientSocket) throws SocketException {
+        if (!admitClientSocket()) {
+            refuseClientSocket(clientSocket);
+            return;
+        }
         clientSocket.setSoTimeout(clientSocketTimeout);
         final ProtocolHandler handler = createProtocolHandler(clientSocket);
         addHandler(handler);
         String threadName = getName() + "<-" + clientSocket.getInetAddress() + ":" + clientSocket.getPort();
         log.debug("Handling new client connection {}", threadName);
-        final Thread thread = new Thread(() -> {
+        try {
+            connectionExecutor.execute(() -> {
+                // Keep descriptive name for debugging, also when running on pooled or virtual threads
+                final Thread thread = Thread.currentThread();
+                final String previousThreadName = thread.getName();
+                thread.setName(threadName);
+                try {
+                    handler.run(); // NOSONAR
+                } finally {
+                    // Make sure to de-register, see https://github.com/greenmail-mail-test/greenmail/issues/18
+                    removeHandler(handler);
+                    thread.setName(previousThreadName);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            log.warn("Rejected client connection {}", threadName, ex);
+            removeHandler(handler);
+            handler.close();
+        }
+    }
+
+    /**
+     * Checks connection limits for a new client connection.
+     *
+     * @return true, if connection is within limits.
+     */
+    private boolean admitClientSocket() {
+        final int maxConnections = setup.getMaxConnections();
+        if (maxConnections >= 0 && handlers.size() >= maxConnections) {
+            return false;
+        }
+        final int maxAcceptRate = setup.getMaxAcceptRate();
+        if (maxAcceptRate >= 0) {
+            final long now = clock.getAsLong();
+            if (now - acceptWindowStart >= 1000L) {
+                acceptWindowStart = now;
+                acceptWindowCount = 0;
+            }
+            if (acceptWindowCount >= maxAcceptRate) {
+                return false;
+            }
+            acceptWindowCount++;
+        }
+        return true;
+    }
+
+    /**
+     * Sets the clock for limiting the accept rate, for testing.
+     *
+     * @param clock provides the current time in milliseconds.
+     */
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Refuses a client connection with a protocol specific response and closes it.
+     * <p>
+     * Writes the response off the server thread with a short timeout, as writing to a secure socket
+     * starts a TLS handshake which a client may stall.
+     *
+     * @param clientSocket the client connection.
+     */
+    private void refuseClientSocket(Socket clientSocket) {
+        rejectedConnectionCount.incrementAndGet();
+        log.debug("Refusing client connection {}:{} exceeding connection limits of {}",
+            clientSocket.getInetAddress(), clientSocket.getPort(), getName());
+        try {
+            clientSocket.setSoTimeout(REFUSED_SOCKET_SO_TIMEOUT);
+            connectionExecutor.execute(() -> writeRefusal(clientSocket));
+        } catch (SocketException | RejectedExecutionException ex) {
+            log.trace("Can not send refusal to client connection", ex);
             try {
-                handler.run(); // NOSONAR
-            } finally {
-                // Make sure to de-register, see https://github.com/greenmail-mail-test/greenmail/issues/18
-                removeHandler(handler);
+                clientSocket.close();
+            } catch (IOException e) {
+                log.trace("Can not close refused client connection", e);
             }
-        });
-        thread.setName(threadName);
-        thread.start();
+        }
+    }
+
+    private void writeRefusal(Socket clientSocket) {
+        try {
+            OutputStream os = clientSocket.getOutputStream();
+            os.write((getConnectionRefusedResponse() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            os.flush();
+        } catch (IOException ex) {
+            log.trace("Can not send refusal to client connection", ex);
+        } finally {
+            try {
+                clientSocket.close();
+            } catch (IOException ex) {
+                log.trace("Can not close refused client connection", ex);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of client connections refused due to connection limits.
+     *
+     * @return the number of refused connections since server start.
+     * @see ServerSetup#setMaxConnections(int)
+     * @see ServerSetup#setMaxAcceptRate(int)
+     */
+    public long getRejectedConnectionCount() {
+        return rejectedConnectionCount.get();
+    }
+
+    /**
+     * Gets the number of currently handled client connections.
+     *
+     * @return the number of connections.
+     */
+    public int getConnectionCount() {
+        return handlers.size();
     }
 
     /**
@@ -214,6 +366,7 @@ public abstract class AbstractServer extends Thread implements Service {
             }
             handlers.clear();
         }
+        shutdownConnectionExecutor();
         log.debug("Stopped {}", getName());
     }
 
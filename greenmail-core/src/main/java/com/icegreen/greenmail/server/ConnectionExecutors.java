@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors for running client connection {@link ProtocolHandler}s.
+ * <p>
+ * On JDK 21+ the default executor uses virtual threads, so that many mostly idle connections (e.g. IMAP IDLE)
+ * only cost a small heap allocated stack. Older JDKs fall back to a cached thread pool.
+ */
+public final class ConnectionExecutors {
+    private static final Logger log = LoggerFactory.getLogger(ConnectionExecutors.class);
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = lookupVirtualThreadPerTaskExecutor();
+
+    private ConnectionExecutors() {
+        // No instantiation
+    }
+
+    /**
+     * Checks if the JVM supports virtual threads.
+     *
+     * @return true, if running on JDK 21+.
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return null != NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+    }
+
+    /**
+     * Creates the default executor, using virtual threads if supported.
+     *
+     * @return a new executor.
+     */
+    public static ExecutorService newDefaultExecutor() {
+        if (isVirtualThreadsSupported()) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                log.warn("Can not create virtual thread executor, falling back to platform threads", e);
+            }
+        }
+        return newPlatformThreadExecutor();
+    }
+
+    /**
+     * Creates an executor using a new or cached platform thread per connection.
+     *
+     * @return a new executor.
+     */
+    public static ExecutorService newPlatformThreadExecutor() {
+        return Executors.newCachedThreadPool();
+    }
+
+    private static Method lookupVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null; // JDK < 21
+        }
+    }
+}
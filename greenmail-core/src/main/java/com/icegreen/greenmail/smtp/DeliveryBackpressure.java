@@ -0,0 +1,21 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.smtp;
+
+/**
+ * Policy when the asynchronous delivery queue is full.
+ *
+ * @see SmtpManager#startAsyncDelivery(int, int, DeliveryBackpressure)
+ */
+public enum DeliveryBackpressure {
+    /**
+     * Blocks the SMTP connection until the queue has capacity.
+     */
+    BLOCK,
+    /**
+     * Rejects the message with a transient {@code 452} reply, so that the client retries later.
+     */
+    REJECT
+}
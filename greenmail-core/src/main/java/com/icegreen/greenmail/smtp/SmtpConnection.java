@@ -29,6 +29,7 @@ public class SmtpConnection {
     SmtpHandler handler;
     String heloName;
     boolean authenticated; // Was there a successful authentication?
+    long dataSpillThreshold = -1L;
 
     public SmtpConnection(SmtpHandler handler, Socket sock)
         throws IOException {
@@ -92,23 +93,67 @@ public class SmtpConnection {
      *
      * @param initialContent initial content
      * @return a limited input stream.
+     * @deprecated Buffers the whole content in memory, use {@link #readData(byte[])} instead.
      */
+    @Deprecated
     public InputStream dotLimitedInputStream(byte[] initialContent) {
         ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+        copyDotLimitedData(initialContent, bos);
+        return new ByteArrayInputStream(bos.toByteArray());
+    }
+
+    /**
+     * Reads the contents of the stream until
+     * &lt;CRLF&gt;.&lt;CRLF&gt; is encountered, removing dot stuffing.
+     * <p>
+     * Content exceeding the configured {@link #setDataSpillThreshold(long) threshold} gets spilled to a temporary file.
+     * The caller must close the returned buffer.
+     *
+     * @param initialContent initial content
+     * @return the buffered content.
+     */
+    public SmtpDataBuffer readData(byte[] initialContent) {
+        final SmtpDataBuffer buffer = new SmtpDataBuffer(dataSpillThreshold);
         try {
-            bos.write(initialContent); // Insert initial prefix content
+            copyDotLimitedData(initialContent, buffer);
+        } catch (RuntimeException ex) {
+            buffer.close();
+            throw ex;
+        }
+        return buffer;
+    }
+
+    /**
+     * Copies the contents of the stream until &lt;CRLF&gt;.&lt;CRLF&gt; is encountered.
+     * <p>
+     * Written bytes lag four bytes behind the read bytes, so that the terminating
+     * CR + LF + DOT + CR never reaches the target.
+     */
+    private void copyDotLimitedData(byte[] initialContent, OutputStream target) {
+        long count = 0;
+        try {
+            int pending = 0; // Up to four bytes not yet written
+            int pendingCount = 0;
+            for (byte b : initialContent) { // Insert initial prefix content
+                if (pendingCount == 4) {
+                    target.write(pending >>> 24);
+                    count++;
+                } else {
+                    pendingCount++;
+                }
+                pending = (pending << 8) | (b & 0xff);
+            }
 
             int cbuf = 0; // Caches current last 4 bytes
             while (true) {
                 int b = in.read();
                 if (b < 0) {
-                    throw new IllegalStateException("Unexpected end of stream, read " + bos.size() + " bytes: " + bos);
+                    throw new IllegalStateException("Unexpected end of stream, read " + count + " bytes");
                 }
 
                 if (cbuf == CR_LF_DOT_CR && b == '\n') { // CRLF-DOT-CRLF
-                    final byte[] buf = bos.toByteArray();
-                    int maxLen = Math.min(bos.size(), bos.size() - 4 /* CR + LF + DOT + CR */);
-                    return new ByteArrayInputStream(buf, 0, maxLen);
+                    target.flush();
+                    return;
                 } else if ((cbuf & 0xffffff) == CR_LF_DOT && b == '.') { // CR_LF_DOT and DOT => Skip dot once
                     // https://tools.ietf.org/html/rfc5321#section-4.5.2 :
                     // When a line of mail text is received by the SMTP server, it checks
@@ -117,15 +162,30 @@ public class SmtpConnection {
                     // period and there are other characters on the line, the first
                     // character is deleted.
                 } else {
-                    bos.write(b);
+                    if (pendingCount == 4) {
+                        target.write(pending >>> 24);
+                        count++;
+                    } else {
+                        pendingCount++;
+                    }
+                    pending = (pending << 8) | b;
                 }
                 cbuf = (cbuf << 8) | b;
             }
         } catch (IOException ex) {
-            throw new IllegalStateException("Can not read line, read " + bos.size() + " bytes: " + bos, ex);
+            throw new IllegalStateException("Can not read line, read " + count + " bytes", ex);
         }
     }
 
+    /**
+     * Configures the maximum size of DATA content kept in memory.
+     *
+     * @param dataSpillThreshold the size in bytes, or a negative value for never spilling to a temporary file.
+     */
+    public void setDataSpillThreshold(long dataSpillThreshold) {
+        this.dataSpillThreshold = dataSpillThreshold;
+    }
+
     public String getClientAddress() {
         return clientAddress.getHostAddress();
     }
@@ -0,0 +1,190 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.smtp;
+
+import jakarta.mail.util.SharedByteArrayInputStream;
+import jakarta.mail.util.SharedFileInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Buffers the content of an SMTP DATA section.
+ * <p>
+ * Content is kept in memory until exceeding a threshold, and then spilled to a temporary file.
+ * The buffered content can be consumed via {@link #getInputStream()} without copying it,
+ * as the returned streams are shared input streams referencing the buffer or the file.
+ * <p>
+ * Closing the buffer closes all streams created by {@link #getInputStream()} and deletes the temporary file.
+ */
+public class SmtpDataBuffer extends OutputStream {
+    private static final Logger log = LoggerFactory.getLogger(SmtpDataBuffer.class);
+    private static final int INITIAL_CAPACITY = 8192;
+
+    private final long spillThreshold;
+    private byte[] buf = new byte[INITIAL_CAPACITY];
+    private int count;
+    private long size;
+    private Path file;
+    private OutputStream fileOut;
+    private final List<InputStream> openedStreams = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * @param spillThreshold the maximum size in bytes kept in memory, or a negative value for never spilling to a file.
+     */
+    public SmtpDataBuffer(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (null == fileOut && spillThreshold >= 0 && count >= spillThreshold) {
+            spill();
+        }
+        if (null == fileOut) {
+            if (count == buf.length) {
+                grow(count + 1);
+            }
+            buf[count++] = (byte) b;
+        } else {
+            fileOut.write(b);
+        }
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (null == fileOut && spillThreshold >= 0 && count + (long) len > spillThreshold) {
+            spill();
+        }
+        if (null == fileOut) {
+            if (count + len > buf.length) {
+                grow(count + len);
+            }
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        } else {
+            fileOut.write(b, off, len);
+        }
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (null != fileOut) {
+            fileOut.flush();
+        }
+    }
+
+    /**
+     * @return the number of buffered bytes.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true, if the content got spilled to a temporary file.
+     */
+    public boolean isSpilled() {
+        return null != file;
+    }
+
+    /**
+     * Creates a shared input stream for the buffered content.
+     * <p>
+     * The stream gets closed when closing this buffer.
+     *
+     * @return a new input stream.
+     * @throws IOException on error accessing the temporary file.
+     */
+    public InputStream getInputStream() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Buffer " + this + " already closed");
+        }
+        final InputStream is;
+        if (null == fileOut) {
+            is = new SharedByteArrayInputStream(buf, 0, count);
+        } else {
+            fileOut.flush();
+            is = new SharedFileInputStream(file.toFile());
+        }
+        openedStreams.add(is);
+        return is;
+    }
+
+    /**
+     * Gets the buffered content.
+     *
+     * @return the content, which is the internal buffer if it exactly fits.
+     * @throws IOException on error reading the temporary file.
+     */
+    public byte[] toByteArray() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Buffer " + this + " already closed");
+        }
+        if (null == fileOut) {
+            return count == buf.length ? buf : Arrays.copyOf(buf, count);
+        }
+        fileOut.flush();
+        return Files.readAllBytes(file);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (InputStream is : openedStreams) {
+            try {
+                is.close();
+            } catch (IOException e) {
+                log.warn("Can not close stream for buffer {}", this, e);
+            }
+        }
+        openedStreams.clear();
+        if (null != fileOut) {
+            try {
+                fileOut.close();
+            } catch (IOException e) {
+                log.warn("Can not close spill file {}", file, e);
+            }
+            fileOut = null;
+        }
+        if (null != file) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Can not delete spill file {}", file, e);
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        file = Files.createTempFile("greenmail-smtp-data", ".eml");
+        log.debug("Spilling {} bytes of SMTP data to {}", count, file);
+        fileOut = new BufferedOutputStream(Files.newOutputStream(file), INITIAL_CAPACITY);
+        fileOut.write(buf, 0, count);
+        buf = new byte[0];
+        count = 0;
+    }
+
+    private void grow(int minCapacity) {
+        buf = Arrays.copyOf(buf, Math.max(minCapacity, buf.length << 1));
+    }
+
+    @Override
+    public String toString() {
+        return "SmtpDataBuffer{size=" + size + ", file=" + file + '}';
+    }
+}
@@ -26,18 +26,29 @@ public class SmtpHandler extends AbstractSocketProtocolHandler {
 
     // command parsing stuff
     protected String currentLine;
+    private final long dataSpillThreshold;
 
     public SmtpHandler(SmtpCommandRegistry registry,
                        SmtpManager manager, Socket socket) {
+        this(registry, manager, socket, -1L);
+    }
+
+    /**
+     * @param dataSpillThreshold maximum size of DATA content kept in memory, see {@link SmtpConnection#setDataSpillThreshold(long)}.
+     */
+    public SmtpHandler(SmtpCommandRegistry registry,
+                       SmtpManager manager, Socket socket, long dataSpillThreshold) {
         super(socket);
         this.registry = registry;
         this.manager = manager;
+        this.dataSpillThreshold = dataSpillThreshold;
     }
 
     @Override
     public void run() {
         try {
             conn = new SmtpConnection(this, socket);
+            conn.setDataSpillThreshold(dataSpillThreshold);
             state = new SmtpState();
 
             sendGreetings();
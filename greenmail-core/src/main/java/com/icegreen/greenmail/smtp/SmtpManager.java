@@ -7,15 +7,19 @@
 package com.icegreen.greenmail.smtp;
 
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.icegreen.greenmail.imap.ImapHostManager;
 import com.icegreen.greenmail.mail.MailAddress;
 import com.icegreen.greenmail.mail.MovingMessage;
+import com.icegreen.greenmail.store.MessageContent;
 import com.icegreen.greenmail.user.UserManager;
+import jakarta.mail.MessagingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,13 +30,12 @@ public class SmtpManager {
     final Incoming incomingQueue;
     final UserManager userManager;
     private final ImapHostManager imapHostManager;
-    final List<CountDownLatch> notifyList;
+    private volatile ThreadPoolExecutor deliveryExecutor;
 
     public SmtpManager(ImapHostManager imapHostManager, UserManager userManager) {
         this.imapHostManager = imapHostManager;
         this.userManager = userManager;
         incomingQueue = new Incoming();
-        notifyList = Collections.synchronizedList(new ArrayList<>());
     }
 
 
@@ -51,26 +54,126 @@ public class SmtpManager {
         return null;
     }
 
-    public synchronized void send(SmtpState state) {
-        incomingQueue.enqueue(state.getMessage());
-        for (CountDownLatch o : notifyList) {
-            o.countDown();
+    /**
+     * Delivers the message of given state, synchronously or via the asynchronous delivery queue if started.
+     *
+     * @param state the state containing the message.
+     * @throws RejectedExecutionException if the delivery queue is full and configured to reject.
+     */
+    public void send(SmtpState state) {
+        final ThreadPoolExecutor executor = deliveryExecutor;
+        if (null == executor) {
+            deliver(state.getMessage());
+        } else {
+            final MovingMessage msg = detach(state.getMessage());
+            executor.execute(() -> {
+                try {
+                    deliver(msg);
+                } catch (Exception e) {
+                    log.error("Can not deliver message {}", msg, e);
+                }
+            });
         }
     }
 
+    private void deliver(MovingMessage msg) {
+        incomingQueue.enqueue(msg); // Stored messages notify waiters of the store
+    }
+
     /**
-     * @return null if no need to wait. Otherwise, caller must call wait() on the returned object
+     * Detaches the message from resources of the SMTP connection, such as the DATA buffer,
+     * which get released before an asynchronous delivery happens.
      */
-    public synchronized CountDownLatch createAndAddNewWaitObject(int emailCount) {
-        final int existingCount = imapHostManager.getAllMessages().size();
-        if (existingCount >= emailCount) {
-            return new CountDownLatch(0); // Requires no count down, therefore not added to notification list
+    private static MovingMessage detach(MovingMessage msg) {
+        final MessageContent content = msg.getContent();
+        try {
+            msg.setMimeMessage(content.toMimeMessage(), () -> content);
+        } catch (MessagingException e) {
+            throw new IllegalStateException("Can not detach message " + msg, e);
         }
-        CountDownLatch latch = new CountDownLatch(emailCount - existingCount);
-        notifyList.add(latch);
+        return msg;
+    }
+
+    /**
+     * @return a latch reaching zero once the store contains at least emailCount messages.
+     * @deprecated Use {@link com.icegreen.greenmail.store.Store#awaitMessageCount(long)},
+     * which allows cancelling the wait.
+     */
+    @Deprecated
+    public CountDownLatch createAndAddNewWaitObject(int emailCount) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        imapHostManager.getStore().awaitMessageCount(emailCount).thenRun(latch::countDown);
         return latch;
     }
 
+    /**
+     * Starts delivering messages asynchronously, off the SMTP connection threads.
+     * <p>
+     * SMTP replies {@code 250 OK} once the message is queued, so tests should use
+     * {@link com.icegreen.greenmail.util.GreenMail#waitForIncomingEmail(long, int)} for awaiting delivery.
+     *
+     * @param workers       the number of delivery threads.
+     * @param queueCapacity the maximum number of queued messages.
+     * @param backpressure  the policy when the queue is full.
+     */
+    public synchronized void startAsyncDelivery(int workers, int queueCapacity, DeliveryBackpressure backpressure) {
+        if (null != deliveryExecutor) {
+            throw new IllegalStateException("Asynchronous delivery already started");
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread t = new Thread(r, "greenmail-delivery-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        if (backpressure == DeliveryBackpressure.BLOCK) {
+            executor.setRejectedExecutionHandler((r, e) -> {
+                if (e.isShutdown()) {
+                    throw new RejectedExecutionException("Delivery stopped");
+                }
+                try {
+                    e.getQueue().put(r);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for delivery queue", ex);
+                }
+            });
+        } else {
+            executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        }
+        deliveryExecutor = executor;
+    }
+
+    /**
+     * Stops asynchronous delivery, after delivering already queued messages.
+     * Further messages get delivered synchronously.
+     */
+    public synchronized void stopAsyncDelivery() {
+        final ThreadPoolExecutor executor = deliveryExecutor;
+        if (null == executor) {
+            return;
+        }
+        deliveryExecutor = null;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Timeout waiting for delivery of {} queued messages", executor.getQueue().size());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true, if messages get delivered asynchronously.
+     */
+    public boolean isAsyncDelivery() {
+        return null != deliveryExecutor;
+    }
+
     //~----------------------------------------------------------------------------------------------------------------
 
 
@@ -21,6 +21,12 @@ public class SmtpServer extends AbstractServer {
 
     @Override
     protected ProtocolHandler createProtocolHandler(final Socket clientSocket) {
-        return new SmtpHandler(new SmtpCommandRegistry(), managers.getSmtpManager(), clientSocket);
+        return new SmtpHandler(new SmtpCommandRegistry(), managers.getSmtpManager(), clientSocket,
+            setup.getDataSpillThreshold());
+    }
+
+    @Override
+    protected String getConnectionRefusedResponse() {
+        return "421 " + setup.getBindAddress() + " Service not available, too many connections";
     }
 }
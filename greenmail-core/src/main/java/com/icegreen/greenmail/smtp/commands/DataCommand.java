@@ -8,13 +8,15 @@ package com.icegreen.greenmail.smtp.commands;
 
 import com.icegreen.greenmail.mail.MovingMessage;
 import com.icegreen.greenmail.smtp.SmtpConnection;
+import com.icegreen.greenmail.smtp.SmtpDataBuffer;
 import com.icegreen.greenmail.smtp.SmtpManager;
 import com.icegreen.greenmail.smtp.SmtpState;
+import com.icegreen.greenmail.store.MessageContent;
 import com.icegreen.greenmail.util.GreenMailUtil;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * DATA command.
@@ -47,24 +49,36 @@ public class DataCommand extends SmtpCommand {
             conn.getHeloName() + "); " +
             new java.util.Date() + "\r\n";
 
-        try (final InputStream messageIs = conn.dotLimitedInputStream(initialContent.getBytes(StandardCharsets.UTF_8))) {
-            msg.setMimeMessage(GreenMailUtil.newMimeMessage(messageIs));
-        }
+        try (SmtpDataBuffer data = conn.readData(initialContent.getBytes(StandardCharsets.UTF_8))) {
+            msg.setMimeMessage(GreenMailUtil.newMimeMessage(data.getInputStream()),
+                () -> toMessageContent(data));
 
-        String err = manager.checkData(state);
-        if (err != null) {
-            conn.send(err);
-            return;
-        }
+            String err = manager.checkData(state);
+            if (err != null) {
+                conn.send(err);
+                return;
+            }
 
-        try {
-            manager.send(state);
-            conn.send("250 OK");
-        } catch (Exception je) {
-            log.error("Can not send state '250 OK', aborted.", je);
-            conn.send("451 Requested action aborted: local error in processing");
+            try {
+                manager.send(state);
+                conn.send("250 OK");
+            } catch (RejectedExecutionException ree) {
+                log.warn("Delivery queue full, rejecting message", ree);
+                conn.send("452 Requested action not taken: insufficient system storage");
+            } catch (Exception je) {
+                log.error("Can not send state '250 OK', aborted.", je);
+                conn.send("451 Requested action aborted: local error in processing");
+            }
         }
 
         state.clearMessage();
     }
+
+    private static MessageContent toMessageContent(SmtpDataBuffer data) {
+        try {
+            return MessageContent.of(data.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not read buffered data " + data, e);
+        }
+    }
 }
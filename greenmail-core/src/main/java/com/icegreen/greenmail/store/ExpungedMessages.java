@@ -0,0 +1,66 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the messages removed by one expunge, for notifying each folder listener once about all of them.
+ * <p>
+ * Messages get added in ascending or in descending MSN order, as visited by the expunging collection.
+ *
+ * @see FolderListener#expunged(int[], long[])
+ */
+final class ExpungedMessages {
+    private final List<StoredMessage> messages = new ArrayList<>();
+    private int[] msns = new int[16];
+
+    /**
+     * @param msn     the message sequence number, before expunging.
+     * @param message the expunged message.
+     */
+    void add(int msn, StoredMessage message) {
+        final int size = messages.size();
+        if (size == msns.length) {
+            msns = Arrays.copyOf(msns, size + (size >> 1));
+        }
+        msns[size] = msn;
+        messages.add(message);
+    }
+
+    /**
+     * @return the expunged messages, in order of adding.
+     */
+    List<StoredMessage> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Notifies the listeners, with message sequence numbers in descending order.
+     *
+     * @param listeners the listeners, also used as lock.
+     */
+    void notifyListeners(List<FolderListener> listeners) {
+        final int size = messages.size();
+        if (0 == size) {
+            return;
+        }
+        final boolean ascending = msns[0] < msns[size - 1];
+        final int[] descendingMsns = new int[size];
+        final long[] uids = new long[size];
+        for (int i = 0; i < size; i++) {
+            final int idx = ascending ? size - 1 - i : i;
+            descendingMsns[i] = msns[idx];
+            uids[i] = messages.get(idx).getUid();
+        }
+        synchronized (listeners) {
+            for (FolderListener listener : listeners) {
+                listener.expunged(descendingMsns, uids);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the UIDs of expunged messages together with the mod-sequence of the expunge,
+ * for reporting messages vanished since a given mod-sequence.
+ * <p>
+ * Entries are appended in ascending mod-sequence order and kept as primitive columns.
+ * Only a bounded window of the latest expunges is kept. Older entries get forgotten,
+ * and changes since a forgotten mod-sequence can not be reported anymore.
+ * <p>
+ * Reference: <a href="https://tools.ietf.org/html/rfc7162#section-3.2.5.1">RFC 7162 - VANISHED (EARLIER)</a>
+ */
+final class ExpungedUids {
+    private static final int INITIAL_CAPACITY = 16;
+    static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final int maxSize;
+    private long[] uids = new long[INITIAL_CAPACITY];
+    private long[] modSeqs = new long[INITIAL_CAPACITY];
+    private int length;
+    private long forgottenModSeq; // Highest mod-sequence of forgotten entries
+
+    ExpungedUids() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    ExpungedUids(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    synchronized void add(long uid, long modSeq) {
+        if (length == maxSize) {
+            // Forget oldest half at once, for amortized constant cost
+            final int forget = Math.max(1, length / 2);
+            forgottenModSeq = modSeqs[forget - 1];
+            length -= forget;
+            System.arraycopy(uids, forget, uids, 0, length);
+            System.arraycopy(modSeqs, forget, modSeqs, 0, length);
+        } else if (length == uids.length) {
+            final int newCapacity = Math.min(maxSize, length + (length >> 1));
+            uids = Arrays.copyOf(uids, newCapacity);
+            modSeqs = Arrays.copyOf(modSeqs, newCapacity);
+        }
+        uids[length] = uid;
+        modSeqs[length] = modSeq;
+        length++;
+    }
+
+    /**
+     * @param modSeq the mod-sequence.
+     * @return the UIDs expunged after given mod-sequence, in ascending order,
+     * or null if expunges after given mod-sequence got forgotten.
+     */
+    synchronized long[] since(long modSeq) {
+        if (modSeq < forgottenModSeq) {
+            return null;
+        }
+        int idx = Arrays.binarySearch(modSeqs, 0, length, modSeq + 1);
+        if (idx < 0) {
+            idx = -(idx + 1);
+        } else {
+            // Several UIDs share the mod-sequence of one expunge
+            while (idx > 0 && modSeqs[idx - 1] > modSeq) {
+                idx--;
+            }
+        }
+        final long[] ret = Arrays.copyOfRange(uids, idx, length);
+        Arrays.sort(ret);
+        return ret;
+    }
+}
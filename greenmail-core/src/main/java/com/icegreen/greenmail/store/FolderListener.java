@@ -12,9 +12,46 @@ import jakarta.mail.Flags;
 public interface FolderListener {
     void expunged(int msn);
 
+    /**
+     * Notifies about an expunged message.
+     *
+     * @param msn the message sequence number, before expunging.
+     * @param uid the UID of the expunged message.
+     */
+    default void expunged(int msn, long uid) {
+        expunged(msn);
+    }
+
+    /**
+     * Notifies about messages expunged at once, such as by a single EXPUNGE.
+     * <p>
+     * Message sequence numbers are descending, so that each one is valid after expunging its predecessors
+     * (as required for reporting untagged EXPUNGE responses).
+     *
+     * @param msns the message sequence numbers, before expunging and in descending order.
+     * @param uids the UIDs of the expunged messages, in same order as the MSNs.
+     */
+    default void expunged(int[] msns, long[] uids) {
+        for (int i = 0; i < msns.length; i++) {
+            expunged(msns[i], uids[i]);
+        }
+    }
+
     void added(int msn);
 
     void flagsUpdated(int msn, Flags flags, Long uid);
 
+    /**
+     * Notifies about updated flags, including the mod-sequence of the update.
+     *
+     * @param msn    the message sequence number.
+     * @param flags  the updated flags.
+     * @param uid    the UID to report, or null.
+     * @param modSeq the mod-sequence of the message.
+     */
+    default void flagsUpdated(int msn, Flags flags, Long uid, long modSeq) {
+        flagsUpdated(msn, flags, uid);
+    }
+
     void mailboxDeleted();
 }
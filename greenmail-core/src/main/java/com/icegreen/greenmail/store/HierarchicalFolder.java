@@ -13,17 +13,21 @@ import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
 import jakarta.mail.UIDFolder;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.search.AndTerm;
+import jakarta.mail.search.FlagTerm;
 import jakarta.mail.search.SearchTerm;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
 
 /**
  * @author Raimund Klein <raimund.klein@gmx.de>
@@ -43,14 +47,18 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
         PERMANENT_FLAGS.add(Flags.Flag.USER);
     }
 
-    private final StoredMessageCollection mailMessages = new ListBasedStoredMessageCollection();
+    private final StoredMessageCollection mailMessages = new UidIndexedStoredMessageCollection();
     private final List<FolderListener> _mailboxListeners = Collections.synchronizedList(new ArrayList<>());
     protected String name;
-    private final Collection<HierarchicalFolder> children = new CopyOnWriteArrayList<>();
+    private final Map<String, HierarchicalFolder> children = new LinkedHashMap<>(); // By folded name, guarded by itself
+    private volatile Collection<HierarchicalFolder> childrenSnapshot; // Rebuilt on access after changes
     private HierarchicalFolder parent;
     private boolean isSelectable = false;
     private final AtomicLong nextUid = new AtomicLong(1);
+    private final AtomicLong highestModSeq = new AtomicLong(1);
+    private final ExpungedUids expungedUids = new ExpungedUids();
     private final long uidValidity;
+    private volatile boolean rawMessageStorage;
 
     protected HierarchicalFolder(HierarchicalFolder parent, String name) {
         this.name = name;
@@ -73,45 +81,100 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
      * @return the children.
      */
     public Collection<HierarchicalFolder> getChildren() {
-        return children;
+        Collection<HierarchicalFolder> snapshot = childrenSnapshot;
+        if (null == snapshot) {
+            synchronized (children) {
+                snapshot = Collections.unmodifiableList(new ArrayList<>(children.values()));
+                childrenSnapshot = snapshot;
+            }
+        }
+        return snapshot;
     }
 
     public HierarchicalFolder getParent() {
         return parent;
     }
 
-    void moveToNewParent(HierarchicalFolder newParent) {
-        if (!newParent.children.contains(this)) {
-            parent = newParent;
-            parent.children.add(this);
+    /**
+     * Moves this folder to a new parent and name in one step, never replacing another child of the new parent.
+     * <p>
+     * Locks the children of both parents, so callers must not move folders concurrently.
+     *
+     * @param newParent the new parent, or the current parent for renaming only.
+     * @param newName   the new name.
+     * @return false, if the new parent already has another child of the new name.
+     */
+    boolean moveTo(HierarchicalFolder newParent, String newName) {
+        final HierarchicalFolder oldParent = parent;
+        synchronized (newParent.children) {
+            synchronized (oldParent.children) {
+                final String oldName = name;
+                oldParent.removeChild(this);
+                name = newName;
+                if (null != newParent.children.putIfAbsent(foldCase(newName), this)) {
+                    name = oldName;
+                    oldParent.addChild(this);
+                    return false;
+                }
+                newParent.childrenSnapshot = null;
+                parent = newParent;
+                return true;
+            }
         }
     }
 
+    /**
+     * Looks up a child by name, ignoring case.
+     *
+     * @param name the child name.
+     * @return the child, or null if not existing.
+     */
     HierarchicalFolder getChild(String name) {
-        for (HierarchicalFolder child : children) {
-            if (child.getName().equalsIgnoreCase(name)) {
-                return child;
-            }
+        synchronized (children) {
+            return children.get(foldCase(name));
         }
-        return null;
     }
 
-
     HierarchicalFolder createChild(String mailboxName) {
         HierarchicalFolder child = new HierarchicalFolder(this, mailboxName);
-        if(children.stream().anyMatch(it->mailboxName.equals(it.name))) {
-            throw new IllegalStateException("Mailbox "+mailboxName+ " already exists in "+children);
+        synchronized (children) {
+            if (children.containsKey(foldCase(mailboxName))) {
+                throw new IllegalStateException("Mailbox " + mailboxName + " already exists in " + children.values());
+            }
+            addChild(child);
         }
-        children.add(child);
         return child;
     }
 
+    private void addChild(HierarchicalFolder child) {
+        synchronized (children) {
+            children.put(foldCase(child.name), child);
+            childrenSnapshot = null;
+        }
+    }
+
     void removeChild(HierarchicalFolder toDelete) {
-        children.remove(toDelete);
+        synchronized (children) {
+            if (children.remove(foldCase(toDelete.name), toDelete)) {
+                childrenSnapshot = null;
+            }
+        }
     }
 
     boolean hasChildren() {
-        return !children.isEmpty();
+        synchronized (children) {
+            return !children.isEmpty();
+        }
+    }
+
+    /**
+     * Folds the case of a mailbox name, as children are looked up ignoring case.
+     *
+     * @param name the mailbox name.
+     * @return the name in lower case.
+     */
+    static String foldCase(String name) {
+        return name.toLowerCase(Locale.ENGLISH);
     }
 
     @Override
@@ -120,7 +183,11 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
     }
 
     public void setName(String name) {
-        this.name = name;
+        if (null == parent) {
+            this.name = name;
+        } else if (!moveTo(parent, name)) {
+            throw new IllegalStateException("Mailbox " + name + " already exists in " + parent);
+        }
     }
 
     @Override
@@ -128,6 +195,34 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
         return parent.getFullName() + ImapConstants.HIERARCHY_DELIMITER_CHAR + name;
     }
 
+    /**
+     * Checks if new messages are stored as raw bytes, as configured on the root folder.
+     *
+     * @return true, if raw message storage is enabled.
+     * @see RawStoredMessage
+     */
+    boolean isRawMessageStorage() {
+        return null == parent ? rawMessageStorage : parent.isRawMessageStorage();
+    }
+
+    void setRawMessageStorage(boolean rawMessageStorage) {
+        this.rawMessageStorage = rawMessageStorage;
+    }
+
+    /**
+     * @return the message counter of the store, kept by the root folder.
+     */
+    MessageCounter getMessageCounter() {
+        return parent.getMessageCounter();
+    }
+
+    /**
+     * @return the keyword ids of the store, kept by the root folder.
+     */
+    Keywords getKeywords() {
+        return parent.getKeywords();
+    }
+
     @Override
     public Flags getAvailableFlags() {
         return DEFAULT_FLAGS;
@@ -155,17 +250,23 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
         return nextUid.get();
     }
 
+    @Override
+    public long getHighestModSeq() {
+        return highestModSeq.get();
+    }
+
+    @Override
+    public long[] getExpungedUids(long modSeq) {
+        return expungedUids.since(modSeq);
+    }
+
+    private long nextModSeq() {
+        return highestModSeq.incrementAndGet();
+    }
+
     @Override
     public int getUnseenCount() {
-        int count = 0;
-        synchronized (mailMessages) {
-            for (StoredMessage message : mailMessages) {
-                if (!message.isSet(Flags.Flag.SEEN)) {
-                    count++;
-                }
-            }
-        }
-        return count;
+        return mailMessages.getUnseenCount();
     }
 
     /**
@@ -180,18 +281,7 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
 
     @Override
     public int getRecentCount(boolean reset) {
-        int count = 0;
-        synchronized (mailMessages) {
-            for (StoredMessage message : mailMessages) {
-                if (message.isSet(Flags.Flag.RECENT)) {
-                    count++;
-                    if (reset) {
-                        message.setFlag(Flags.Flag.RECENT, false);
-                    }
-                }
-            }
-        }
-        return count;
+        return mailMessages.getRecentCount(reset);
     }
 
     @Override
@@ -221,18 +311,25 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
     }
 
     @Override
-    public List<StoredMessage> getNonDeletedMessages() {
-        List<StoredMessage> ret = new ArrayList<>();
+    public List<SequencedMessage> getMessages(IdRange[] idSet, boolean useUids) {
+        return mailMessages.getMessages(idSet, useUids);
+    }
 
+    @Override
+    public List<StoredMessage> getNonDeletedMessages() {
         synchronized (mailMessages) {
-            for (StoredMessage mailMessage : mailMessages) {
-                if (!mailMessage.getFlags().contains(Flags.Flag.DELETED)) {
+            final List<StoredMessage> messages = mailMessages.getMessages();
+            if (0 == mailMessages.getDeletedCount()) {
+                return new ArrayList<>(messages);
+            }
+            List<StoredMessage> ret = new ArrayList<>(messages.size());
+            for (StoredMessage mailMessage : messages) {
+                if (!mailMessage.isSet(Flags.Flag.DELETED)) {
                     ret.add(mailMessage);
                 }
             }
+            return ret;
         }
-
-        return ret;
     }
 
     @Override
@@ -248,86 +345,229 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
     public long appendMessage(MimeMessage message,
                               Flags flags,
                               Date receivedDate) {
-        final long uid = nextUid.getAndIncrement();
+        return appendMessages(Collections.singletonList(new MessageToAppend(message, flags, receivedDate)))[0];
+    }
+
+    @Override
+    public long[] appendMessages(List<MessageToAppend> messages) {
+        final List<LongFunction<StoredMessage>> factories = new ArrayList<>(messages.size());
+        for (MessageToAppend append : messages) {
+            factories.add(uid -> newStoredMessage(append.getMessage(), append.getFlags(), append.getInternalDate(), uid));
+        }
+        return storeAndNotifyListeners(factories);
+    }
 
+    /**
+     * Creates a new stored message, flagged as recent.
+     */
+    private StoredMessage newStoredMessage(MimeMessage message, Flags flags, Date receivedDate, long uid) {
         try {
             message.setFlags(flags, true);
             message.setFlag(Flags.Flag.RECENT, true);
         } catch (MessagingException e) {
             throw new IllegalStateException("Can not set flags", e);
         }
-        StoredMessage storedMessage = new StoredMessage(message,
-                receivedDate, uid);
-        storeAndNotifyListeners(storedMessage);
+        return isRawMessageStorage() ?
+                new RawStoredMessage(message, receivedDate, uid, getKeywords()) :
+                new StoredMessage(message, receivedDate, uid, getKeywords());
+    }
 
-        return uid;
+    /**
+     * Appends a message referencing given content, without copying the content.
+     *
+     * @param content      the shared content.
+     * @param flags        the flags.
+     * @param receivedDate the received date.
+     * @return the UID of the appended message.
+     */
+    long appendMessage(MessageContent content, Flags flags, Date receivedDate) {
+        final Flags messageFlags = new Flags(flags);
+        messageFlags.add(Flags.Flag.RECENT);
+        return storeAndNotifyListeners(Collections.singletonList(
+            uid -> new RawStoredMessage(content, messageFlags, receivedDate, uid, getKeywords())))[0];
     }
 
-    private void storeAndNotifyListeners(StoredMessage storedMessage) {
-        int newMsn;
+    /**
+     * Stores new messages and notifies the listeners.
+     * <p>
+     * UIDs are assigned while holding the lock of the messages, so that UIDs ascend in mailbox order.
+     *
+     * @param factories create the messages for given UIDs.
+     * @return the UIDs, in given order.
+     */
+    private long[] storeAndNotifyListeners(List<LongFunction<StoredMessage>> factories) {
+        final long[] uids = new long[factories.size()];
+        final int firstMsn;
         synchronized (mailMessages) {
-            mailMessages.add(storedMessage);
-            newMsn = mailMessages.size();
+            firstMsn = mailMessages.size() + 1;
+            for (int i = 0; i < uids.length; i++) {
+                uids[i] = nextUid.getAndIncrement();
+                StoredMessage storedMessage = factories.get(i).apply(uids[i]);
+                storedMessage.setModSeq(nextModSeq());
+                mailMessages.add(storedMessage);
+            }
         }
 
-        // Notify all the listeners of the new message
+        // Notify all the listeners of the new messages
         synchronized (_mailboxListeners) {
-            for (FolderListener _mailboxListener : _mailboxListeners) {
-                _mailboxListener.added(newMsn);
+            for (int i = 0; i < uids.length; i++) {
+                for (FolderListener _mailboxListener : _mailboxListeners) {
+                    _mailboxListener.added(firstMsn + i);
+                }
             }
         }
+        getMessageCounter().added(uids.length);
+        return uids;
     }
 
     @Override
     public void setFlags(Flags flags, boolean value, long uid, FolderListener silentListener, boolean addUid) throws FolderException {
-        int msn = getMsn(uid);
-        StoredMessage message = mailMessages.get(msn - 1);
+        updateFlags(uid, silentListener, addUid, message -> message.setFlags(flags, value));
+    }
 
-        message.setFlags(flags, value);
+    @Override
+    public void replaceFlags(Flags flags, long uid, FolderListener silentListener, boolean addUid) throws FolderException {
+        updateFlags(uid, silentListener, addUid, message -> {
+            message.setFlags(MessageFlags.ALL_FLAGS, false);
+            message.setFlags(flags, true);
+        });
+    }
+
+    private void updateFlags(long uid, FolderListener silentListener, boolean addUid,
+                             Consumer<StoredMessage> flagUpdate) throws FolderException {
+        final int msn;
+        final Flags updatedFlags;
+        final long modSeq;
+        synchronized (mailMessages) {
+            msn = getMsn(uid);
+            StoredMessage message = mailMessages.get(msn - 1);
+            updatedFlags = updateFlags(message, flagUpdate);
+            modSeq = message.getModSeq();
+        }
 
         Long uidNotification = null;
         if (addUid) {
             uidNotification = uid;
         }
-        notifyFlagUpdate(msn, message.getFlags(), uidNotification, silentListener);
+        notifyFlagUpdate(msn, updatedFlags, uidNotification, modSeq, silentListener);
+    }
+
+    /**
+     * Updates the flags, and assigns a new mod-sequence if the flags changed.
+     * Requires lock on messages.
+     *
+     * @return the updated flags.
+     */
+    private Flags updateFlags(StoredMessage message, Consumer<StoredMessage> flagUpdate) {
+        final StoredFlags previousFlags = message.getStoredFlags().copy();
+        flagUpdate.accept(message);
+        if (!message.getStoredFlags().equals(previousFlags)) {
+            message.setModSeq(nextModSeq());
+        }
+        return message.getFlags();
     }
 
     @Override
-    public void replaceFlags(Flags flags, long uid, FolderListener silentListener, boolean addUid) throws FolderException {
-        int msn = getMsn(uid);
-        StoredMessage message = mailMessages.get(msn - 1);
-        message.setFlags(MessageFlags.ALL_FLAGS, false);
-        message.setFlags(flags, true);
+    public void setFlags(Flags flags, boolean value, IdRange[] idSet, boolean useUids, FolderListener silentListener) {
+        setFlags(flags, value, idSet, useUids, Long.MAX_VALUE, silentListener);
+    }
 
-        Long uidNotification = null;
-        if (addUid) {
-            uidNotification = uid;
+    @Override
+    public void replaceFlags(Flags flags, IdRange[] idSet, boolean useUids, FolderListener silentListener) {
+        replaceFlags(flags, idSet, useUids, Long.MAX_VALUE, silentListener);
+    }
+
+    @Override
+    public List<SequencedMessage> setFlags(Flags flags, boolean value, IdRange[] idSet, boolean useUids,
+                                           long unchangedSince, FolderListener silentListener) {
+        return updateFlags(idSet, useUids, unchangedSince, silentListener, message -> message.setFlags(flags, value));
+    }
+
+    @Override
+    public List<SequencedMessage> replaceFlags(Flags flags, IdRange[] idSet, boolean useUids,
+                                               long unchangedSince, FolderListener silentListener) {
+        return updateFlags(idSet, useUids, unchangedSince, silentListener, message -> {
+            message.setFlags(MessageFlags.ALL_FLAGS, false);
+            message.setFlags(flags, true);
+        });
+    }
+
+    private List<SequencedMessage> updateFlags(IdRange[] idSet, boolean useUids, long unchangedSince,
+                                               FolderListener silentListener, Consumer<StoredMessage> flagUpdate) {
+        final List<SequencedMessage> updatedMessages;
+        final List<SequencedMessage> modifiedMessages = new ArrayList<>();
+        final List<Flags> updatedFlags;
+        final long[] modSeqs;
+        synchronized (mailMessages) {
+            final List<SequencedMessage> messages = mailMessages.getMessages(idSet, useUids);
+            updatedMessages = new ArrayList<>(messages.size());
+            updatedFlags = new ArrayList<>(messages.size());
+            modSeqs = new long[messages.size()];
+            for (SequencedMessage sequencedMessage : messages) {
+                final StoredMessage message = sequencedMessage.getMessage();
+                if (message.getModSeq() > unchangedSince) {
+                    modifiedMessages.add(sequencedMessage);
+                    continue;
+                }
+                updatedFlags.add(updateFlags(message, flagUpdate));
+                modSeqs[updatedMessages.size()] = message.getModSeq();
+                updatedMessages.add(sequencedMessage);
+            }
+        }
+
+        synchronized (_mailboxListeners) {
+            for (FolderListener listener : _mailboxListeners) {
+                if (listener == silentListener) {
+                    continue;
+                }
+                for (int i = 0; i < updatedMessages.size(); i++) {
+                    final SequencedMessage updatedMessage = updatedMessages.get(i);
+                    listener.flagsUpdated(updatedMessage.getMsn(), updatedFlags.get(i),
+                        useUids ? updatedMessage.getUid() : null, modSeqs[i]);
+                }
+            }
         }
-        notifyFlagUpdate(msn, message.getFlags(), uidNotification, silentListener);
+        return modifiedMessages;
     }
 
-    private void notifyFlagUpdate(int msn, Flags flags, Long uidNotification, FolderListener silentListener) {
+    private void notifyFlagUpdate(int msn, Flags flags, Long uidNotification, long modSeq,
+                                  FolderListener silentListener) {
         synchronized (_mailboxListeners) {
             for (FolderListener listener : _mailboxListeners) {
                 if (listener == silentListener) {
                     continue;
                 }
 
-                listener.flagsUpdated(msn, flags, uidNotification);
+                listener.flagsUpdated(msn, flags, uidNotification, modSeq);
             }
         }
     }
 
     @Override
     public void deleteAllMessages() {
+        final int removed;
         synchronized (mailMessages) {
+            final long[] uids = mailMessages.getMessageUids();
+            removed = uids.length;
             mailMessages.clear();
+            if (removed > 0) {
+                final long modSeq = nextModSeq();
+                for (long uid : uids) {
+                    expungedUids.add(uid, modSeq);
+                }
+            }
         }
+        getMessageCounter().removed(removed);
     }
 
     @Override
     public void store(MovingMessage mail) {
-        store(mail.getMessage());
+        if (isRawMessageStorage()) {
+            // Share content across all recipients of the mail
+            appendMessage(mail.getContent(), new Flags(), new Date());
+        } else {
+            store(mail.getMessage());
+        }
     }
 
 
@@ -340,14 +580,7 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
 
     @Override
     public StoredMessage getMessage(long uid) {
-        synchronized (mailMessages) {
-            for (StoredMessage mailMessage : mailMessages) {
-                if (mailMessage.getUid() == uid) {
-                    return mailMessage;
-                }
-            }
-        }
-        return null;
+        return mailMessages.getByUid(uid);
     }
 
     @Override
@@ -357,7 +590,24 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
 
     @Override
     public long[] search(SearchTerm searchTerm) {
-        List<StoredMessage> matchedMessages = new ArrayList<>();
+        List<SequencedMessage> matchedMessages = searchMessages(searchTerm);
+        long[] matchedUids = new long[matchedMessages.size()];
+        for (int i = 0; i < matchedUids.length; i++) {
+            matchedUids[i] = matchedMessages.get(i).getUid();
+        }
+        return matchedUids;
+    }
+
+    @Override
+    public List<SequencedMessage> searchMessages(SearchTerm searchTerm) {
+        final Flags setFlags = new Flags();
+        final Flags unsetFlags = new Flags();
+        if (collectFlags(searchTerm, setFlags, unsetFlags)) {
+            // Only flag criteria, such as UNSEEN or DELETED
+            return mailMessages.getMessagesWithFlags(setFlags, unsetFlags);
+        }
+
+        List<SequencedMessage> matchedMessages = new ArrayList<>();
 
         synchronized (mailMessages) {
             for (int i = 0; i < mailMessages.size(); i++) {
@@ -366,24 +616,48 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
                 // https://tools.ietf.org/html/rfc3501#page-10
                 mailMessage.updateMessageNumber(i + 1);
                 if (searchTerm.match(mailMessage.getMimeMessage())) {
-                    matchedMessages.add(mailMessage);
+                    matchedMessages.add(new SequencedMessage(i + 1, mailMessage));
                 }
             }
         }
+        return matchedMessages;
+    }
 
-        long[] matchedUids = new long[matchedMessages.size()];
-        for (int i = 0; i < matchedUids.length; i++) {
-            StoredMessage storedMessage = matchedMessages.get(i);
-            long uid = storedMessage.getUid();
-            matchedUids[i] = uid;
+    /**
+     * Collects the flags of a search term consisting of flag terms only.
+     *
+     * @return true, if the term only consists of flag terms.
+     */
+    private static boolean collectFlags(SearchTerm searchTerm, Flags setFlags, Flags unsetFlags) {
+        if (searchTerm instanceof FlagTerm) {
+            final FlagTerm flagTerm = (FlagTerm) searchTerm;
+            if (flagTerm.getTestSet()) {
+                setFlags.add(flagTerm.getFlags());
+            } else {
+                unsetFlags.add(flagTerm.getFlags());
+            }
+            return true;
         }
-        return matchedUids;
+        if (searchTerm instanceof AndTerm) {
+            for (SearchTerm term : ((AndTerm) searchTerm).getTerms()) {
+                if (!collectFlags(term, setFlags, unsetFlags)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
     }
 
     @Override
     public long copyMessage(long uid, MailFolder toFolder)
             throws FolderException {
         StoredMessage originalMessage = getMessage(uid);
+        if (originalMessage instanceof RawStoredMessage && toFolder instanceof HierarchicalFolder) {
+            // Content is immutable, so the copy can share it
+            return ((HierarchicalFolder) toFolder).appendMessage(((RawStoredMessage) originalMessage).getContent(),
+                    originalMessage.getFlags(), originalMessage.getReceivedDate());
+        }
         MimeMessage newMime;
         try {
             newMime = new MimeMessage(originalMessage.getMimeMessage());
@@ -396,31 +670,46 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
 
     @Override
     public long moveMessage(long uid, MailFolder toFolder) throws FolderException {
-        int msn = mailMessages.getMsn(uid);
-        StoredMessage msg = mailMessages.remove(uid);
+        final int msn;
+        final StoredMessage msg;
+        synchronized (mailMessages) {
+            msn = mailMessages.getMsn(uid);
+            msg = mailMessages.remove(uid);
+            expungedUids.add(uid, nextModSeq());
+        }
         synchronized (_mailboxListeners) { // Notify listeners of message deleted
             for (FolderListener _mailboxListener : _mailboxListeners) {
-                _mailboxListener.expunged(msn);
+                _mailboxListener.expunged(msn, uid);
             }
         }
+        getMessageCounter().removed(1);
 
         final HierarchicalFolder targetFolder = (HierarchicalFolder) toFolder;
-        final long newUid = targetFolder.nextUid.getAndIncrement();
-        StoredMessage storedMessage = new StoredMessage(msg.getMimeMessage(), msg.getReceivedDate(), newUid);
-        storedMessage.setFlag(Flags.Flag.RECENT, true); // Behaves as COPY
-        targetFolder.storeAndNotifyListeners(storedMessage);
-
-        return newUid;
+        return targetFolder.storeAndNotifyListeners(Collections.singletonList(newUid -> {
+            StoredMessage storedMessage = msg.copy(newUid);
+            storedMessage.setFlag(Flags.Flag.RECENT, true); // Behaves as COPY
+            return storedMessage;
+        }))[0];
     }
 
     @Override
     public void expunge() {
-        mailMessages.expunge(_mailboxListeners);
+        expunge(null);
     }
 
     @Override
     public void expunge(IdRange[] idRanges) {
-        mailMessages.expunge(_mailboxListeners, idRanges);
+        final List<StoredMessage> expunged;
+        synchronized (mailMessages) {
+            expunged = mailMessages.expunge(_mailboxListeners, idRanges);
+            if (!expunged.isEmpty()) {
+                final long modSeq = nextModSeq();
+                for (StoredMessage message : expunged) {
+                    expungedUids.add(message.getUid(), modSeq);
+                }
+            }
+        }
+        getMessageCounter().removed(expunged.size());
     }
 
     @Override
@@ -472,20 +761,14 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
 
     @Override
     public Message[] getMessagesByUID(long[] uids) {
-        synchronized (mailMessages) {
-            List<Message> messages = new ArrayList<>(uids.length);
-            Map<Long, StoredMessage> uid2Msg = new HashMap<>(mailMessages.size());
-            for (StoredMessage mailMessage : mailMessages) {
-                uid2Msg.put(mailMessage.getUid(), mailMessage);
+        List<Message> messages = new ArrayList<>(uids.length);
+        for (long uid : uids) {
+            final StoredMessage storedMessage = mailMessages.getByUid(uid);
+            if (storedMessage != null) {
+                messages.add(storedMessage.getMimeMessage());
             }
-            for (long uid : uids) {
-                final StoredMessage storedMessage = uid2Msg.get(uid);
-                if (storedMessage != null) {
-                    messages.add(storedMessage.getMimeMessage());
-                }
-            }
-            return messages.toArray(new Message[0]);
         }
+        return messages.toArray(new Message[0]);
     }
 
 
@@ -7,6 +7,10 @@
 package com.icegreen.greenmail.store;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import jakarta.mail.MessagingException;
 import jakarta.mail.Quota;
@@ -25,10 +29,30 @@ public class InMemoryStore
     boolean quotaSupported = true;
     private final RootFolder rootMailbox = new RootFolder();
     private final Map<String, Set<Quota>> quotaMap = new HashMap<>();
-
+    // Resolved mailboxes by case folded absolute name, cleared when renaming or deleting mailboxes
+    private final Map<String, HierarchicalFolder> mailboxCache = new ConcurrentHashMap<>();
+    private final AtomicLong mailboxCacheGeneration = new AtomicLong();
+    private final Object renameLock = new Object(); // Serializes moving folders, which locks two parents
 
     @Override
     public MailFolder getMailbox(String absoluteMailboxName) {
+        final String key = HierarchicalFolder.foldCase(absoluteMailboxName);
+        HierarchicalFolder mailbox = mailboxCache.get(key);
+        if (null == mailbox) {
+            final long generation = mailboxCacheGeneration.get();
+            mailbox = resolveMailbox(absoluteMailboxName);
+            if (null != mailbox) {
+                mailboxCache.put(key, mailbox);
+                if (generation != mailboxCacheGeneration.get()) {
+                    // Resolved while renaming or deleting, so possibly outdated
+                    mailboxCache.remove(key, mailbox);
+                }
+            }
+        }
+        return mailbox;
+    }
+
+    private HierarchicalFolder resolveMailbox(String absoluteMailboxName) {
         // #mail.3564001.INBOX
         StringTokenizer tokens = new StringTokenizer(absoluteMailboxName, HIERARCHY_DELIMITER);
 
@@ -79,10 +103,11 @@ public class InMemoryStore
 
         HierarchicalFolder parent = toDelete.getParent();
         parent.removeChild(toDelete);
+        invalidateMailboxCache();
     }
 
     @Override
-    public void renameMailbox(MailFolder existingFolder, String newName) {
+    public void renameMailbox(MailFolder existingFolder, String newName) throws FolderException {
         HierarchicalFolder toRename = (HierarchicalFolder) existingFolder;
         HierarchicalFolder parent = toRename.getParent();
 
@@ -97,21 +122,34 @@ public class InMemoryStore
             newFolderPathWithoutName = "";
         }
 
-        if (parent.getName().equals(newFolderPathWithoutName)) {
-            // Simple rename
-            toRename.setName(newFolderName);
-        } else {
+        HierarchicalFolder newParent = parent; // Simple rename
+        if (!parent.getName().equals(newFolderPathWithoutName)) {
             // Hierarchy change
-            parent.removeChild(toRename);
             HierarchicalFolder userFolder = getInboxOrUserRootFolder(toRename);
             String[] path = newName.split('\\' + ImapConstants.HIERARCHY_DELIMITER);
-            HierarchicalFolder newParent = userFolder;
+            newParent = userFolder;
             for (int i = 0; i < path.length - 1; i++) {
                 newParent = newParent.getChild(path[i]);
             }
-            toRename.moveToNewParent(newParent);
-            toRename.setName(newFolderName);
         }
+        final boolean moved;
+        synchronized (renameLock) {
+            moved = toRename.moveTo(newParent, newFolderName);
+        }
+        if (!moved) {
+            throw new FolderException("Cannot rename mailbox " + toRename.getFullName() + " to " + newName +
+                ", the name already exists");
+        }
+        invalidateMailboxCache();
+    }
+
+    /**
+     * Clears resolved mailboxes, after changing the hierarchy.
+     * Renaming a mailbox changes the names of all its descendants, so all entries get cleared.
+     */
+    private void invalidateMailboxCache() {
+        mailboxCacheGeneration.incrementAndGet();
+        mailboxCache.clear();
     }
 
     private HierarchicalFolder getInboxOrUserRootFolder(HierarchicalFolder folder) {
@@ -142,52 +180,57 @@ public class InMemoryStore
     }
 
     @Override
-    public Collection<MailFolder> listMailboxes(String searchPattern)
-        throws FolderException {
-        int starIndex = searchPattern.indexOf('*');
-        int percentIndex = searchPattern.indexOf('%');
-
-        // We only handle wildcard at the end of the search pattern.
-        if ((starIndex > -1 && starIndex < searchPattern.length() - 1) ||
-            (percentIndex > -1 && percentIndex < searchPattern.length() - 1)) {
-            throw new FolderException("Wildcard characters <" + searchPattern
-                + "> are only handled as the last character of a list argument");
-        }
-
+    public Collection<MailFolder> listMailboxes(String searchPattern) {
         List<MailFolder> mailboxes = new ArrayList<>();
-        if (starIndex != -1 || percentIndex != -1) {
-            int lastDot = searchPattern.lastIndexOf(HIERARCHY_DELIMITER);
-            String parentName;
-            if (lastDot < 0) {
-                parentName = USER_NAMESPACE;
-            } else {
-                parentName = searchPattern.substring(0, lastDot);
-            }
-            String matchPattern = searchPattern.substring(lastDot + 1, searchPattern.length() - 1);
-
-            HierarchicalFolder parent = (HierarchicalFolder) getMailbox(parentName);
-            // If the parent from the search pattern doesn't exist,
-            // return empty.
-            if (parent != null) {
-                for (final HierarchicalFolder child : parent.getChildren()) {
-                    if (child.getName().startsWith(matchPattern)) {
-                        mailboxes.add(child);
-
-                        if (starIndex != -1) {
-                            addAllChildren(child, mailboxes);
-                        }
-                    }
-                }
-            }
+        listMailboxes(searchPattern, mailboxes::add);
+        return mailboxes;
+    }
+
+    /**
+     * Walks the mailboxes matching the pattern, parents before children, without collecting them first.
+     * <p>
+     * Wildcards may occur anywhere in the pattern, as for {@link #listMailboxes(String)}.
+     * Patterns not starting with the namespace prefix are relative to the user namespace.
+     * Skips subtrees which can not match, and looks up hierarchy levels without wildcards directly.
+     *
+     * @param searchPattern the pattern to match mailboxes.
+     * @param consumer      receives the matching mailboxes.
+     */
+    @Override
+    public void listMailboxes(String searchPattern, Consumer<MailFolder> consumer) {
+        final MailboxPattern pattern = new MailboxPattern(searchPattern.startsWith(NAMESPACE_PREFIX) ?
+            searchPattern : USER_NAMESPACE + HIERARCHY_DELIMITER + searchPattern);
+        listMailboxes(pattern, rootMailbox, pattern.advance(pattern.start(), rootMailbox.getName()), consumer);
+    }
 
+    private void listMailboxes(MailboxPattern pattern, HierarchicalFolder folder, BitSet states,
+                               Consumer<MailFolder> consumer) {
+        if (pattern.matches(states)) {
+            consumer.accept(folder);
+        }
+        final BitSet childStates = pattern.advance(states, HIERARCHY_DELIMITER_CHAR);
+        if (childStates.isEmpty()) {
+            return; // No child can match
+        }
+        final String literalLevel = pattern.literalLevel(childStates);
+        if (null != literalLevel) {
+            final HierarchicalFolder child = folder.getChild(literalLevel);
+            if (null != child) {
+                listChild(pattern, child, childStates, consumer);
+            }
         } else {
-            MailFolder folder = getMailbox(searchPattern);
-            if (folder != null) {
-                mailboxes.add(folder);
+            for (HierarchicalFolder child : folder.getChildren()) {
+                listChild(pattern, child, childStates, consumer);
             }
         }
+    }
 
-        return mailboxes;
+    private void listChild(MailboxPattern pattern, HierarchicalFolder child, BitSet childStates,
+                           Consumer<MailFolder> consumer) {
+        final BitSet states = pattern.advance(childStates, child.getName());
+        if (!states.isEmpty()) {
+            listMailboxes(pattern, child, states, consumer);
+        }
     }
 
     @Override
@@ -275,14 +318,6 @@ public class InMemoryStore
         quotaMap.keySet().removeIf(key -> key.startsWith(qualifiedRootPrefix));
     }
 
-    private void addAllChildren(HierarchicalFolder mailbox, Collection<MailFolder> mailboxes) {
-        Collection<HierarchicalFolder> children = mailbox.getChildren();
-        for (HierarchicalFolder child : children) {
-            mailboxes.add(child);
-            addAllChildren(child, mailboxes);
-        }
-    }
-
     @Override
     public boolean isQuotaSupported() {
         return quotaSupported;
@@ -292,4 +327,34 @@ public class InMemoryStore
     public void setQuotaSupported(final boolean pQuotaSupported) {
         quotaSupported = pQuotaSupported;
     }
+
+    /**
+     * Deletes all messages of all mailboxes, and releases the user flags (keywords) known to the store.
+     */
+    public void deleteAllMessages() {
+        for (MailFolder folder : listMailboxes("*")) {
+            folder.deleteAllMessages();
+        }
+        rootMailbox.getKeywords().clear();
+    }
+
+    @Override
+    public boolean isRawMessageStorage() {
+        return rootMailbox.isRawMessageStorage();
+    }
+
+    @Override
+    public void setRawMessageStorage(boolean rawMessageStorage) {
+        rootMailbox.setRawMessageStorage(rawMessageStorage);
+    }
+
+    @Override
+    public long getMessageCount() {
+        return rootMailbox.getMessageCounter().get();
+    }
+
+    @Override
+    public CompletableFuture<Void> awaitMessageCount(long expectedCount) {
+        return rootMailbox.getMessageCounter().await(expectedCount);
+    }
 }
@@ -0,0 +1,48 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interns user flags (keywords) of a store to small integer ids, so that messages store and compare keywords as ids.
+ * <p>
+ * Keywords are case-insensitive, as for {@link jakarta.mail.Flags}. Messages keep their own spelling.
+ * The store releases all ids when purging all messages. Ids are never reused, so that a message
+ * stored concurrently to purging never matches a different keyword.
+ *
+ * @see RootFolder#getKeywords()
+ */
+final class Keywords {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * @param keyword the keyword.
+     * @return the id of the keyword, assigned if new.
+     */
+    int intern(String keyword) {
+        return ids.computeIfAbsent(keyword.toLowerCase(Locale.ENGLISH), k -> nextId.getAndIncrement());
+    }
+
+    /**
+     * @param keyword the keyword.
+     * @return the id of the keyword, or -1 if never interned.
+     */
+    int find(String keyword) {
+        final Integer id = ids.get(keyword.toLowerCase(Locale.ENGLISH));
+        return null == id ? -1 : id;
+    }
+
+    /**
+     * Releases all ids, once no message references them.
+     */
+    void clear() {
+        ids.clear();
+    }
+}
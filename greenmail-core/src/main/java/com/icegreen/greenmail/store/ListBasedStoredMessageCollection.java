@@ -45,20 +45,6 @@ public class ListBasedStoredMessageCollection implements StoredMessageCollection
         mailMessages.clear();
     }
 
-    private void expungeMessage(int msn, Collection<FolderListener> mailboxListeners) {
-        // Notify all the listeners of the pending delete
-        synchronized (mailboxListeners) {
-            deleteMessage(msn);
-            for (FolderListener expungeListener : mailboxListeners) {
-                expungeListener.expunged(msn);
-            }
-        }
-    }
-
-    private void deleteMessage(int msn) {
-        mailMessages.remove(msn - 1); // input is 1 based index
-    }
-
     @Override
     public int getFirstUnseen() {
         synchronized (mailMessages) {
@@ -118,21 +104,30 @@ public class ListBasedStoredMessageCollection implements StoredMessageCollection
     }
 
     @Override
-    public void expunge(List<FolderListener> folderListeners) {
-        expunge(folderListeners, null);
+    public List<StoredMessage> expunge(List<FolderListener> folderListeners) {
+        return expunge(folderListeners, null);
     }
 
     @Override
-    public void expunge(List<FolderListener> folderListeners, IdRange[] idRanges) {
+    public List<StoredMessage> expunge(List<FolderListener> folderListeners, IdRange[] idRanges) {
+        final ExpungedMessages expunged = new ExpungedMessages();
         synchronized (mailMessages) {
-            for (int i = mailMessages.size() - 1; i >= 0; i--) {
+            // Single pass, moving kept messages to the front instead of removing one by one
+            final int size = mailMessages.size();
+            int target = 0;
+            for (int i = 0; i < size; i++) {
                 StoredMessage message = mailMessages.get(i);
                 if (message.isSet(Flags.Flag.DELETED) &&
                     (idRanges == null || IdRange.containsUid(idRanges, message.getUid()))) {
-                    expungeMessage(i + 1, folderListeners); // MSNs start counting at 1
+                    expunged.add(i + 1, message); // MSNs start counting at 1
+                } else {
+                    mailMessages.set(target++, message);
                 }
             }
+            mailMessages.subList(target, size).clear();
+            expunged.notifyListeners(folderListeners);
         }
+        return expunged.getMessages();
     }
 
     @Override
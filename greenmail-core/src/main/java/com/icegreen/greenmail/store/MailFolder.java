@@ -13,6 +13,8 @@ import com.icegreen.greenmail.mail.MovingMessage;
 import jakarta.mail.Flags;
 import jakarta.mail.internet.MimeMessage;
 import jakarta.mail.search.SearchTerm;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -68,6 +70,33 @@ public interface MailFolder {
      */
     long getUIDNext();
 
+    /**
+     * Gets the highest mod-sequence of all messages and expunges in this folder.
+     *
+     * @return the highest mod-sequence.
+     * @see <a href="https://tools.ietf.org/html/rfc7162#section-3.1.1">RFC 7162 - HIGHESTMODSEQ</a>
+     */
+    default long getHighestModSeq() {
+        long highestModSeq = 0L;
+        for (StoredMessage message : getMessages()) {
+            highestModSeq = Math.max(highestModSeq, message.getModSeq());
+        }
+        return highestModSeq;
+    }
+
+    /**
+     * Gets the UIDs of messages expunged after given mod-sequence.
+     * <p>
+     * Only recent expunges are remembered, so that older mod-sequences can not be resynchronized.
+     *
+     * @param modSeq the mod-sequence.
+     * @return the UIDs, in ascending order, or null if expunges since given mod-sequence are not remembered.
+     * By default, no expunges are remembered.
+     */
+    default long[] getExpungedUids(long modSeq) {
+        return null;
+    }
+
     /**
      * Appends a message.
      *
@@ -78,6 +107,23 @@ public interface MailFolder {
      */
     long appendMessage(MimeMessage message, Flags flags, Date internalDate);
 
+    /**
+     * Appends messages at once, with consecutive UIDs.
+     * <p>
+     * The default implementation appends the messages one by one.
+     *
+     * @param messages the messages.
+     * @return the uids, in given order.
+     */
+    default long[] appendMessages(List<MessageToAppend> messages) {
+        final long[] uids = new long[messages.size()];
+        for (int i = 0; i < uids.length; i++) {
+            final MessageToAppend message = messages.get(i);
+            uids[i] = appendMessage(message.getMessage(), message.getFlags(), message.getInternalDate());
+        }
+        return uids;
+    }
+
     void deleteAllMessages();
 
     void expunge() throws FolderException;
@@ -103,6 +149,26 @@ public interface MailFolder {
 
     long[] search(SearchTerm searchTerm);
 
+    /**
+     * Searches messages, resolving the message sequence numbers on the way.
+     *
+     * @param searchTerm the search term.
+     * @return the matching messages, in mailbox order.
+     */
+    default List<SequencedMessage> searchMessages(SearchTerm searchTerm) {
+        final long[] uids = search(searchTerm).clone();
+        Arrays.sort(uids);
+        final List<StoredMessage> messages = getMessages();
+        final List<SequencedMessage> ret = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            final StoredMessage message = messages.get(i);
+            if (Arrays.binarySearch(uids, message.getUid()) >= 0) {
+                ret.add(new SequencedMessage(i + 1, message));
+            }
+        }
+        return ret;
+    }
+
     long copyMessage(long uid, MailFolder toFolder) throws FolderException;
 
     long moveMessage(long uid, MailFolder toFolder) throws FolderException;
@@ -111,11 +177,113 @@ public interface MailFolder {
 
     void replaceFlags(Flags flags, long uid, FolderListener silentListener, boolean addUid) throws FolderException;
 
+    /**
+     * Sets or clears flags for all messages of a message set, as one batch.
+     *
+     * @param flags          the flags.
+     * @param value          true for setting, false for clearing the flags.
+     * @param idSet          the message set.
+     * @param useUids        true, if message set contains UIDs instead of MSNs.
+     * @param silentListener the listener not to notify, or null.
+     */
+    default void setFlags(Flags flags, boolean value, IdRange[] idSet, boolean useUids, FolderListener silentListener) {
+        setFlags(flags, value, idSet, useUids, Long.MAX_VALUE, silentListener);
+    }
+
+    /**
+     * Replaces flags for all messages of a message set, as one batch.
+     *
+     * @param flags          the flags.
+     * @param idSet          the message set.
+     * @param useUids        true, if message set contains UIDs instead of MSNs.
+     * @param silentListener the listener not to notify, or null.
+     */
+    default void replaceFlags(Flags flags, IdRange[] idSet, boolean useUids, FolderListener silentListener) {
+        replaceFlags(flags, idSet, useUids, Long.MAX_VALUE, silentListener);
+    }
+
+    /**
+     * Sets or clears flags for all messages of a message set not modified since given mod-sequence.
+     *
+     * @param flags          the flags.
+     * @param value          true for setting, false for clearing the flags.
+     * @param idSet          the message set.
+     * @param useUids        true, if message set contains UIDs instead of MSNs.
+     * @param unchangedSince the mod-sequence, see UNCHANGEDSINCE of RFC 7162.
+     * @param silentListener the listener not to notify, or null.
+     * @return the messages not updated, as modified since given mod-sequence.
+     */
+    default List<SequencedMessage> setFlags(Flags flags, boolean value, IdRange[] idSet, boolean useUids,
+                                            long unchangedSince, FolderListener silentListener) {
+        final List<SequencedMessage> modified = new ArrayList<>();
+        try {
+            for (SequencedMessage message : getMessages(idSet, useUids)) {
+                if (message.getMessage().getModSeq() > unchangedSince) {
+                    modified.add(message);
+                } else {
+                    setFlags(flags, value, message.getUid(), silentListener, useUids);
+                }
+            }
+        } catch (FolderException e) {
+            throw new IllegalStateException("Can not set flags " + flags, e);
+        }
+        return modified;
+    }
+
+    /**
+     * Replaces flags for all messages of a message set not modified since given mod-sequence.
+     *
+     * @param flags          the flags.
+     * @param idSet          the message set.
+     * @param useUids        true, if message set contains UIDs instead of MSNs.
+     * @param unchangedSince the mod-sequence, see UNCHANGEDSINCE of RFC 7162.
+     * @param silentListener the listener not to notify, or null.
+     * @return the messages not updated, as modified since given mod-sequence.
+     */
+    default List<SequencedMessage> replaceFlags(Flags flags, IdRange[] idSet, boolean useUids,
+                                                long unchangedSince, FolderListener silentListener) {
+        final List<SequencedMessage> modified = new ArrayList<>();
+        try {
+            for (SequencedMessage message : getMessages(idSet, useUids)) {
+                if (message.getMessage().getModSeq() > unchangedSince) {
+                    modified.add(message);
+                } else {
+                    replaceFlags(flags, message.getUid(), silentListener, useUids);
+                }
+            }
+        } catch (FolderException e) {
+            throw new IllegalStateException("Can not replace flags " + flags, e);
+        }
+        return modified;
+    }
+
     int getMsn(long uid) throws FolderException;
 
     void signalDeletion();
 
     List<StoredMessage> getMessages(MsgRangeFilter msgRangeFilter);
     List<StoredMessage> getMessages();
+
+    /**
+     * Resolves a message set in a single ordered pass.
+     *
+     * @param idSet   the message set.
+     * @param useUids true, if message set contains UIDs instead of MSNs.
+     * @return matching messages with MSN, in ascending order.
+     */
+    default List<SequencedMessage> getMessages(IdRange[] idSet, boolean useUids) {
+        final List<StoredMessage> messages = getMessages();
+        final boolean wildcard = IdRange.containsUid(idSet, IdRange.VALUE_WILDCARD);
+        final List<SequencedMessage> ret = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            final StoredMessage message = messages.get(i);
+            final int msn = i + 1;
+            if (IdRange.containsUid(idSet, useUids ? message.getUid() : msn)
+                || (wildcard && msn == messages.size())) {
+                ret.add(new SequencedMessage(msn, message));
+            }
+        }
+        return ret;
+    }
     List<StoredMessage> getNonDeletedMessages();
 }
@@ -6,6 +6,8 @@
  */
 package com.icegreen.greenmail.store;
 
+import com.icegreen.greenmail.util.EncodingUtil;
+
 import java.util.Date;
 
 /**
@@ -68,6 +70,24 @@ public interface MailMessageAttributes {
      * @return String satisfying body syntax in rfc 2060.
      */
     String getBodyStructure(boolean includeExtensions);
-}
 
+    /**
+     * Provides the envelope as returned by {@link #getEnvelope()}, encoded for writing to an IMAP client.
+     *
+     * @return the encoded envelope, which must not be modified.
+     */
+    default byte[] getEnvelopeBytes() {
+        return getEnvelope().getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
+    }
 
+    /**
+     * Provides the body structure as returned by {@link #getBodyStructure(boolean)},
+     * encoded for writing to an IMAP client.
+     *
+     * @param includeExtensions true if the body structure extensions should be included
+     * @return the encoded body structure, which must not be modified.
+     */
+    default byte[] getBodyStructureBytes(boolean includeExtensions) {
+        return getBodyStructure(includeExtensions).getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
+    }
+}
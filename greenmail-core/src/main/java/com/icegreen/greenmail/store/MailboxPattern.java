@@ -0,0 +1,119 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+import com.icegreen.greenmail.imap.ImapConstants;
+
+import java.util.BitSet;
+
+/**
+ * Matches mailbox names against a LIST or LSUB pattern, while walking the mailbox hierarchy.
+ * <p>
+ * The wildcard '*' matches any characters, and '%' matches any characters except the hierarchy delimiter.
+ * Wildcards may occur anywhere in the pattern. Matching ignores case, as looking up a mailbox does.
+ * <p>
+ * The matcher tracks the set of pattern positions reachable after a name prefix. An empty set means that
+ * no name with this prefix matches, so that the whole subtree of a mailbox can be skipped.
+ * <p>
+ * Reference: <a href="https://tools.ietf.org/html/rfc3501#section-6.3.8">RFC 3501 - LIST</a>
+ */
+final class MailboxPattern {
+    private final String pattern;
+
+    /**
+     * @param pattern the pattern, with case folded as by {@link HierarchicalFolder#foldCase(String)}.
+     */
+    MailboxPattern(String pattern) {
+        this.pattern = HierarchicalFolder.foldCase(pattern);
+    }
+
+    /**
+     * @return the positions reachable before matching any character.
+     */
+    BitSet start() {
+        final BitSet states = new BitSet(pattern.length() + 1);
+        states.set(0);
+        return closure(states);
+    }
+
+    /**
+     * @param states the current positions.
+     * @param name   the next characters of the mailbox name.
+     * @return the positions reachable after matching the characters, empty if none.
+     */
+    BitSet advance(BitSet states, String name) {
+        final String folded = HierarchicalFolder.foldCase(name);
+        BitSet current = states;
+        for (int i = 0; i < folded.length() && !current.isEmpty(); i++) {
+            current = advance(current, folded.charAt(i));
+        }
+        return current;
+    }
+
+    /**
+     * @param states the current positions.
+     * @param c      the next character of the mailbox name, with case folded.
+     * @return the positions reachable after matching the character, empty if none.
+     */
+    BitSet advance(BitSet states, char c) {
+        final BitSet next = new BitSet(pattern.length() + 1);
+        for (int i = states.nextSetBit(0); i >= 0 && i < pattern.length(); i = states.nextSetBit(i + 1)) {
+            final char p = pattern.charAt(i);
+            if (p == '*' || (p == '%' && c != ImapConstants.HIERARCHY_DELIMITER_CHAR)) {
+                next.set(i);
+            } else if (p == c) {
+                next.set(i + 1);
+            }
+        }
+        return closure(next);
+    }
+
+    /**
+     * @param states the positions after matching a whole mailbox name.
+     * @return true, if the mailbox name matches the pattern.
+     */
+    boolean matches(BitSet states) {
+        return states.get(pattern.length());
+    }
+
+    /**
+     * Gets the only possible next hierarchy level, if the pattern continues with a level without wildcards.
+     * Allows looking up the child instead of visiting all children.
+     *
+     * @param states the positions after matching a name and the following hierarchy delimiter.
+     * @return the name of the next level, or null if wildcards or several positions allow other names.
+     */
+    String literalLevel(BitSet states) {
+        final int start = states.nextSetBit(0);
+        if (start < 0 || states.nextSetBit(start + 1) >= 0) {
+            return null;
+        }
+        int end = start;
+        while (end < pattern.length()) {
+            final char p = pattern.charAt(end);
+            if (p == '*' || p == '%') {
+                return null;
+            }
+            if (p == ImapConstants.HIERARCHY_DELIMITER_CHAR) {
+                break;
+            }
+            end++;
+        }
+        return end > start ? pattern.substring(start, end) : null;
+    }
+
+    /**
+     * Adds the positions after wildcards, as wildcards also match no characters.
+     */
+    private BitSet closure(BitSet states) {
+        for (int i = states.nextSetBit(0); i >= 0 && i < pattern.length(); i = states.nextSetBit(i + 1)) {
+            final char p = pattern.charAt(i);
+            if (p == '*' || p == '%') {
+                states.set(i + 1);
+            }
+        }
+        return states;
+    }
+}
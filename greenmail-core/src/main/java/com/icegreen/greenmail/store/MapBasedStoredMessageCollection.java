@@ -77,6 +77,11 @@ public class MapBasedStoredMessageCollection implements StoredMessageCollection
         }
     }
 
+    @Override
+    public StoredMessage getByUid(long uid) {
+        return mailMessages.get(uid);
+    }
+
     @Override
     public List<StoredMessage> getMessages(MsgRangeFilter range) {
         final List<StoredMessage> messagesInRange = new ArrayList<>();
@@ -113,29 +118,27 @@ public class MapBasedStoredMessageCollection implements StoredMessageCollection
     }
 
     @Override
-    public void expunge(List<FolderListener> mailboxListeners) {
-        expunge(mailboxListeners, null);
+    public List<StoredMessage> expunge(List<FolderListener> mailboxListeners) {
+        return expunge(mailboxListeners, null);
     }
 
     @Override
-    public void expunge(List<FolderListener> mailboxListeners, IdRange[] idRanges) {
+    public List<StoredMessage> expunge(List<FolderListener> mailboxListeners, IdRange[] idRanges) {
+        final ExpungedMessages expunged = new ExpungedMessages();
         int i = 1;
         synchronized (mailMessages) {
             for (final Iterator<Map.Entry<Long, StoredMessage>> messageEntryIt = mailMessages.entrySet().iterator(); messageEntryIt.hasNext(); ) {
                 final Map.Entry<Long, StoredMessage> messageEntry = messageEntryIt.next();
                 if (messageEntry.getValue().isSet(Flags.Flag.DELETED) &&
                         (idRanges == null || IdRange.containsUid(idRanges, messageEntry.getValue().getUid()))) {
-                    // Notify all the listeners of the pending delete
-                    synchronized (mailboxListeners) {
-                        messageEntryIt.remove();
-                        for (FolderListener expungeListener : mailboxListeners) {
-                            expungeListener.expunged(i);
-                        }
-                    }
+                    messageEntryIt.remove();
+                    expunged.add(i, messageEntry.getValue());
                 }
                 i++;
             }
+            expunged.notifyListeners(mailboxListeners);
         }
+        return expunged.getMessages();
     }
 
     @Override
@@ -0,0 +1,140 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+import jakarta.mail.internet.SharedInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Read only bytes of a stored message or of a section of it, such as the body.
+ * <p>
+ * Allows writing any range, for example for a partial IMAP fetch, by seeking into the stored
+ * representation instead of serializing the whole message.
+ *
+ * @see StoredMessage#getMessageBytes()
+ */
+public abstract class MessageBytes {
+    /**
+     * @return the size in bytes.
+     */
+    public abstract int getSize();
+
+    /**
+     * Writes a range of the bytes.
+     *
+     * @param out    the output.
+     * @param offset the start of the range.
+     * @param length the length of the range.
+     * @throws IOException on write error.
+     */
+    public void writeTo(OutputStream out, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > getSize()) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " exceeds size " + getSize());
+        }
+        writeRange(out, offset, length);
+    }
+
+    abstract void writeRange(OutputStream out, int offset, int length) throws IOException;
+
+    static MessageBytes of(byte[] bytes, int offset, int length) {
+        return new ArraySlice(bytes, offset, length);
+    }
+
+    static MessageBytes of(SharedInputStream stream, int size) {
+        return new SharedStreamSlice(stream, size);
+    }
+
+    static MessageBytes concat(MessageBytes first, MessageBytes second) {
+        return new Concatenation(first, second);
+    }
+
+    private static final class ArraySlice extends MessageBytes {
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+        ArraySlice(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int getSize() {
+            return length;
+        }
+
+        @Override
+        void writeRange(OutputStream out, int offset, int length) throws IOException {
+            out.write(bytes, this.offset + offset, length);
+        }
+    }
+
+    /**
+     * Reads only the requested range from a shared stream, such as the content stream of a parsed mime message.
+     */
+    private static final class SharedStreamSlice extends MessageBytes {
+        private final SharedInputStream stream;
+        private final int size;
+
+        SharedStreamSlice(SharedInputStream stream, int size) {
+            this.stream = stream;
+            this.size = size;
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        void writeRange(OutputStream out, int offset, int length) throws IOException {
+            final byte[] buffer = new byte[Math.min(length, 8192)];
+            try (InputStream in = stream.newStream(offset, (long) offset + length)) {
+                int remaining = length;
+                while (remaining > 0) {
+                    final int read = in.read(buffer, 0, Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of stored message, missing " + remaining + " bytes");
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        }
+    }
+
+    private static final class Concatenation extends MessageBytes {
+        private final MessageBytes first;
+        private final MessageBytes second;
+
+        Concatenation(MessageBytes first, MessageBytes second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public int getSize() {
+            return first.getSize() + second.getSize();
+        }
+
+        @Override
+        void writeRange(OutputStream out, int offset, int length) throws IOException {
+            final int firstSize = first.getSize();
+            if (offset < firstSize) {
+                final int firstLength = Math.min(length, firstSize - offset);
+                first.writeRange(out, offset, firstLength);
+                offset += firstLength;
+                length -= firstLength;
+            }
+            if (length > 0) {
+                second.writeRange(out, offset - firstSize, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.util.SharedByteArrayInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Properties;
+
+/**
+ * Immutable RFC 822 content of a message, shareable by all stored copies of the message.
+ * <p>
+ * For example, all recipients of a single SMTP transaction reference the same content,
+ * while UID, flags and received date are kept per stored message.
+ * The parsed IMAP attributes are shared as well. They are built on demand and only softly referenced.
+ *
+ * @see RawStoredMessage
+ */
+public final class MessageContent extends MessageBytes {
+    private static final Session SESSION;
+
+    static {
+        final Properties props = new Properties();
+        props.setProperty("mail.mime.allowutf8", System.getProperty("mail.mime.allowutf8", "true"));
+        SESSION = Session.getInstance(props);
+    }
+
+    private final byte[] content;
+    private final int bodyOffset;
+    private SoftReference<SimpleMessageAttributes> attributesRef = new SoftReference<>(null);
+    private volatile MimePartIndex partIndex;
+
+    private MessageContent(byte[] content) {
+        this.content = content;
+        this.bodyOffset = findBodyOffset(content);
+    }
+
+    /**
+     * Creates the content by serializing a mime message.
+     *
+     * @param mimeMessage the message.
+     * @return the content.
+     */
+    public static MessageContent of(MimeMessage mimeMessage) {
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            mimeMessage.writeTo(bos);
+            return new MessageContent(bos.toByteArray());
+        } catch (MessagingException | IOException e) {
+            throw new IllegalStateException("Could not serialize mime message " + mimeMessage, e);
+        }
+    }
+
+    /**
+     * Creates the content from RFC 822 bytes, for example as received via SMTP.
+     *
+     * @param content the message bytes, owned by the created content and not to be modified afterwards.
+     * @return the content.
+     */
+    public static MessageContent of(byte[] content) {
+        return new MessageContent(content);
+    }
+
+    /**
+     * @return a read only view of the RFC 822 message bytes.
+     */
+    public ByteBuffer getBuffer() {
+        return ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
+
+    @Override
+    public int getSize() {
+        return content.length;
+    }
+
+    /**
+     * @return the offset of the body, or the size if there is no body.
+     */
+    public int getBodyOffset() {
+        return bodyOffset;
+    }
+
+    /**
+     * Parses the content into a new mime message. The message shares the content bytes instead of copying them.
+     *
+     * @return the message.
+     * @throws MessagingException on parse error.
+     */
+    public MimeMessage toMimeMessage() throws MessagingException {
+        return new MimeMessage(SESSION, newInputStream());
+    }
+
+    @Override
+    void writeRange(OutputStream out, int offset, int length) throws IOException {
+        out.write(content, offset, length);
+    }
+
+    /**
+     * @return the body, following the header, without copying.
+     */
+    public MessageBytes getBody() {
+        return MessageBytes.of(content, bodyOffset, content.length - bodyOffset);
+    }
+
+    /**
+     * Gets a MIME section, such as <code>2.1</code>, <code>2.MIME</code> or <code>3.TEXT</code>
+     * for a message/rfc822 part, as slice of the content.
+     * <p>
+     * The offsets of the MIME parts are indexed once, on first access.
+     *
+     * @param sectionSpecifier the IMAP section specifier, starting with a part number.
+     * @return the section, or null if not resolvable.
+     */
+    public MessageBytes getSection(String sectionSpecifier) {
+        MimePartIndex index = partIndex;
+        if (null == index) { // Benign race, as built index is always the same
+            index = MimePartIndex.of(content);
+            partIndex = index;
+        }
+        return index.getSection(sectionSpecifier);
+    }
+
+    InputStream newInputStream() {
+        return new SharedByteArrayInputStream(content);
+    }
+
+    Session getSession() {
+        return SESSION;
+    }
+
+    /**
+     * Gets the shared attributes, parsing them if not yet available.
+     * <p>
+     * The attributes have no received date, as each stored copy of the message has its own.
+     *
+     * @return the attributes.
+     * @see SimpleMessageAttributes#getEnvelopeBytes(Date)
+     */
+    synchronized SimpleMessageAttributes getAttributes() {
+        SimpleMessageAttributes attributes = attributesRef.get();
+        if (null == attributes) {
+            try {
+                attributes = new SimpleMessageAttributes(toMimeMessage(), null);
+            } catch (MessagingException e) {
+                throw new IllegalStateException("Could not parse message content", e);
+            }
+            attributesRef = new SoftReference<>(attributes);
+        }
+        return attributes;
+    }
+
+    /**
+     * Finds the start of the body, following the empty line terminating the header.
+     * The empty line may also start the content, if there is no header.
+     */
+    static int findBodyOffset(byte[] content) {
+        return MimePartIndex.findBodyStart(content, 0, content.length);
+    }
+}
@@ -0,0 +1,73 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the messages of all folders of a store, and notifies waiters once a given count is reached.
+ * <p>
+ * Waiters get removed once completed or cancelled, so that timed out waiters do not accumulate.
+ */
+final class MessageCounter {
+    private final AtomicLong count = new AtomicLong();
+    private final CopyOnWriteArrayList<Waiter> waiters = new CopyOnWriteArrayList<>();
+
+    long get() {
+        return count.get();
+    }
+
+    void added(int messages) {
+        final long current = count.addAndGet(messages);
+        if (!waiters.isEmpty()) {
+            for (Waiter waiter : waiters) {
+                if (waiter.expectedCount <= current) {
+                    waiter.future.complete(null);
+                }
+            }
+        }
+    }
+
+    void removed(int messages) {
+        if (messages > 0) {
+            count.addAndGet(-messages);
+        }
+    }
+
+    /**
+     * Awaits the expected count.
+     *
+     * @param expectedCount the expected number of messages.
+     * @return a future completing once at least the expected number of messages exist.
+     * Cancel it for no longer waiting.
+     */
+    CompletableFuture<Void> await(long expectedCount) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        if (count.get() >= expectedCount) {
+            future.complete(null);
+            return future;
+        }
+        final Waiter waiter = new Waiter(expectedCount, future);
+        waiters.add(waiter);
+        future.whenComplete((v, ex) -> waiters.remove(waiter));
+        // Registered before re-checking, so that a concurrently added message can not be missed
+        if (count.get() >= expectedCount) {
+            future.complete(null);
+        }
+        return future;
+    }
+
+    private static final class Waiter {
+        final long expectedCount;
+        final CompletableFuture<Void> future;
+
+        Waiter(long expectedCount, CompletableFuture<Void> future) {
+            this.expectedCount = expectedCount;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+import jakarta.mail.Flags;
+import jakarta.mail.internet.MimeMessage;
+
+import java.util.Date;
+
+/**
+ * A message with its initial flags and internal date, for appending several messages at once.
+ *
+ * @see MailFolder#appendMessages(java.util.List)
+ */
+public final class MessageToAppend {
+    private final MimeMessage message;
+    private final Flags flags;
+    private final Date internalDate;
+
+    public MessageToAppend(MimeMessage message, Flags flags, Date internalDate) {
+        this.message = message;
+        this.flags = flags;
+        this.internalDate = internalDate;
+    }
+
+    public MimeMessage getMessage() {
+        return message;
+    }
+
+    public Flags getFlags() {
+        return flags;
+    }
+
+    public Date getInternalDate() {
+        return internalDate;
+    }
+}
@@ -0,0 +1,231 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.ContentType;
+import jakarta.mail.internet.InternetHeaders;
+import jakarta.mail.internet.ParseException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Byte offsets of all MIME parts of a raw RFC 822 message, for resolving IMAP section specifiers
+ * such as <code>2.1</code>, <code>2.MIME</code> or <code>3.TEXT</code> to slices of the message
+ * without parsing it into a mime message.
+ * <p>
+ * Built once per message content.
+ * <p>
+ * Reference: <a href="https://tools.ietf.org/html/rfc3501#section-6.4.5">RFC 3501 - FETCH body section</a>
+ */
+final class MimePartIndex {
+    private final byte[] content;
+    private final Entity root;
+
+    private MimePartIndex(byte[] content) {
+        this.content = content;
+        this.root = parseEntity(content, 0, content.length, false);
+    }
+
+    static MimePartIndex of(byte[] content) {
+        return new MimePartIndex(content);
+    }
+
+    /**
+     * Resolves a section specifier starting with a part number, such as <code>1.2</code>,
+     * <code>1.2.MIME</code>, <code>3.HEADER</code> or <code>3.TEXT</code>.
+     *
+     * @param sectionSpecifier the specifier.
+     * @return the bytes of the section, or null if not resolvable by the index.
+     */
+    MessageBytes getSection(String sectionSpecifier) {
+        final String[] tokens = sectionSpecifier.split("\\.", -1);
+        Entity current = root;
+        boolean selectedPart = false;
+        int i = 0;
+        for (; i < tokens.length && isNumber(tokens[i]); i++) {
+            final Entity container = null != current.message ? current.message : current;
+            final int partNumber = Integer.parseInt(tokens[i]);
+            if (container.isMultipart()) {
+                if (partNumber < 1 || partNumber > container.children.size()) {
+                    return null;
+                }
+                current = container.children.get(partNumber - 1);
+            } else if (partNumber == 1 && (container == root || container == current.message)) {
+                // Non multipart message has its body as single part
+                current = new Entity(container.bodyStart, container.bodyStart, container.end);
+            } else {
+                return null;
+            }
+            selectedPart = true;
+        }
+        if (!selectedPart) {
+            return null;
+        }
+        if (i == tokens.length) {
+            return slice(current.bodyStart, current.end);
+        }
+        if (i != tokens.length - 1) {
+            return null;
+        }
+        final String suffix = tokens[i];
+        if ("MIME".equalsIgnoreCase(suffix)) {
+            return slice(current.headerStart, current.bodyStart);
+        } else if (null != current.message && "HEADER".equalsIgnoreCase(suffix)) {
+            return slice(current.message.headerStart, current.message.bodyStart);
+        } else if (null != current.message && "TEXT".equalsIgnoreCase(suffix)) {
+            return slice(current.message.bodyStart, current.message.end);
+        }
+        return null; // For example HEADER.FIELDS
+    }
+
+    private MessageBytes slice(int start, int end) {
+        return MessageBytes.of(content, start, end - start);
+    }
+
+    private static boolean isNumber(String token) {
+        if (token.isEmpty() || token.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Entity parseEntity(byte[] content, int start, int end, boolean digestPart) {
+        final int bodyStart = findBodyStart(content, start, end);
+        final Entity entity = new Entity(start, bodyStart, end);
+        final ContentType contentType = parseContentType(content, start, bodyStart, digestPart);
+        if (contentType.match("multipart/*")) {
+            final String boundary = contentType.getParameter("boundary");
+            if (null != boundary && !boundary.isEmpty()) {
+                final boolean digest = contentType.match("multipart/digest");
+                entity.children = new ArrayList<>();
+                for (int[] range : findParts(content, bodyStart, end, boundary)) {
+                    entity.children.add(parseEntity(content, range[0], range[1], digest));
+                }
+            }
+        } else if (contentType.match("message/rfc822")) {
+            entity.message = parseEntity(content, bodyStart, end, false);
+        }
+        return entity;
+    }
+
+    private static ContentType parseContentType(byte[] content, int start, int end, boolean digestPart) {
+        final String defaultType = digestPart ? "message/rfc822" : "text/plain";
+        try {
+            final InternetHeaders headers = new InternetHeaders(new ByteArrayInputStream(content, start, end - start));
+            final String value = headers.getHeader("Content-Type", null);
+            return new ContentType(null == value ? defaultType : value);
+        } catch (ParseException e) {
+            return new ContentType("text", "plain", null);
+        } catch (MessagingException e) {
+            throw new IllegalStateException("Can not parse MIME headers", e);
+        }
+    }
+
+    /**
+     * @return the start of the body, following the empty line terminating the header, or the end.
+     */
+    static int findBodyStart(byte[] content, int start, int end) {
+        if (start < end && isLineBreakAt(content, start, end)) {
+            return start + lineBreakLength(content, start); // No header
+        }
+        for (int i = start; i < end; i++) {
+            if (content[i] == '\n' && i + 1 < end && isLineBreakAt(content, i + 1, end)) {
+                return i + 1 + lineBreakLength(content, i + 1);
+            }
+        }
+        return end;
+    }
+
+    private static boolean isLineBreakAt(byte[] content, int i, int end) {
+        return content[i] == '\n' || (content[i] == '\r' && i + 1 < end && content[i + 1] == '\n');
+    }
+
+    private static int lineBreakLength(byte[] content, int i) {
+        return content[i] == '\r' ? 2 : 1;
+    }
+
+    /**
+     * Finds the body parts between boundary delimiter lines.
+     * The line break preceding a delimiter belongs to the delimiter.
+     */
+    private static List<int[]> findParts(byte[] content, int start, int end, String boundary) {
+        final byte[] delimiter = ("--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        final List<int[]> parts = new ArrayList<>();
+        int partStart = -1;
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && content[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            final int nextLine = Math.min(lineEnd + 1, end);
+            if (startsWith(content, lineStart, lineEnd, delimiter)) {
+                if (partStart >= 0) {
+                    parts.add(new int[]{partStart, partEnd(content, partStart, lineStart)});
+                }
+                final int afterDelimiter = lineStart + delimiter.length;
+                if (afterDelimiter + 1 < end && content[afterDelimiter] == '-' && content[afterDelimiter + 1] == '-') {
+                    return parts; // Close delimiter
+                }
+                partStart = nextLine;
+            }
+            lineStart = nextLine;
+        }
+        if (partStart >= 0 && partStart < end) {
+            parts.add(new int[]{partStart, end}); // Missing close delimiter
+        }
+        return parts;
+    }
+
+    private static int partEnd(byte[] content, int partStart, int delimiterLineStart) {
+        int partEnd = delimiterLineStart;
+        if (partEnd > partStart && content[partEnd - 1] == '\n') {
+            partEnd--;
+            if (partEnd > partStart && content[partEnd - 1] == '\r') {
+                partEnd--;
+            }
+        }
+        return partEnd;
+    }
+
+    private static boolean startsWith(byte[] content, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (content[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Entity {
+        final int headerStart;
+        final int bodyStart;
+        final int end;
+        List<Entity> children;
+        Entity message; // Encapsulated message of a message/rfc822 entity
+
+        Entity(int headerStart, int bodyStart, int end) {
+            this.headerStart = headerStart;
+            this.bodyStart = bodyStart;
+            this.end = end;
+        }
+
+        boolean isMultipart() {
+            return null != children;
+        }
+    }
+}
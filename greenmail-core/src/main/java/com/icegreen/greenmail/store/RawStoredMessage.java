@@ -0,0 +1,158 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+import com.icegreen.greenmail.util.EncodingUtil;
+import jakarta.mail.Flags;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.eclipse.angus.mail.imap.protocol.INTERNALDATE;
+
+import java.lang.ref.SoftReference;
+import java.util.Date;
+
+/**
+ * A stored message referencing immutable RFC 822 content, which can be shared by several stored messages.
+ * <p>
+ * The mime message is parsed on demand and only softly referenced, so that the garbage collector
+ * can drop it under memory pressure. It gets parsed again on next access.
+ * Flags, UID and received date are kept per stored message, and flags are shared with any parsed mime message.
+ */
+class RawStoredMessage extends StoredMessage {
+    private final MessageContent content;
+    private final StoredFlags flags;
+    private final MailMessageAttributes attributes = new ReceivedDateAttributes();
+    private int messageNumber;
+    private SoftReference<UidAwareMimeMessage> mimeMessageRef = new SoftReference<>(null);
+
+    RawStoredMessage(MimeMessage mimeMessage, Date receivedDate, long uid) {
+        this(mimeMessage, receivedDate, uid, new Keywords());
+    }
+
+    RawStoredMessage(MimeMessage mimeMessage, Date receivedDate, long uid, Keywords keywordIds) {
+        this(MessageContent.of(mimeMessage), getFlags(mimeMessage), receivedDate, uid, keywordIds);
+    }
+
+    /**
+     * @param keywordIds the keyword ids of the store, for interning user flags.
+     */
+    RawStoredMessage(MessageContent content, Flags flags, Date receivedDate, long uid, Keywords keywordIds) {
+        super(receivedDate, uid);
+        this.content = content;
+        this.flags = new StoredFlags(keywordIds, flags);
+    }
+
+    private static Flags getFlags(MimeMessage mimeMessage) {
+        try {
+            return mimeMessage.getFlags();
+        } catch (MessagingException e) {
+            throw new IllegalStateException("Can not access flags of " + mimeMessage, e);
+        }
+    }
+
+    @Override
+    StoredMessage copy(long newUid) {
+        return new RawStoredMessage(content, getFlags(), getReceivedDate(), newUid, flags.getKeywordIds());
+    }
+
+    /**
+     * @return the shared content.
+     */
+    @Override
+    public MessageContent getContent() {
+        return content;
+    }
+
+    @Override
+    public MessageBytes getMessageBytes() {
+        return content;
+    }
+
+    @Override
+    public MessageBytes getBodyBytes() {
+        return content.getBody();
+    }
+
+    @Override
+    public MessageBytes getSectionBytes(String sectionSpecifier) {
+        return content.getSection(sectionSpecifier);
+    }
+
+    @Override
+    public synchronized MimeMessage getMimeMessage() {
+        UidAwareMimeMessage mimeMessage = mimeMessageRef.get();
+        if (null == mimeMessage) {
+            try {
+                mimeMessage = new UidAwareMimeMessage(content.getSession(), content.newInputStream(),
+                    getUid(), getReceivedDate(), flags);
+                mimeMessage.setOwner(this);
+            } catch (MessagingException e) {
+                throw new IllegalStateException("Could not parse mime message with uid " + getUid(), e);
+            }
+            mimeMessage.updateMessageNumber(messageNumber);
+            mimeMessageRef = new SoftReference<>(mimeMessage);
+        }
+        return mimeMessage;
+    }
+
+    @Override
+    public MailMessageAttributes getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    StoredFlags getStoredFlags() {
+        return flags;
+    }
+
+    @Override
+    public synchronized void updateMessageNumber(int messageNumber) {
+        this.messageNumber = messageNumber;
+        final UidAwareMimeMessage mimeMessage = mimeMessageRef.get();
+        if (null != mimeMessage) {
+            mimeMessage.updateMessageNumber(messageNumber);
+        }
+    }
+
+    /**
+     * Shared attributes of the content, with the received date of this stored message.
+     */
+    private class ReceivedDateAttributes implements MailMessageAttributes {
+        @Override
+        public Date getReceivedDate() {
+            return RawStoredMessage.this.getReceivedDate();
+        }
+
+        @Override
+        public String getReceivedDateAsString() {
+            return null == getReceivedDate() ? null : INTERNALDATE.format(getReceivedDate());
+        }
+
+        @Override
+        public int getSize() {
+            return content.getAttributes().getSize();
+        }
+
+        @Override
+        public String getEnvelope() {
+            return new String(getEnvelopeBytes(), EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
+        }
+
+        @Override
+        public String getBodyStructure(boolean includeExtensions) {
+            return content.getAttributes().getBodyStructure(includeExtensions);
+        }
+
+        @Override
+        public byte[] getEnvelopeBytes() {
+            return content.getAttributes().getEnvelopeBytes(getReceivedDate());
+        }
+
+        @Override
+        public byte[] getBodyStructureBytes(boolean includeExtensions) {
+            return content.getAttributes().getBodyStructureBytes(includeExtensions);
+        }
+    }
+}
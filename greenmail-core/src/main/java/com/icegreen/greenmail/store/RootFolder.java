@@ -10,6 +10,9 @@ import com.icegreen.greenmail.imap.ImapConstants;
  * @author Raimund Klein <raimund.klein@gmx.de>
  */
 class RootFolder extends HierarchicalFolder {
+    private final MessageCounter messageCounter = new MessageCounter();
+    private final Keywords keywords = new Keywords();
+
     public RootFolder() {
         super(null, ImapConstants.USER_NAMESPACE);
     }
@@ -18,4 +21,14 @@ class RootFolder extends HierarchicalFolder {
     public String getFullName() {
         return name;
     }
+
+    @Override
+    MessageCounter getMessageCounter() {
+        return messageCounter;
+    }
+
+    @Override
+    Keywords getKeywords() {
+        return keywords;
+    }
 }
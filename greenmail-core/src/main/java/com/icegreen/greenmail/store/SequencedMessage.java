@@ -0,0 +1,38 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+/**
+ * A stored message together with its message sequence number (MSN), as resolved at a point in time.
+ */
+public final class SequencedMessage {
+    private final int msn;
+    private final StoredMessage message;
+
+    public SequencedMessage(int msn, StoredMessage message) {
+        this.msn = msn;
+        this.message = message;
+    }
+
+    /**
+     * @return the 1-based message sequence number.
+     */
+    public int getMsn() {
+        return msn;
+    }
+
+    public long getUid() {
+        return message.getUid();
+    }
+
+    public StoredMessage getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "SequencedMessage{msn=" + msn + ", uid=" + getUid() + '}';
+    }
+}
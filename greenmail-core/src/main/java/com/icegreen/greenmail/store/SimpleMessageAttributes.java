@@ -8,6 +8,7 @@ package com.icegreen.greenmail.store;
 
 
 import com.icegreen.greenmail.mail.MailAddress;
+import com.icegreen.greenmail.util.EncodingUtil;
 import com.icegreen.greenmail.util.GreenMailUtil;
 import org.eclipse.angus.mail.imap.protocol.INTERNALDATE;
 import jakarta.mail.BodyPart;
@@ -48,8 +49,10 @@ public class SimpleMessageAttributes
     private int uid;
     private int messageSequenceNumber;
     private Date receivedDate;
-    private String bodyStructure;
-    private String envelope;
+    // Lazily built and cached, encoded for writing to the client
+    private volatile byte[] envelope;
+    private volatile byte[] bodyStructure;
+    private volatile byte[] bodyStructureWithExtensions;
     private int size;
     private int lineCount;
     public MailMessageAttributes[] parts;
@@ -274,11 +277,13 @@ public class SimpleMessageAttributes
 
     /**
      * Builds IMAP envelope String from pre-parsed data.
+     *
+     * @param sentDateString the envelope date.
      */
-    private String parseEnvelope() {
+    private String parseEnvelope(String sentDateString) {
         List<String> response = new ArrayList<>();
         //1. Date ---------------
-        response.add(LB + Q + sentDateEnvelopeString + Q + SP);
+        response.add(LB + Q + sentDateString + Q + SP);
         //2. Subject ---------------
         if (subject != null && (!subject.isEmpty())) {
             response.add(Q + escapeHeader(subject) + Q + SP);
@@ -306,8 +311,7 @@ public class SimpleMessageAttributes
         }
         response.add(SP);
         if (messageID != null && messageID.length > 0) {
-            messageID[0] = escapeHeader(messageID[0]);
-            response.add(Q + messageID[0] + Q);
+            response.add(Q + escapeHeader(messageID[0]) + Q);
         } else {
             response.add(NIL);
         }
@@ -628,12 +632,53 @@ public class SimpleMessageAttributes
 
     @Override
     public String getEnvelope() {
-        return parseEnvelope();
+        return new String(getEnvelopeBytes(), EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
     }
 
     @Override
     public String getBodyStructure(boolean includeExtensions) {
-        return parseBodyStructure(includeExtensions);
+        return new String(getBodyStructureBytes(includeExtensions), EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
+    }
+
+    @Override
+    public byte[] getEnvelopeBytes() {
+        byte[] bytes = envelope;
+        if (null == bytes) { // Benign race, as built value is always the same
+            bytes = parseEnvelope(sentDateEnvelopeString).getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
+            envelope = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the envelope for a stored copy of the message, which may have its own received date.
+     * <p>
+     * The received date is only used if the message has no sent date.
+     * Otherwise, the envelope is the same for all copies and cached.
+     *
+     * @param receivedDate the received date of the stored copy, or null.
+     * @return the envelope.
+     */
+    byte[] getEnvelopeBytes(Date receivedDate) {
+        if (null != sentDateEnvelopeString || null == receivedDate) {
+            return getEnvelopeBytes();
+        }
+        return parseEnvelope(new MailDateFormat().format(receivedDate))
+            .getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
+    }
+
+    @Override
+    public byte[] getBodyStructureBytes(boolean includeExtensions) {
+        byte[] bytes = includeExtensions ? bodyStructureWithExtensions : bodyStructure;
+        if (null == bytes) {
+            bytes = parseBodyStructure(includeExtensions).getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
+            if (includeExtensions) {
+                bodyStructureWithExtensions = bytes;
+            } else {
+                bodyStructure = bytes;
+            }
+        }
+        return bytes;
     }
 
 
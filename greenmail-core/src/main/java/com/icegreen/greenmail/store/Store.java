@@ -8,6 +8,8 @@ package com.icegreen.greenmail.store;
 
 import jakarta.mail.Quota;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Represents the complete mail store for an IMAP server, providing access to
@@ -102,6 +104,18 @@ public interface Store {
      */
     Collection<MailFolder> listMailboxes(String searchPattern) throws FolderException;
 
+    /**
+     * Passes all the mailboxes matching the supplied search pattern to the consumer,
+     * as found and without collecting them first.
+     *
+     * @param searchPattern The pattern to match mailboxes, as for {@link #listMailboxes(String)}
+     * @param consumer      Receives the matching mailboxes
+     * @throws FolderException If the list operation failed
+     */
+    default void listMailboxes(String searchPattern, Consumer<MailFolder> consumer) throws FolderException {
+        listMailboxes(searchPattern).forEach(consumer);
+    }
+
     /**
      * Gets the quotas.
      * See <a href="https://www.ietf.org/rfc/rfc2087.txt">rfc2087</a>
@@ -143,4 +157,78 @@ public interface Store {
      * @param pQuotaSupported true, if supported.
      */
     void setQuotaSupported(boolean pQuotaSupported);
+
+    /**
+     * Checks if new messages are stored as raw RFC 822 bytes, parsing them only on demand.
+     *
+     * @return true, if raw message storage is enabled. Not enabled by default.
+     */
+    default boolean isRawMessageStorage() {
+        return false;
+    }
+
+    /**
+     * Toggles storing new messages as raw RFC 822 bytes.
+     * <p>
+     * Trades parsing on access for a smaller heap footprint per retained message.
+     *
+     * @param rawMessageStorage true, if enabled.
+     * @throws UnsupportedOperationException if enabling and not supported by the implementation.
+     */
+    default void setRawMessageStorage(boolean rawMessageStorage) {
+        if (rawMessageStorage) {
+            throw new UnsupportedOperationException("Raw message storage not supported by " + getClass());
+        }
+    }
+
+    /**
+     * Counts the messages of all mailboxes of this store.
+     * <p>
+     * The default implementation sums up the messages of all mailboxes.
+     *
+     * @return the number of messages.
+     */
+    default long getMessageCount() {
+        long count = 0;
+        try {
+            for (MailFolder folder : listMailboxes("*")) {
+                count += folder.getMessageCount();
+            }
+        } catch (FolderException e) {
+            throw new IllegalStateException("Can not count messages", e);
+        }
+        return count;
+    }
+
+    /**
+     * Awaits a minimum number of messages in all mailboxes of this store.
+     * <p>
+     * Cancelling the returned future stops waiting and releases the waiter.
+     * The default implementation polls {@link #getMessageCount()} on a daemon thread.
+     *
+     * @param expectedCount the expected number of messages.
+     * @return a future completing once this store contains at least the expected number of messages.
+     */
+    default CompletableFuture<Void> awaitMessageCount(long expectedCount) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final Thread poller = new Thread(() -> {
+            try {
+                while (!future.isDone()) {
+                    if (getMessageCount() >= expectedCount) {
+                        future.complete(null);
+                    } else {
+                        Thread.sleep(100L);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(false);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }, "await-message-count-" + expectedCount);
+        poller.setDaemon(true);
+        poller.start();
+        return future;
+    }
 }
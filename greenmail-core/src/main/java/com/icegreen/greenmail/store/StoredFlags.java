@@ -0,0 +1,209 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+import jakarta.mail.Flags;
+
+import java.util.Arrays;
+
+/**
+ * Flags of a stored message, with system flags as bits and user flags as keyword ids interned per store.
+ * <p>
+ * Replaces a {@link Flags} instance per message, which keeps flags in a hashtable and gets cloned on every access.
+ * User flags keep the spelling of the message. All access synchronizes on this instance.
+ *
+ * @see Keywords
+ */
+final class StoredFlags {
+    static final int ANSWERED = 1;
+    static final int DELETED = 1 << 1;
+    static final int DRAFT = 1 << 2;
+    static final int FLAGGED = 1 << 3;
+    static final int RECENT = 1 << 4;
+    static final int SEEN = 1 << 5;
+    static final int USER = 1 << 6;
+
+    /**
+     * System flags by bit position.
+     */
+    static final Flags.Flag[] SYSTEM_FLAGS = {
+        Flags.Flag.ANSWERED, Flags.Flag.DELETED, Flags.Flag.DRAFT, Flags.Flag.FLAGGED,
+        Flags.Flag.RECENT, Flags.Flag.SEEN, Flags.Flag.USER
+    };
+    private static final int[] NO_KEYWORDS = new int[0];
+    private static final String[] NO_NAMES = new String[0];
+
+    private final Keywords keywordIds;
+    private int systemFlags;
+    private int[] keywords = NO_KEYWORDS; // Sorted ids, replaced on change
+    private String[] keywordNames = NO_NAMES; // Spelling by index of id, replaced on change
+
+    /**
+     * @param keywordIds the keyword ids of the store.
+     * @param flags      the initial flags.
+     */
+    StoredFlags(Keywords keywordIds, Flags flags) {
+        this.keywordIds = keywordIds;
+        add(flags);
+    }
+
+    private StoredFlags(Keywords keywordIds, int systemFlags, int[] keywords, String[] keywordNames) {
+        this.keywordIds = keywordIds;
+        this.systemFlags = systemFlags;
+        this.keywords = keywords;
+        this.keywordNames = keywordNames;
+    }
+
+    /**
+     * @param flag the system flag.
+     * @return the bit of the flag.
+     */
+    static int bitOf(Flags.Flag flag) {
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if (SYSTEM_FLAGS[i] == flag) {
+                return 1 << i;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported flag " + flag);
+    }
+
+    /**
+     * @param flags the flags.
+     * @return the bits of the system flags.
+     */
+    static int systemFlagsOf(Flags flags) {
+        int bits = 0;
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if (flags.contains(SYSTEM_FLAGS[i])) {
+                bits |= 1 << i;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @param flags      the flags.
+     * @param candidates the flags to check.
+     * @return true, if any candidate is contained in flags.
+     */
+    static boolean containsAny(Flags flags, Flags candidates) {
+        for (Flags.Flag flag : candidates.getSystemFlags()) {
+            if (flags.contains(flag)) {
+                return true;
+            }
+        }
+        for (String keyword : candidates.getUserFlags()) {
+            if (flags.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized int getSystemFlags() {
+        return systemFlags;
+    }
+
+    synchronized boolean contains(Flags.Flag flag) {
+        return (systemFlags & bitOf(flag)) != 0;
+    }
+
+    synchronized boolean contains(String keyword) {
+        final int id = keywordIds.find(keyword);
+        return id >= 0 && Arrays.binarySearch(keywords, id) >= 0;
+    }
+
+    /**
+     * @return the keyword ids, for creating flags of another message in the same store.
+     */
+    Keywords getKeywordIds() {
+        return keywordIds;
+    }
+
+    synchronized void add(Flags flags) {
+        systemFlags |= systemFlagsOf(flags);
+        for (String keyword : flags.getUserFlags()) {
+            final int id = keywordIds.intern(keyword);
+            final int idx = Arrays.binarySearch(keywords, id);
+            if (idx < 0) {
+                final int insert = -(idx + 1);
+                final int[] added = new int[keywords.length + 1];
+                System.arraycopy(keywords, 0, added, 0, insert);
+                added[insert] = id;
+                System.arraycopy(keywords, insert, added, insert + 1, keywords.length - insert);
+                final String[] addedNames = new String[added.length];
+                System.arraycopy(keywordNames, 0, addedNames, 0, insert);
+                addedNames[insert] = keyword;
+                System.arraycopy(keywordNames, insert, addedNames, insert + 1, keywordNames.length - insert);
+                keywords = added;
+                keywordNames = addedNames;
+            } else if (!keywordNames[idx].equals(keyword)) {
+                final String[] renamed = keywordNames.clone(); // Latest spelling, as for Flags
+                renamed[idx] = keyword;
+                keywordNames = renamed;
+            }
+        }
+    }
+
+    synchronized void remove(Flags flags) {
+        systemFlags &= ~systemFlagsOf(flags);
+        for (String keyword : flags.getUserFlags()) {
+            final int id = keywordIds.find(keyword);
+            final int idx = id < 0 ? -1 : Arrays.binarySearch(keywords, id);
+            if (idx >= 0) {
+                final int[] removed = new int[keywords.length - 1];
+                System.arraycopy(keywords, 0, removed, 0, idx);
+                System.arraycopy(keywords, idx + 1, removed, idx, removed.length - idx);
+                final String[] removedNames = new String[removed.length];
+                System.arraycopy(keywordNames, 0, removedNames, 0, idx);
+                System.arraycopy(keywordNames, idx + 1, removedNames, idx, removedNames.length - idx);
+                keywords = removed;
+                keywordNames = removedNames;
+            }
+        }
+    }
+
+    /**
+     * @return the flags, as new instance.
+     */
+    synchronized Flags toFlags() {
+        final Flags flags = new Flags();
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if ((systemFlags & (1 << i)) != 0) {
+                flags.add(SYSTEM_FLAGS[i]);
+            }
+        }
+        for (String keyword : keywordNames) {
+            flags.add(keyword);
+        }
+        return flags;
+    }
+
+    /**
+     * @return a snapshot, for example for detecting changes.
+     */
+    synchronized StoredFlags copy() {
+        return new StoredFlags(keywordIds, systemFlags, keywords, keywordNames);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StoredFlags)) {
+            return false;
+        }
+        final StoredFlags other = ((StoredFlags) o).copy(); // Never locks both
+        synchronized (this) {
+            return systemFlags == other.systemFlags && Arrays.equals(keywords, other.keywords);
+        }
+    }
+
+    @Override
+    public synchronized int hashCode() {
+        return 31 * systemFlags + Arrays.hashCode(keywords);
+    }
+}
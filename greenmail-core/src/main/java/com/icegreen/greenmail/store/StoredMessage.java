@@ -8,9 +8,16 @@ package com.icegreen.greenmail.store;
 
 import jakarta.mail.Flags;
 import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.SharedInputStream;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.Enumeration;
 
 /**
  * A mail message with all the extra stuff that IMAP requires.
@@ -25,6 +32,21 @@ public class StoredMessage {
     private Date receivedDate;
     private long uid;
     private SimpleMessageAttributes attributes;
+    private volatile long modSeq;
+    private SystemFlagsListener systemFlagsListener; // Guarded by lock on stored flags
+
+    /**
+     * Gets notified about changes of the system flags, for example for counting unseen messages per folder.
+     */
+    interface SystemFlagsListener {
+        /**
+         * @param message       the changed message.
+         * @param previousFlags the previous system flag bits.
+         * @param flags         the system flag bits.
+         * @see StoredFlags#getSystemFlags()
+         */
+        void systemFlagsChanged(StoredMessage message, int previousFlags, int flags);
+    }
 
     /**
      * Wraps a mime message and provides support for uid.
@@ -35,11 +57,36 @@ public class StoredMessage {
     public static class UidAwareMimeMessage extends MimeMessage {
         private long uid;
         private Date receivedDate;
+        private final StoredFlags storedFlags; // Replaces the flags of the mime message
+        private StoredMessage owner; // Reports flag changes, if stored
 
         public UidAwareMimeMessage(MimeMessage source, long uid, Date receivedDate) throws MessagingException {
+            this(source, uid, receivedDate, new Keywords());
+        }
+
+        /**
+         * Copies the message, interning user flags with the keyword ids of the store.
+         */
+        UidAwareMimeMessage(MimeMessage source, long uid, Date receivedDate, Keywords keywordIds)
+                throws MessagingException {
             super(source);
             this.uid = uid;
             this.receivedDate = receivedDate;
+            this.storedFlags = new StoredFlags(keywordIds, flags);
+            this.flags = null;
+        }
+
+        /**
+         * Parses the message from the stream, sharing the given flags instance
+         * so that flags survive dropping and re-creating the parsed message.
+         */
+        UidAwareMimeMessage(Session session, InputStream source, long uid, Date receivedDate, StoredFlags flags)
+                throws MessagingException {
+            super(session, source);
+            this.uid = uid;
+            this.receivedDate = receivedDate;
+            this.storedFlags = flags;
+            this.flags = null;
         }
 
         @Override
@@ -62,53 +109,219 @@ public class StoredMessage {
         public void updateMessageNumber(int messageNumber) {
             setMessageNumber(messageNumber);
         }
+
+        @Override
+        public Flags getFlags() {
+            return storedFlags.toFlags();
+        }
+
+        @Override
+        public boolean isSet(Flags.Flag flag) {
+            return storedFlags.contains(flag);
+        }
+
+        @Override
+        public void setFlags(Flags flag, boolean set) {
+            if (null != owner) {
+                owner.setFlags(flag, set); // Notifies listener
+            } else if (set) {
+                storedFlags.add(flag);
+            } else {
+                storedFlags.remove(flag);
+            }
+        }
+
+        void setOwner(StoredMessage owner) {
+            this.owner = owner;
+        }
+
+        /**
+         * Gets the body as parsed, without serializing the message.
+         *
+         * @return the body, or null if modified since parsing.
+         */
+        synchronized MessageBytes getStoredBody() throws IOException {
+            if (modified || !saved) {
+                return null;
+            }
+            if (null != content) {
+                return MessageBytes.of(content, 0, content.length);
+            }
+            if (contentStream instanceof SharedInputStream) {
+                return MessageBytes.of((SharedInputStream) contentStream, contentStream.available());
+            }
+            return null;
+        }
+
+        /**
+         * Encodes the header lines and the empty line separating the body, as written by {@link #writeTo(OutputStream)}.
+         */
+        byte[] getHeaderBytes() throws MessagingException {
+            final boolean allowUtf8 = null != session &&
+                Boolean.parseBoolean(session.getProperty("mail.mime.allowutf8"));
+            final StringBuilder buf = new StringBuilder();
+            final Enumeration<String> lines = getNonMatchingHeaderLines(null);
+            while (lines.hasMoreElements()) {
+                buf.append(lines.nextElement()).append("\r\n");
+            }
+            buf.append("\r\n");
+            return buf.toString().getBytes(allowUtf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+        }
     }
 
     StoredMessage(MimeMessage mimeMessage,
             Date receivedDate, long uid) {
+        this(mimeMessage, receivedDate, uid, new Keywords());
+    }
+
+    /**
+     * @param keywordIds the keyword ids of the store, for interning user flags.
+     */
+    StoredMessage(MimeMessage mimeMessage,
+            Date receivedDate, long uid, Keywords keywordIds) {
         this.receivedDate = receivedDate;
         this.uid = uid;
         try {
-            this.mimeMessage = new UidAwareMimeMessage(mimeMessage, uid, receivedDate);
+            this.mimeMessage = new UidAwareMimeMessage(mimeMessage, uid, receivedDate, keywordIds);
+            this.mimeMessage.setOwner(this);
             this.attributes = new SimpleMessageAttributes(mimeMessage, receivedDate);
         } catch (MessagingException e) {
             throw new IllegalStateException("Could not parse mime message " + mimeMessage + " with uid " + uid, e);
         }
     }
 
+    /**
+     * For subclasses providing the mime message and attributes on their own.
+     */
+    StoredMessage(Date receivedDate, long uid) {
+        this.receivedDate = receivedDate;
+        this.uid = uid;
+    }
+
+    /**
+     * Creates a copy of this message, for storing under a new UID (e.g. when moving to another folder).
+     *
+     * @param newUid the UID of the copy.
+     * @return the copy, including current flags.
+     */
+    StoredMessage copy(long newUid) {
+        return new StoredMessage(getMimeMessage(), receivedDate, newUid, getStoredFlags().getKeywordIds());
+    }
+
     public MimeMessage getMimeMessage() {
         return mimeMessage;
     }
 
-    public Flags getFlags() {
+    /**
+     * Gets the RFC 822 content, for example for writing the message to an IMAP client as is.
+     * <p>
+     * Serializes the mime message, unless stored as raw content.
+     *
+     * @return the content.
+     */
+    public MessageContent getContent() {
+        return MessageContent.of(getMimeMessage());
+    }
+
+    /**
+     * Gets the whole message as stored, for writing any range of it without serializing the message.
+     *
+     * @return the message bytes.
+     */
+    public MessageBytes getMessageBytes() {
         try {
-            return getMimeMessage().getFlags();
-        } catch (MessagingException e) {
-            throw new IllegalStateException("Can not access flags", e);
+            final MessageBytes body = mimeMessage.getStoredBody();
+            if (null != body) {
+                final byte[] header = mimeMessage.getHeaderBytes();
+                return MessageBytes.concat(MessageBytes.of(header, 0, header.length), body);
+            }
+        } catch (MessagingException | IOException e) {
+            throw new IllegalStateException("Can not access stored message " + uid, e);
         }
+        return getContent();
     }
 
-    public boolean isSet(Flags.Flag flag) {
+    /**
+     * Gets a MIME section as stored, such as <code>2.1</code> or <code>2.MIME</code>,
+     * if resolvable without parsing the message.
+     *
+     * @param sectionSpecifier the IMAP section specifier, starting with a part number.
+     * @return the section bytes, or null if the section must be resolved via the mime message.
+     */
+    public MessageBytes getSectionBytes(String sectionSpecifier) {
+        return null;
+    }
+
+    /**
+     * Gets the body as stored, following the header and separating empty line.
+     *
+     * @return the body bytes.
+     */
+    public MessageBytes getBodyBytes() {
         try {
-            return getMimeMessage().isSet(flag);
-        } catch (MessagingException e) {
-            throw new IllegalStateException("Can not access flag " + flag, e);
+            final MessageBytes body = mimeMessage.getStoredBody();
+            if (null != body) {
+                return body;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not access stored message " + uid, e);
         }
+        return getContent().getBody();
+    }
+
+    public Flags getFlags() {
+        return getStoredFlags().toFlags();
+    }
+
+    public boolean isSet(Flags.Flag flag) {
+        return getStoredFlags().contains(flag);
     }
 
     public void setFlag(Flags.Flag flag, boolean value) {
-        try {
-            getMimeMessage().setFlag(flag, value);
-        } catch (MessagingException e) {
-            throw new IllegalStateException("Can not set flag " + flag + " to " + value, e);
-        }
+        setFlags(new Flags(flag), value);
     }
 
     public void setFlags(Flags flags, boolean value) {
-        try {
-            getMimeMessage().setFlags(flags, value);
-        } catch (MessagingException e) {
-            throw new IllegalStateException("Can not set flags " + flags + " to " + value, e);
+        final StoredFlags storedFlags = getStoredFlags();
+        final int previousFlags;
+        final int currentFlags;
+        final SystemFlagsListener listener;
+        synchronized (storedFlags) {
+            previousFlags = storedFlags.getSystemFlags();
+            if (value) {
+                storedFlags.add(flags);
+            } else {
+                storedFlags.remove(flags);
+            }
+            currentFlags = storedFlags.getSystemFlags();
+            listener = systemFlagsListener;
+        }
+        // Outside of lock on flags, as listener locks the folder messages
+        if (null != listener && previousFlags != currentFlags) {
+            listener.systemFlagsChanged(this, previousFlags, currentFlags);
+        }
+    }
+
+    /**
+     * Gets the flags instance, which gets shared with a parsed mime message.
+     *
+     * @return the flags, not a copy.
+     */
+    StoredFlags getStoredFlags() {
+        return mimeMessage.storedFlags;
+    }
+
+    /**
+     * Sets the listener for changes of system flags, atomically with getting the current system flags.
+     *
+     * @param listener the listener, or null when removed from the folder.
+     * @return the current system flag bits.
+     */
+    int setSystemFlagsListener(SystemFlagsListener listener) {
+        final StoredFlags flags = getStoredFlags();
+        synchronized (flags) {
+            systemFlagsListener = listener;
+            return flags.getSystemFlags();
         }
     }
 
@@ -120,6 +333,20 @@ public class StoredMessage {
         return uid;
     }
 
+    /**
+     * Gets the mod-sequence, changing whenever the message gets stored or its flags change.
+     *
+     * @return the mod-sequence.
+     * @see <a href="https://tools.ietf.org/html/rfc7162">RFC 7162 - CONDSTORE</a>
+     */
+    public long getModSeq() {
+        return modSeq;
+    }
+
+    void setModSeq(long modSeq) {
+        this.modSeq = modSeq;
+    }
+
     public MailMessageAttributes getAttributes() {
         return attributes;
     }
@@ -6,7 +6,9 @@ package com.icegreen.greenmail.store;
 
 import com.icegreen.greenmail.foedus.util.MsgRangeFilter;
 import com.icegreen.greenmail.imap.commands.IdRange;
+import jakarta.mail.Flags;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -23,23 +25,129 @@ public interface StoredMessageCollection extends Iterable<StoredMessage> {
 
     int getFirstUnseen();
 
+    /**
+     * @return the number of messages without seen flag.
+     */
+    default int getUnseenCount() {
+        int count = 0;
+        for (StoredMessage message : getMessages()) {
+            if (!message.isSet(Flags.Flag.SEEN)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the recent messages.
+     *
+     * @param reset true, if the recent flag should be removed from the messages.
+     * @return the number of messages with recent flag, before resetting.
+     */
+    default int getRecentCount(boolean reset) {
+        int count = 0;
+        for (StoredMessage message : getMessages()) {
+            if (message.isSet(Flags.Flag.RECENT)) {
+                count++;
+                if (reset) {
+                    message.setFlag(Flags.Flag.RECENT, false);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of messages with deleted flag.
+     */
+    default int getDeletedCount() {
+        int count = 0;
+        for (StoredMessage message : getMessages()) {
+            if (message.isSet(Flags.Flag.DELETED)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     int getMsn(long uid) throws FolderException;
 
+    /**
+     * Gets a message by UID.
+     *
+     * @param uid the message UID.
+     * @return the message, or null if not found.
+     */
+    default StoredMessage getByUid(long uid) {
+        for (StoredMessage message : getMessages()) {
+            if (message.getUid() == uid) {
+                return message;
+            }
+        }
+        return null;
+    }
+
     List<StoredMessage> getMessages(MsgRangeFilter range);
 
     List<StoredMessage> getMessages();
 
+    /**
+     * Resolves a message set in a single ordered pass.
+     * <p>
+     * A range ending with wildcard '*' always includes the last message, as per
+     * https://tools.ietf.org/html/rfc3501#section-6.4.8 .
+     *
+     * @param idSet   the message set.
+     * @param useUids true, if message set contains UIDs instead of MSNs.
+     * @return matching messages with MSN, in ascending order.
+     */
+    default List<SequencedMessage> getMessages(IdRange[] idSet, boolean useUids) {
+        final List<StoredMessage> messages = getMessages();
+        final boolean wildcard = IdRange.containsUid(idSet, IdRange.VALUE_WILDCARD);
+        final List<SequencedMessage> ret = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            final StoredMessage message = messages.get(i);
+            final int msn = i + 1;
+            if (IdRange.containsUid(idSet, useUids ? message.getUid() : msn)
+                || (wildcard && msn == messages.size())) {
+                ret.add(new SequencedMessage(msn, message));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the messages with all given flags set and all other given flags unset.
+     *
+     * @param setFlags   the flags which must be set.
+     * @param unsetFlags the flags which must not be set.
+     * @return matching messages with MSN, in ascending order.
+     */
+    default List<SequencedMessage> getMessagesWithFlags(Flags setFlags, Flags unsetFlags) {
+        final List<StoredMessage> messages = getMessages();
+        final List<SequencedMessage> ret = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            final StoredMessage message = messages.get(i);
+            final Flags flags = message.getFlags();
+            if (flags.contains(setFlags) && !StoredFlags.containsAny(flags, unsetFlags)) {
+                ret.add(new SequencedMessage(i + 1, message));
+            }
+        }
+        return ret;
+    }
+
     long[] getMessageUids();
 
-    void expunge(List<FolderListener> folderListeners);
+    List<StoredMessage> expunge(List<FolderListener> folderListeners);
 
     /**
      * Expunges all messages flagged deleted and with UID in given ranges.
      *
      * @param mailboxListeners folders to notify.
      * @param idRanges the UID message set ranges.
+     * @return the expunged messages.
      */
-    void expunge(List<FolderListener> mailboxListeners, IdRange[] idRanges);
+    List<StoredMessage> expunge(List<FolderListener> mailboxListeners, IdRange[] idRanges);
 
     StoredMessage get(int i);
 
@@ -0,0 +1,405 @@
+/* -------------------------------------------------------------------
+ * This software is released under the Apache license 2.0
+ * -------------------------------------------------------------------
+ */
+package com.icegreen.greenmail.store;
+
+import com.icegreen.greenmail.foedus.util.MsgRangeFilter;
+import com.icegreen.greenmail.imap.commands.IdRange;
+import com.icegreen.greenmail.store.StoredMessage.SystemFlagsListener;
+import jakarta.mail.Flags;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Stores messages in UID order, using a sorted primitive UID column for lookups.
+ * <p>
+ * UID to MSN and get by UID use binary search, MSN to message is a direct index access.
+ * Removed messages are first marked as tombstones and compacted in a single pass
+ * before the next MSN based access, so that removing many messages does not shift the arrays repeatedly.
+ * <p>
+ * Stored messages report changes of their system flags, which are kept as one bitmap of slots per flag.
+ * Searching or expunging by flags uses the bitmaps instead of visiting the messages.
+ * Unseen, recent and deleted messages are also counted incrementally.
+ * Finding the first unseen message starts at a cursor, before which all messages are known to be seen.
+ * <p>
+ * All access synchronizes on this collection instance.
+ */
+public class UidIndexedStoredMessageCollection implements StoredMessageCollection, SystemFlagsListener {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int BITMAP_FLAGS = StoredFlags.USER - 1; // All system flags except USER
+
+    private long[] uids = new long[INITIAL_CAPACITY];
+    private StoredMessage[] messages = new StoredMessage[INITIAL_CAPACITY];
+    private int length; // Used slots, including tombstones
+    private int tombstones;
+    private int unseenCount;
+    private int recentCount;
+    private int deletedCount;
+    private int firstUnseenCursor; // Slot, with all messages of previous slots seen
+    private BitSet[] flagSlots = newFlagSlots(); // By flag bit position, tombstones have no bits set
+
+    @Override
+    public synchronized int size() {
+        return length - tombstones;
+    }
+
+    @Override
+    public synchronized void add(StoredMessage storedMessage) {
+        compact();
+        ensureCapacity(length + 1);
+        final long uid = storedMessage.getUid();
+        final int idx;
+        if (0 == length || uids[length - 1] < uid) {
+            // Common case, as UIDs are strictly ascending
+            idx = length;
+        } else {
+            final int found = Arrays.binarySearch(uids, 0, length, uid);
+            if (found >= 0) {
+                throw new IllegalArgumentException("Message for uid " + uid + " already exists");
+            }
+            idx = -(found + 1);
+            System.arraycopy(uids, idx, uids, idx + 1, length - idx);
+            System.arraycopy(messages, idx, messages, idx + 1, length - idx);
+            for (BitSet slots : flagSlots) {
+                for (int i = length - 1; i >= idx; i--) {
+                    slots.set(i + 1, slots.get(i));
+                }
+                slots.clear(idx);
+            }
+            if (idx < firstUnseenCursor) {
+                firstUnseenCursor++;
+            }
+        }
+        uids[idx] = uid;
+        messages[idx] = storedMessage;
+        length++;
+
+        final int systemFlags = storedMessage.setSystemFlagsListener(this);
+        count(systemFlags, 1);
+        flipFlagSlots(idx, systemFlags);
+        if ((systemFlags & StoredFlags.SEEN) == 0 && idx < firstUnseenCursor) {
+            firstUnseenCursor = idx;
+        }
+    }
+
+    @Override
+    public synchronized StoredMessage remove(long uid) {
+        final int idx = indexOf(uid);
+        if (idx < 0) {
+            throw new IllegalArgumentException("No message for uid " + uid + " exists");
+        }
+        final StoredMessage message = messages[idx];
+        removeSlot(idx);
+        return message;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (int i = 0; i < length; i++) {
+            if (null != messages[i]) {
+                count(messages[i].setSystemFlagsListener(null), -1);
+            }
+        }
+        uids = new long[INITIAL_CAPACITY];
+        messages = new StoredMessage[INITIAL_CAPACITY];
+        length = 0;
+        tombstones = 0;
+        firstUnseenCursor = 0;
+        flagSlots = newFlagSlots();
+    }
+
+    @Override
+    public synchronized int getFirstUnseen() {
+        if (0 == unseenCount) {
+            return -1;
+        }
+        compact();
+        final int idx = slotsOf(StoredFlags.SEEN).nextClearBit(firstUnseenCursor);
+        firstUnseenCursor = Math.min(idx, length);
+        return idx < length ? idx + 1 : -1;
+    }
+
+    @Override
+    public synchronized int getUnseenCount() {
+        return unseenCount;
+    }
+
+    @Override
+    public synchronized int getRecentCount(boolean reset) {
+        final int count = recentCount;
+        if (reset && count > 0) {
+            final BitSet recent = slotsOf(StoredFlags.RECENT);
+            final Flags recentFlag = new Flags(Flags.Flag.RECENT);
+            for (int i = recent.nextSetBit(0); i >= 0; i = recent.nextSetBit(i + 1)) {
+                messages[i].setFlags(recentFlag, false); // Updates count and bitmap via listener
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized int getDeletedCount() {
+        return deletedCount;
+    }
+
+    @Override
+    public synchronized List<SequencedMessage> getMessagesWithFlags(Flags setFlags, Flags unsetFlags) {
+        final int set = StoredFlags.systemFlagsOf(setFlags);
+        final int unset = StoredFlags.systemFlagsOf(unsetFlags);
+        if (((set | unset) & ~BITMAP_FLAGS) != 0 ||
+            setFlags.getUserFlags().length > 0 || unsetFlags.getUserFlags().length > 0) {
+            return StoredMessageCollection.super.getMessagesWithFlags(setFlags, unsetFlags);
+        }
+        compact();
+        final BitSet matching = new BitSet(length);
+        matching.set(0, length);
+        for (int i = 0; i < flagSlots.length; i++) {
+            if ((set & (1 << i)) != 0) {
+                matching.and(flagSlots[i]);
+            }
+            if ((unset & (1 << i)) != 0) {
+                matching.andNot(flagSlots[i]);
+            }
+        }
+        final List<SequencedMessage> ret = new ArrayList<>(matching.cardinality());
+        for (int i = matching.nextSetBit(0); i >= 0; i = matching.nextSetBit(i + 1)) {
+            ret.add(new SequencedMessage(i + 1, messages[i]));
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized void systemFlagsChanged(StoredMessage message, int previousFlags, int flags) {
+        // Message might have been removed meanwhile, but then removal already counted the changed flags
+        count(previousFlags, -1);
+        count(flags, 1);
+        final int idx = indexOf(message.getUid());
+        if (idx >= 0 && messages[idx] == message) {
+            // Flipping changed bits, as concurrent changes of a message might be reported out of order
+            flipFlagSlots(idx, previousFlags ^ flags);
+            if ((flags & StoredFlags.SEEN) == 0 && idx < firstUnseenCursor) {
+                firstUnseenCursor = idx;
+            }
+        }
+    }
+
+    @Override
+    public synchronized int getMsn(long uid) throws FolderException {
+        compact();
+        final int idx = Arrays.binarySearch(uids, 0, length, uid);
+        if (idx < 0) {
+            throw new FolderException("No such message of uid " + uid + ".");
+        }
+        return idx + 1;
+    }
+
+    @Override
+    public synchronized StoredMessage getByUid(long uid) {
+        final int idx = indexOf(uid);
+        return idx < 0 ? null : messages[idx];
+    }
+
+    @Override
+    public synchronized List<StoredMessage> getMessages(MsgRangeFilter range) {
+        compact();
+        List<StoredMessage> ret = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            if (range.includes(i + 1)) {
+                ret.add(messages[i]);
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized List<StoredMessage> getMessages() {
+        compact();
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(messages, length)));
+    }
+
+    @Override
+    public synchronized List<SequencedMessage> getMessages(IdRange[] idSet, boolean useUids) {
+        compact();
+        if (0 == length) {
+            return Collections.emptyList();
+        }
+        // Mark matching slots, coalescing overlapping and unordered ranges
+        final BitSet slots = new BitSet(length);
+        for (IdRange range : idSet) {
+            if (range.getHighVal() == IdRange.VALUE_WILDCARD) {
+                slots.set(length - 1);
+            }
+            final int from;
+            final int to; // Exclusive
+            if (useUids) {
+                from = insertionPoint(range.getLowVal());
+                to = range.getHighVal() == IdRange.VALUE_WILDCARD ? length : insertionPoint(range.getHighVal() + 1);
+            } else {
+                from = (int) Math.max(0L, Math.min(length, range.getLowVal() - 1));
+                to = (int) Math.max(0L, Math.min(length, range.getHighVal()));
+            }
+            if (from < to) {
+                slots.set(from, to);
+            }
+        }
+        final List<SequencedMessage> ret = new ArrayList<>(slots.cardinality());
+        for (int i = slots.nextSetBit(0); i >= 0; i = slots.nextSetBit(i + 1)) {
+            ret.add(new SequencedMessage(i + 1, messages[i]));
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized long[] getMessageUids() {
+        compact();
+        return Arrays.copyOf(uids, length);
+    }
+
+    @Override
+    public List<StoredMessage> expunge(List<FolderListener> folderListeners) {
+        return expunge(folderListeners, null);
+    }
+
+    @Override
+    public synchronized List<StoredMessage> expunge(List<FolderListener> folderListeners, IdRange[] idRanges) {
+        compact();
+        final ExpungedMessages expunged = new ExpungedMessages();
+        final BitSet deleted = slotsOf(StoredFlags.DELETED);
+        // Backwards, for reporting descending MSNs. Tombstones keep MSNs valid until compacting once.
+        for (int i = deleted.previousSetBit(length - 1); i >= 0; i = deleted.previousSetBit(i - 1)) {
+            final StoredMessage message = messages[i];
+            if (idRanges == null || IdRange.containsUid(idRanges, message.getUid())) {
+                removeSlot(i);
+                expunged.add(i + 1, message); // MSNs start counting at 1
+            }
+        }
+        compact();
+        expunged.notifyListeners(folderListeners);
+        return expunged.getMessages();
+    }
+
+    @Override
+    public synchronized StoredMessage get(int i) {
+        compact();
+        if (i < 0 || i >= length) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + length);
+        }
+        return messages[i];
+    }
+
+    @Override
+    public synchronized Iterator<StoredMessage> iterator() {
+        return getMessages().iterator();
+    }
+
+    /**
+     * Finds the slot of a live message.
+     *
+     * @param uid the message UID.
+     * @return the slot, or a negative value if no live message exists.
+     */
+    private int indexOf(long uid) {
+        final int idx = Arrays.binarySearch(uids, 0, length, uid);
+        return idx >= 0 && null != messages[idx] ? idx : -1;
+    }
+
+    /**
+     * Finds the slot of the first message with a UID greater or equal to given UID.
+     */
+    private int insertionPoint(long uid) {
+        final int idx = Arrays.binarySearch(uids, 0, length, uid);
+        return idx >= 0 ? idx : -(idx + 1);
+    }
+
+    /**
+     * Marks the slot as tombstone and stops tracking the flags of its message.
+     */
+    private void removeSlot(int idx) {
+        final StoredMessage message = messages[idx];
+        messages[idx] = null;
+        tombstones++;
+        count(message.setSystemFlagsListener(null), -1);
+        for (BitSet slots : flagSlots) {
+            slots.clear(idx);
+        }
+    }
+
+    private void count(int systemFlags, int delta) {
+        if ((systemFlags & StoredFlags.SEEN) == 0) {
+            unseenCount += delta;
+        }
+        if ((systemFlags & StoredFlags.RECENT) != 0) {
+            recentCount += delta;
+        }
+        if ((systemFlags & StoredFlags.DELETED) != 0) {
+            deletedCount += delta;
+        }
+    }
+
+    private void flipFlagSlots(int idx, int systemFlags) {
+        for (int i = 0; i < flagSlots.length; i++) {
+            if ((systemFlags & (1 << i)) != 0) {
+                flagSlots[i].flip(idx);
+            }
+        }
+    }
+
+    private BitSet slotsOf(int flag) {
+        return flagSlots[Integer.numberOfTrailingZeros(flag)];
+    }
+
+    private static BitSet[] newFlagSlots() {
+        final BitSet[] slots = new BitSet[Integer.bitCount(BITMAP_FLAGS)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new BitSet();
+        }
+        return slots;
+    }
+
+    /**
+     * Removes tombstones in a single pass.
+     */
+    private void compact() {
+        if (0 == tombstones) {
+            return;
+        }
+        int target = 0;
+        int cursor = -1;
+        for (int i = 0; i < length; i++) {
+            if (i == firstUnseenCursor) {
+                cursor = target;
+            }
+            if (null != messages[i]) {
+                if (i != target) {
+                    uids[target] = uids[i];
+                    messages[target] = messages[i];
+                    for (BitSet slots : flagSlots) {
+                        slots.set(target, slots.get(i));
+                    }
+                }
+                target++;
+            }
+        }
+        for (BitSet slots : flagSlots) {
+            slots.clear(target, length);
+        }
+        Arrays.fill(messages, target, length, null);
+        firstUnseenCursor = cursor < 0 ? target : cursor;
+        length = target;
+        tombstones = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > uids.length) {
+            final int newCapacity = Math.max(capacity, uids.length + (uids.length >> 1));
+            uids = Arrays.copyOf(uids, newCapacity);
+            messages = Arrays.copyOf(messages, newCapacity);
+        }
+    }
+}
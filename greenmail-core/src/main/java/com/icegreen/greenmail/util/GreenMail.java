@@ -30,8 +30,10 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -140,6 +142,7 @@ public class GreenMail extends ConfiguredGreenMail {
         }
         services.clear();
 
+        managers.getSmtpManager().stopAsyncDelivery();
         managers = new Managers();
     }
 
@@ -157,7 +160,13 @@ public class GreenMail extends ConfiguredGreenMail {
      */
     protected Map<String, AbstractServer> createServices(ServerSetup[] config, Managers mgr) {
         Map<String, AbstractServer> srvc = new HashMap<>();
-        for (ServerSetup setup : config) {
+        final GreenMailConfiguration configuration = getConfiguration();
+        for (ServerSetup serverSetup : config) {
+            ServerSetup setup = serverSetup;
+            if (null != configuration && null != configuration.getConnectionExecutor()
+                && null == setup.getConnectionExecutor()) {
+                setup = setup.connectionExecutor(configuration.getConnectionExecutor());
+            }
             if (srvc.containsKey(setup.getProtocol())) {
                 throw new IllegalArgumentException("Server '" + setup.getProtocol() + "' was found at least twice in setup config");
             }
@@ -218,20 +227,31 @@ public class GreenMail extends ConfiguredGreenMail {
     //~ Convenience Methods, often needed while testing ---------------------------------------------------------------
     @Override
     public boolean waitForIncomingEmail(long timeout, int emailCount) {
-        final CountDownLatch waitObject = getManagers().getSmtpManager().createAndAddNewWaitObject(emailCount);
+        final CompletableFuture<Void> future = awaitIncomingEmail(emailCount);
         final long endTime = System.currentTimeMillis() + timeout;
-        while (waitObject.getCount() > 0) {
-            final long waitTime = endTime - System.currentTimeMillis();
-            if (waitTime < 0L) {
-                return waitObject.getCount() == 0;
-            }
-            try {
-                waitObject.await(waitTime, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                // Continue loop, in case of pre-mature interruption
+        try {
+            while (!future.isDone()) {
+                final long waitTime = endTime - System.currentTimeMillis();
+                if (waitTime < 0L) {
+                    return future.isDone();
+                }
+                try {
+                    future.get(waitTime, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException | TimeoutException e) {
+                    // Continue loop, in case of pre-mature interruption or timeout before end time passed
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Can not wait for " + emailCount + " messages", e.getCause());
+                }
             }
+            return true;
+        } finally {
+            future.cancel(false); // Deregisters waiter on timeout
         }
-        return waitObject.getCount() == 0;
+    }
+
+    @Override
+    public CompletableFuture<Void> awaitIncomingEmail(int emailCount) {
+        return getManagers().getImapHostManager().getStore().awaitMessageCount(emailCount);
     }
 
     @Override
@@ -329,10 +349,7 @@ public class GreenMail extends ConfiguredGreenMail {
     public void purgeEmailFromAllMailboxes() throws FolderException {
         ImapHostManager imapHostManager = getManagers().getImapHostManager();
         InMemoryStore store = (InMemoryStore) imapHostManager.getStore();
-        Collection<MailFolder> mailboxes = store.listMailboxes("*");
-        for (MailFolder folder : mailboxes) {
-            folder.deleteAllMessages();
-        }
+        store.deleteAllMessages();
     }
 
     @Override
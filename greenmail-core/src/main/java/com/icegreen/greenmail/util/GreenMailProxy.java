@@ -3,6 +3,7 @@ package com.icegreen.greenmail.util;
 import com.icegreen.greenmail.Managers;
 import com.icegreen.greenmail.base.GreenMailOperations;
 import com.icegreen.greenmail.configuration.ConfiguredGreenMail;
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
 import com.icegreen.greenmail.imap.ImapServer;
 import com.icegreen.greenmail.pop3.Pop3Server;
 import com.icegreen.greenmail.smtp.SmtpServer;
@@ -14,6 +15,7 @@ import jakarta.mail.internet.MimeMessage;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -71,6 +73,11 @@ public abstract class GreenMailProxy extends ConfiguredGreenMail {
         return getGreenMail().waitForIncomingEmail(emailCount);
     }
 
+    @Override
+    public CompletableFuture<Void> awaitIncomingEmail(int emailCount) {
+        return getGreenMail().awaitIncomingEmail(emailCount);
+    }
+
     @Override
     public MimeMessage[] getReceivedMessages() {
         return getGreenMail().getReceivedMessages();
@@ -109,6 +116,12 @@ public abstract class GreenMailProxy extends ConfiguredGreenMail {
 
     @Override
     public void start() {
+        final GreenMailConfiguration configuration = getConfiguration();
+        if (null != configuration && null != configuration.getConnectionExecutor()) {
+            // Servers get created on start, so executor must be known up front
+            getGreenMail().withConfiguration(GreenMailConfiguration.aConfig()
+                .withConnectionExecutor(configuration.getConnectionExecutor()));
+        }
         getGreenMail().start();
         // Apply configuration that we store
         doConfigure();
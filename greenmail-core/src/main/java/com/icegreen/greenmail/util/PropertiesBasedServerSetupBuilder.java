@@ -40,6 +40,10 @@ import java.util.Properties;
  * <li>greenmail.startup.timeout : timeout for server startup (defaults to {@link ServerSetup#SERVER_STARTUP_TIMEOUT}<</li>
  * <li>greenmail.hostname : The default hostname to bind to, eg localhost or 0.0.0.0</li>
  * <li>greenmail.verbose : Enables verbose mode including debug output</li>
+ * <li>greenmail.connections.max : Maximum concurrent connections per server, see {@link ServerSetup#setMaxConnections(int)}</li>
+ * <li>greenmail.connections.rate : Maximum accepted connections per second and server, see {@link ServerSetup#setMaxAcceptRate(int)}</li>
+ * <li>greenmail.data.spill.threshold : Maximum size in bytes of received message data kept in memory,
+ * see {@link ServerSetup#setDataSpillThreshold(long)}</li>
  * </ul>
  */
 public class PropertiesBasedServerSetupBuilder {
@@ -48,6 +52,18 @@ public class PropertiesBasedServerSetupBuilder {
      * Enables verbose JavaMail debug output by setting JavaMail 'mail.debug' property.
      */
     public static final String GREENMAIL_VERBOSE = "greenmail.verbose";
+    /**
+     * Maximum concurrent connections per server.
+     */
+    public static final String GREENMAIL_CONNECTIONS_MAX = "greenmail.connections.max";
+    /**
+     * Maximum accepted connections per second and server.
+     */
+    public static final String GREENMAIL_CONNECTIONS_RATE = "greenmail.connections.rate";
+    /**
+     * Maximum size in bytes of received message data kept in memory.
+     */
+    public static final String GREENMAIL_DATA_SPILL_THRESHOLD = "greenmail.data.spill.threshold";
     public static final String GREENMAIL_SETUP_ALL = "greenmail.setup.all";
     public static final String GREENMAIL_SETUP_TEST_ALL = "greenmail.setup.test.all";
     public static final String GREENMAIL_HOSTNAME = "greenmail.hostname";
@@ -64,6 +80,9 @@ public class PropertiesBasedServerSetupBuilder {
         String hostname = properties.getProperty(GREENMAIL_HOSTNAME, ServerSetup.getLocalHostAddress());
         long serverStartupTimeout =
                 Long.parseLong(properties.getProperty("greenmail.startup.timeout", "-1"));
+        int maxConnections = Integer.parseInt(properties.getProperty(GREENMAIL_CONNECTIONS_MAX, "-1"));
+        int maxAcceptRate = Integer.parseInt(properties.getProperty(GREENMAIL_CONNECTIONS_RATE, "-1"));
+        long dataSpillThreshold = Long.parseLong(properties.getProperty(GREENMAIL_DATA_SPILL_THRESHOLD, "-1"));
 
         // Default setups
         addDefaultSetups(hostname, properties, serverSetups);
@@ -83,6 +102,15 @@ public class PropertiesBasedServerSetupBuilder {
             if (serverStartupTimeout >= 0L) {
                 setup.setServerStartupTimeout(serverStartupTimeout);
             }
+            if (maxConnections >= 0) {
+                setup.setMaxConnections(maxConnections);
+            }
+            if (maxAcceptRate >= 0) {
+                setup.setMaxAcceptRate(maxAcceptRate);
+            }
+            if (dataSpillThreshold >= 0L) {
+                setup.setDataSpillThreshold(dataSpillThreshold);
+            }
         }
 
         return serverSetups.toArray(new ServerSetup[0]);
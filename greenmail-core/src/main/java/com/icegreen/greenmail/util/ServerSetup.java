@@ -6,6 +6,8 @@ package com.icegreen.greenmail.util;
 
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
 /**
@@ -81,6 +83,10 @@ public class ServerSetup {
     private long connectionTimeout = -1L;
     private long writeTimeout = -1L;
     private boolean verbose = false;
+    private Supplier<ExecutorService> connectionExecutor;
+    private int maxConnections = -1;
+    private int maxAcceptRate = -1;
+    private long dataSpillThreshold = -1L;
 
     /**
      * Timeout when GreenMail starts a server, in milliseconds.
@@ -228,6 +234,113 @@ public class ServerSetup {
         return createCopy().setVerbose(verbose);
     }
 
+    public Supplier<ExecutorService> getConnectionExecutor() {
+        return connectionExecutor;
+    }
+
+    /**
+     * Configures the executor running the client connection handlers.
+     * <p>
+     * The supplier gets invoked once per server start, and the server shuts down the executor when stopping.
+     * Defaults to {@link com.icegreen.greenmail.server.ConnectionExecutors#newDefaultExecutor()},
+     * using virtual threads on JDK 21+.
+     *
+     * @param connectionExecutor supplier of a new executor, or null for default.
+     */
+    public ServerSetup setConnectionExecutor(Supplier<ExecutorService> connectionExecutor) {
+        this.connectionExecutor = connectionExecutor;
+        return this;
+    }
+
+    /**
+     * Creates a deep copy with the executor running the client connection handlers configured.
+     *
+     * @param connectionExecutor supplier of a new executor, or null for default.
+     * @return a deep copy with connection executor configured
+     * @see #setConnectionExecutor(Supplier)
+     */
+    public ServerSetup connectionExecutor(Supplier<ExecutorService> connectionExecutor) {
+        return createCopy().setConnectionExecutor(connectionExecutor);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Limits the number of concurrent client connections.
+     * <p>
+     * Connections exceeding the limit get refused with a protocol specific response, without creating a handler.
+     *
+     * @param maxConnections the maximum number of concurrent connections, or a negative value for unlimited.
+     */
+    public ServerSetup setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /**
+     * Creates a deep copy with maximum concurrent connections configured.
+     *
+     * @param maxConnections the maximum number of concurrent connections, or a negative value for unlimited.
+     * @return a deep copy with maximum concurrent connections configured
+     */
+    public ServerSetup maxConnections(int maxConnections) {
+        return createCopy().setMaxConnections(maxConnections);
+    }
+
+    public int getMaxAcceptRate() {
+        return maxAcceptRate;
+    }
+
+    /**
+     * Limits the rate of accepted client connections.
+     * <p>
+     * Connections exceeding the rate get refused with a protocol specific response, without creating a handler.
+     *
+     * @param maxAcceptRate the maximum number of accepted connections per second, or a negative value for unlimited.
+     */
+    public ServerSetup setMaxAcceptRate(int maxAcceptRate) {
+        this.maxAcceptRate = maxAcceptRate;
+        return this;
+    }
+
+    /**
+     * Creates a deep copy with maximum accept rate configured.
+     *
+     * @param maxAcceptRate the maximum number of accepted connections per second, or a negative value for unlimited.
+     * @return a deep copy with maximum accept rate configured
+     */
+    public ServerSetup maxAcceptRate(int maxAcceptRate) {
+        return createCopy().setMaxAcceptRate(maxAcceptRate);
+    }
+
+    public long getDataSpillThreshold() {
+        return dataSpillThreshold;
+    }
+
+    /**
+     * Limits the size of received message data kept in memory while receiving it, e.g. for SMTP DATA.
+     * <p>
+     * Larger message data gets spilled to a temporary file, which is removed after delivery.
+     *
+     * @param dataSpillThreshold the maximum size in bytes kept in memory, or a negative value for unlimited.
+     */
+    public ServerSetup setDataSpillThreshold(long dataSpillThreshold) {
+        this.dataSpillThreshold = dataSpillThreshold;
+        return this;
+    }
+
+    /**
+     * Creates a deep copy with data spill threshold configured.
+     *
+     * @param dataSpillThreshold the maximum size in bytes kept in memory, or a negative value for unlimited.
+     * @return a deep copy with data spill threshold configured
+     */
+    public ServerSetup dataSpillThreshold(long dataSpillThreshold) {
+        return createCopy().setDataSpillThreshold(dataSpillThreshold);
+    }
+
     /**
      * Sets the server startup timeout in milliseconds.
      *
@@ -332,6 +445,10 @@ public class ServerSetup {
             connectionTimeout == that.connectionTimeout &&
             writeTimeout == that.writeTimeout &&
             verbose == that.verbose &&
+            Objects.equals(connectionExecutor, that.connectionExecutor) &&
+            maxConnections == that.maxConnections &&
+            maxAcceptRate == that.maxAcceptRate &&
+            dataSpillThreshold == that.dataSpillThreshold &&
             serverStartupTimeout == that.serverStartupTimeout &&
             bindAddress.equals(that.bindAddress) &&
             protocol.equals(that.protocol) &&
@@ -340,7 +457,8 @@ public class ServerSetup {
 
     @Override
     public int hashCode() {
-        return Objects.hash(port, bindAddress, protocol, readTimeout, connectionTimeout, writeTimeout, verbose, serverStartupTimeout, mailSessionProperties);
+        return Objects.hash(port, bindAddress, protocol, readTimeout, connectionTimeout, writeTimeout, verbose, connectionExecutor,
+            maxConnections, maxAcceptRate, dataSpillThreshold, serverStartupTimeout, mailSessionProperties);
     }
 
     @Override
@@ -353,6 +471,10 @@ public class ServerSetup {
             ", connectionTimeout=" + connectionTimeout +
             ", writeTimeout=" + writeTimeout +
             ", verbose=" + verbose +
+            ", connectionExecutor=" + connectionExecutor +
+            ", maxConnections=" + maxConnections +
+            ", maxAcceptRate=" + maxAcceptRate +
+            ", dataSpillThreshold=" + dataSpillThreshold +
             ", serverStartupTimeout=" + serverStartupTimeout +
             ", mailProperties=" + mailSessionProperties +
             '}';
@@ -393,6 +515,10 @@ public class ServerSetup {
         setup.setReadTimeout(getReadTimeout());
         setup.setWriteTimeout(getWriteTimeout());
         setup.setVerbose(isVerbose());
+        setup.setConnectionExecutor(getConnectionExecutor());
+        setup.setMaxConnections(getMaxConnections());
+        setup.setMaxAcceptRate(getMaxAcceptRate());
+        setup.setDataSpillThreshold(getDataSpillThreshold());
         setup.mailSessionProperties.putAll(mailSessionProperties);
 
         return setup;
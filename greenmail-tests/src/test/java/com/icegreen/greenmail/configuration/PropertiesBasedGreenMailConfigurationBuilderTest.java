@@ -1,5 +1,6 @@
 package com.icegreen.greenmail.configuration;
 
+import com.icegreen.greenmail.smtp.DeliveryBackpressure;
 import org.junit.jupiter.api.Test;
 
 import java.util.Properties;
@@ -63,6 +64,35 @@ class PropertiesBasedGreenMailConfigurationBuilderTest {
         assertThat(config.isSieveIgnoreDetailEnabled()).isFalse();
     }
 
+    @Test
+    void testBuildWithRawMessageStorage() {
+        Properties props = createPropertiesFor(PropertiesBasedGreenMailConfigurationBuilder.GREENMAIL_STORE_RAW, "true");
+        GreenMailConfiguration config = new PropertiesBasedGreenMailConfigurationBuilder().build(props);
+
+        assertThat(config).isNotNull();
+        assertThat(config.isRawMessageStorageEnabled()).isTrue();
+    }
+
+    @Test
+    void testBuildWithImapCompression() {
+        Properties props = createPropertiesFor(PropertiesBasedGreenMailConfigurationBuilder.GREENMAIL_IMAP_COMPRESS, "");
+        GreenMailConfiguration config = new PropertiesBasedGreenMailConfigurationBuilder().build(props);
+
+        assertThat(config.isImapCompressionEnabled()).isTrue();
+        assertThat(new GreenMailConfiguration().isImapCompressionEnabled()).isFalse();
+    }
+
+    @Test
+    void testBuildWithAsyncDelivery() {
+        Properties props = createPropertiesFor(PropertiesBasedGreenMailConfigurationBuilder.GREENMAIL_DELIVERY_WORKERS, "4");
+        props.setProperty(PropertiesBasedGreenMailConfigurationBuilder.GREENMAIL_DELIVERY_BACKPRESSURE, "reject");
+        GreenMailConfiguration config = new PropertiesBasedGreenMailConfigurationBuilder().build(props);
+
+        assertThat(config.getAsyncDeliveryWorkers()).isEqualTo(4);
+        assertThat(config.getAsyncDeliveryQueueCapacity()).isEqualTo(1000);
+        assertThat(config.getDeliveryBackpressure()).isEqualTo(DeliveryBackpressure.REJECT);
+    }
+
     @Test
     void testBuildWithPreloadDir() {
         final String preloadDir = "/preload";
@@ -0,0 +1,51 @@
+package com.icegreen.greenmail.imap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class ImapRequestLineReaderTest {
+    @Test
+    void testWordSpanningBufferWindow() throws ProtocolException {
+        ImapRequestLineReader reader = createReader("a1 UID FETCH 1:5,7,10:*\r\n", 4);
+
+        assertThat(reader.consumeWordChars(c -> true)).isEqualTo("a1");
+        assertThat(reader.nextWordChar()).isEqualTo('U');
+        assertThat(reader.consumeWordChars(c -> true)).isEqualTo("UID");
+        reader.nextWordChar();
+        assertThat(reader.consumeWordChars(Character::isUpperCase)).isEqualTo("FETCH");
+        reader.nextWordChar();
+        assertThat(reader.consumeWordChars(c -> true)).isEqualTo("1:5,7,10:*");
+        reader.eol();
+        reader.consume();
+        assertThatThrownBy(reader::nextChar).isInstanceOf(ProtocolException.class);
+    }
+
+    @Test
+    void testLiteralAndPipelinedCommand() throws ProtocolException {
+        ImapRequestLineReader reader = createReader("{5}\r\nhello\r\na2 NOOP\r\n", 8);
+        assertThat(reader.consumeWordChars(c -> c != '}')).isEqualTo("{5");
+        reader.consumeLine();
+
+        byte[] literal = new byte[5];
+        reader.read(literal);
+        assertThat(new String(literal, StandardCharsets.US_ASCII)).isEqualTo("hello");
+        reader.eol();
+        reader.consume();
+
+        // Next command is read from the same buffer window
+        assertThat(reader.consumeWordChars(c -> true)).isEqualTo("a2");
+        reader.nextWordChar();
+        assertThat(reader.consumeWordChars(c -> true)).isEqualTo("NOOP");
+    }
+
+    private ImapRequestLineReader createReader(String input, int bufferSize) {
+        return new ImapRequestLineReader(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)),
+            new ByteArrayOutputStream(), bufferSize);
+    }
+}
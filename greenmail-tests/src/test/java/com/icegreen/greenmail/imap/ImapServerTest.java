@@ -8,8 +8,20 @@ import static com.icegreen.greenmail.util.GreenMailUtil.createTextEmail;
 import static jakarta.mail.Flags.Flag.DELETED;
 import static org.assertj.core.api.Assertions.*;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.eclipse.angus.mail.imap.AppendUID;
 import org.eclipse.angus.mail.imap.IMAPFolder;
@@ -834,4 +846,235 @@ class ImapServerTest {
             assertThat(msg.getSubject()).isEqualTo(email.getSubject());
         }
     }
+
+    @Test
+    @Timeout(10)
+    void testPipelinedCommands() throws Exception {
+        greenMail.setUser("pipelined@localhost", "pipelined", "pwd");
+        GreenMailUtil.sendTextEmail("pipelined@localhost", "from@localhost", "subject", "body",
+            greenMail.getSmtp().getServerSetup());
+
+        try (Socket socket = new Socket(greenMail.getImap().getBindTo(), greenMail.getImap().getPort())) {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            assertThat(reader.readLine()).startsWith("* OK IMAP4rev1 Server GreenMail");
+
+            // Send all commands at once, without waiting for responses
+            OutputStream out = socket.getOutputStream();
+            out.write(("a1 LOGIN pipelined pwd\r\n" +
+                "a2 SELECT INBOX\r\n" +
+                "a3 FETCH 1 (UID FLAGS)\r\n" +
+                "a4 NOOP\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            List<String> taggedResponses = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null && !line.startsWith("a4 ")) {
+                if (!line.startsWith("* ")) {
+                    taggedResponses.add(line);
+                }
+            }
+            taggedResponses.add(line);
+            assertThat(taggedResponses).hasSize(4);
+            assertThat(taggedResponses.get(0)).startsWith("a1 OK");
+            assertThat(taggedResponses.get(1)).startsWith("a2 OK");
+            assertThat(taggedResponses.get(2)).startsWith("a3 OK");
+            assertThat(taggedResponses.get(3)).startsWith("a4 OK");
+        }
+    }
+
+    @Test
+    void testCondstoreAndQresync() throws Exception {
+        greenMail.setUser("qresync@localhost", "qresync", "pwd");
+        for (int i = 0; i < 3; i++) {
+            GreenMailUtil.sendTextEmail("qresync@localhost", "from@localhost", "subject" + i, "body",
+                greenMail.getSmtp().getServerSetup());
+        }
+
+        try (Socket socket = new Socket(greenMail.getImap().getBindTo(), greenMail.getImap().getPort())) {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream out = socket.getOutputStream();
+            assertThat(reader.readLine()).startsWith("* OK IMAP4rev1 Server GreenMail");
+
+            assertThat(sendCommand(reader, out, "a1 CAPABILITY")).anyMatch(l -> l.contains(" CONDSTORE QRESYNC"));
+            sendCommand(reader, out, "a2 LOGIN qresync pwd");
+            assertThat(sendCommand(reader, out, "a3 ENABLE QRESYNC")).contains("* ENABLED QRESYNC");
+
+            List<String> select = sendCommand(reader, out, "a4 SELECT INBOX");
+            String highestModSeq = extract(select, "\\* OK \\[HIGHESTMODSEQ (\\d+)\\].*");
+            String uidValidity = extract(select, "\\* OK \\[UIDVALIDITY (\\d+)\\].*");
+            List<String> uids = new ArrayList<>();
+            for (String line : sendCommand(reader, out, "a5 UID FETCH 1:* (UID)")) {
+                if (line.startsWith("* ")) {
+                    uids.add(line.replaceAll(".*UID (\\d+).*", "$1"));
+                }
+            }
+            assertThat(uids).hasSize(3);
+
+            // Silent conditional store reports mod-sequences
+            List<String> store = sendCommand(reader, out,
+                "a6 UID STORE 1:* (UNCHANGEDSINCE " + highestModSeq + ") +FLAGS.SILENT (\\Seen)");
+            assertThat(store.stream().filter(l -> l.matches("\\* \\d+ FETCH \\(UID \\d+ MODSEQ \\(\\d+\\)\\)")))
+                .hasSize(3);
+            assertThat(store.get(store.size() - 1)).isEqualTo("a6 OK STORE completed.");
+            // Includes UID with QRESYNC enabled, even for non-UID STORE
+            store = sendCommand(reader, out, "a6b STORE 1 (UNCHANGEDSINCE 999999999) +FLAGS.SILENT (\\Answered)");
+            assertThat(store).anyMatch(l -> l.matches("\\* 1 FETCH \\(UID " + uids.get(0) + " MODSEQ \\(\\d+\\)\\)"));
+
+            // Modified since given mod-sequence
+            store = sendCommand(reader, out, "a7 UID STORE " + uids.get(0) + " (UNCHANGEDSINCE " + highestModSeq
+                + ") +FLAGS (\\Flagged)");
+            assertThat(store.get(store.size() - 1)).startsWith("a7 OK [MODIFIED " + uids.get(0) + "]");
+
+            sendCommand(reader, out, "a8 UID STORE " + uids.get(1) + " +FLAGS.SILENT (\\Deleted)");
+            assertThat(sendCommand(reader, out, "a9 EXPUNGE")).contains("* VANISHED " + uids.get(1));
+
+            List<String> fetch = sendCommand(reader, out,
+                "a10 UID FETCH 1:* (FLAGS) (CHANGEDSINCE " + highestModSeq + " VANISHED)");
+            assertThat(fetch).contains("* VANISHED (EARLIER) " + uids.get(1));
+            assertThat(fetch.stream().filter(l -> l.contains(" FETCH ") && l.contains("MODSEQ"))).hasSize(2);
+
+            List<String> reselect = sendCommand(reader, out,
+                "a11 SELECT INBOX (QRESYNC (" + uidValidity + " " + highestModSeq + "))");
+            assertThat(reselect.get(0)).isEqualTo("* OK [CLOSED]");
+            assertThat(reselect).contains("* VANISHED (EARLIER) " + uids.get(1));
+            assertThat(reselect.stream().filter(l -> l.contains(" FETCH (UID "))).hasSize(2);
+
+            assertThat(sendCommand(reader, out, "a12 STATUS INBOX (HIGHESTMODSEQ)"))
+                .anyMatch(l -> l.matches("\\* STATUS \"INBOX\" \\(HIGHESTMODSEQ \\d+\\)"));
+        }
+    }
+
+    @Test
+    void testExtendedSearchAndSavedResult() throws Exception {
+        greenMail.setUser("esearch@localhost", "esearch", "pwd");
+        for (int i = 0; i < 5; i++) {
+            GreenMailUtil.sendTextEmail("esearch@localhost", "from@localhost", "subject" + (i % 2), "body",
+                greenMail.getSmtp().getServerSetup());
+        }
+
+        try (Socket socket = new Socket(greenMail.getImap().getBindTo(), greenMail.getImap().getPort())) {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream out = socket.getOutputStream();
+            assertThat(reader.readLine()).startsWith("* OK IMAP4rev1 Server GreenMail");
+
+            sendCommand(reader, out, "a1 LOGIN esearch pwd");
+            sendCommand(reader, out, "a2 SELECT INBOX");
+
+            assertThat(sendCommand(reader, out, "a3 SEARCH RETURN (MIN MAX COUNT ALL) SUBJECT subject0"))
+                .containsExactly("* ESEARCH (TAG \"a3\") MIN 1 MAX 5 COUNT 3 ALL 1,3,5", "a3 OK SEARCH completed.");
+            assertThat(sendCommand(reader, out, "a4 SEARCH RETURN () 2:4"))
+                .containsExactly("* ESEARCH (TAG \"a4\") ALL 2:4", "a4 OK SEARCH completed.");
+            assertThat(sendCommand(reader, out, "a5 SEARCH RETURN (COUNT) SUBJECT nomatch"))
+                .containsExactly("* ESEARCH (TAG \"a5\") COUNT 0", "a5 OK SEARCH completed.");
+            // Classic SEARCH is unchanged
+            assertThat(sendCommand(reader, out, "a6 SEARCH SUBJECT subject1"))
+                .containsExactly("* SEARCH 2 4", "a6 OK SEARCH completed.");
+
+            // SAVE only returns no ESEARCH response
+            assertThat(sendCommand(reader, out, "a7 SEARCH RETURN (SAVE) SUBJECT subject1"))
+                .containsExactly("a7 OK SEARCH completed.");
+            assertThat(sendCommand(reader, out, "a8 SEARCH $"))
+                .containsExactly("* SEARCH 2 4", "a8 OK SEARCH completed.");
+            assertThat(sendCommand(reader, out, "a9 FETCH $ (FLAGS)"))
+                .filteredOn(l -> l.startsWith("* ")).hasSize(2);
+            sendCommand(reader, out, "a10 STORE $ +FLAGS.SILENT (\\Deleted)");
+            assertThat(sendCommand(reader, out, "a11 SEARCH RETURN (ALL) DELETED"))
+                .containsExactly("* ESEARCH (TAG \"a11\") ALL 2,4", "a11 OK SEARCH completed.");
+            assertThat(sendCommand(reader, out, "a12 UID SEARCH RETURN (COUNT) UID $"))
+                .containsExactly("* ESEARCH (TAG \"a12\") UID COUNT 2", "a12 OK SEARCH completed.");
+        }
+    }
+
+    @Test
+    void testMultiAppendWithNonSynchronizingLiterals() throws Exception {
+        greenMail.setUser("multiappend@localhost", "multiappend", "pwd");
+        String message = "Subject: multi\r\n\r\nbody\r\n";
+        int size = message.length();
+
+        try (Socket socket = new Socket(greenMail.getImap().getBindTo(), greenMail.getImap().getPort())) {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream out = socket.getOutputStream();
+            assertThat(reader.readLine()).startsWith("* OK IMAP4rev1 Server GreenMail");
+
+            assertThat(sendCommand(reader, out, "a1 CAPABILITY")).anyMatch(l -> l.contains(" MULTIAPPEND "));
+            sendCommand(reader, out, "a2 LOGIN multiappend pwd");
+            String uidValidity = extract(sendCommand(reader, out, "a3 STATUS INBOX (UIDVALIDITY)"),
+                ".*UIDVALIDITY (\\d+).*");
+
+            // Three messages in one command, without waiting for command continuation requests
+            List<String> append = sendCommand(reader, out, "a4 APPEND INBOX (\\Seen) {" + size + "+}\r\n" + message
+                + " {" + size + "+}\r\n" + message
+                + " (\\Flagged) \"01-Jan-2020 10:00:00 +0000\" {" + size + "+}\r\n" + message);
+            assertThat(append).containsExactly("a4 OK [APPENDUID " + uidValidity + " 1:3] APPEND completed.");
+
+            assertThat(sendCommand(reader, out, "a5 SELECT INBOX")).contains("* 3 EXISTS");
+            assertThat(sendCommand(reader, out, "a6 FETCH 1:3 (FLAGS)"))
+                .contains("* 1 FETCH (FLAGS (\\Seen))", "* 2 FETCH (FLAGS ())", "* 3 FETCH (FLAGS (\\Flagged))");
+        }
+    }
+
+    @Test
+    void testCompressDeflate() throws Exception {
+        greenMail.setUser("compress@localhost", "compress", "pwd");
+        GreenMailUtil.sendTextEmail("compress@localhost", "from@localhost", "subject", "compressed body",
+            greenMail.getSmtp().getServerSetup());
+
+        try (Socket socket = new Socket(greenMail.getImap().getBindTo(), greenMail.getImap().getPort())) {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream out = socket.getOutputStream();
+            assertThat(reader.readLine()).startsWith("* OK IMAP4rev1 Server GreenMail");
+
+            assertThat(sendCommand(reader, out, "a0 CAPABILITY")).noneMatch(l -> l.contains(" COMPRESS=DEFLATE"));
+            greenMail.getManagers().getImapHostManager().setCompressionSupported(true);
+            assertThat(sendCommand(reader, out, "a1 CAPABILITY")).anyMatch(l -> l.contains(" COMPRESS=DEFLATE"));
+            sendCommand(reader, out, "a2 LOGIN compress pwd");
+            assertThat(sendCommand(reader, out, "a3 COMPRESS DEFLATE")).containsExactly("a3 OK COMPRESS completed.");
+
+            // Reader must not block for more input than the inflater reports as available (always 1)
+            InputStream inflating = new InflaterInputStream(socket.getInputStream(), new Inflater(true)) {
+                @Override
+                public int available() {
+                    return 0;
+                }
+            };
+            BufferedReader compressedReader = new BufferedReader(new InputStreamReader(inflating, StandardCharsets.US_ASCII));
+            OutputStream compressedOut = new DeflaterOutputStream(socket.getOutputStream(),
+                new Deflater(Deflater.DEFAULT_COMPRESSION, true), true);
+            sendCommand(compressedReader, compressedOut, "a4 SELECT INBOX");
+            assertThat(sendCommand(compressedReader, compressedOut, "a5 FETCH 1 (BODY[TEXT])"))
+                .contains("compressed body)", "a5 OK FETCH completed.");
+            assertThat(sendCommand(compressedReader, compressedOut, "a6 COMPRESS DEFLATE"))
+                .containsExactly("a6 NO [COMPRESSIONACTIVE] COMPRESS failed. DEFLATE active via COMPRESS");
+            assertThat(sendCommand(compressedReader, compressedOut, "a7 LOGOUT"))
+                .contains("a7 OK LOGOUT completed.");
+        }
+    }
+
+    private static List<String> sendCommand(BufferedReader reader, OutputStream out, String command)
+        throws Exception {
+        out.write((command + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        String tag = command.substring(0, command.indexOf(' ') + 1);
+        List<String> lines = new ArrayList<>();
+        String line;
+        do {
+            line = reader.readLine();
+            lines.add(line);
+        } while (null != line && !line.startsWith(tag));
+        return lines;
+    }
+
+    private static String extract(List<String> lines, String regex) {
+        for (String line : lines) {
+            if (line.matches(regex)) {
+                return line.replaceAll(regex, "$1");
+            }
+        }
+        throw new AssertionError("No match for " + regex + " in " + lines);
+    }
 }
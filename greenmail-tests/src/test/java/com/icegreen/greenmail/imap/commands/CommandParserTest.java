@@ -1,7 +1,13 @@
 package com.icegreen.greenmail.imap.commands;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.icegreen.greenmail.imap.ImapRequestLineReader;
+import com.icegreen.greenmail.imap.ProtocolException;
 import org.junit.jupiter.api.Test;
 
 class CommandParserTest {
@@ -11,4 +17,33 @@ class CommandParserTest {
         assertThat(CommandParser.isCrOrLf('\r')).isTrue();
         assertThat(CommandParser.isCrOrLf('\t')).isFalse();
     }
+
+    @Test
+    void testParseIdRange() throws ProtocolException {
+        CommandParser parser = new CommandParser();
+        assertThat(parser.parseIdRange(createRequest("1:3,5,*:9,12:* FLAGS\r\n"))).containsExactly(
+            new IdRange(1, 3), new IdRange(5), new IdRange(9, IdRange.VALUE_WILDCARD),
+            new IdRange(12, IdRange.VALUE_WILDCARD));
+        assertThatThrownBy(() -> parser.parseIdRange(createRequest("1,,2\r\n")))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> parser.parseIdRange(createRequest("1:2:3\r\n")))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> parser.parseIdRange(createRequest("1:a\r\n")))
+            .isInstanceOf(ProtocolException.class);
+    }
+
+    @Test
+    void testAtomAndLiteral() throws ProtocolException {
+        CommandParser parser = new CommandParser();
+        ImapRequestLineReader request = createRequest("a001 LOGIN {4+}\r\nuser \"pass\"\r\n");
+        assertThat(parser.tag(request)).isEqualTo("a001");
+        assertThat(parser.atom(request)).isEqualTo("LOGIN");
+        assertThat(parser.astring(request)).isEqualTo("user");
+        assertThat(parser.astring(request)).isEqualTo("pass");
+        parser.endLine(request);
+    }
+
+    private static ImapRequestLineReader createRequest(String line) {
+        return new ImapRequestLineReader(new ByteArrayInputStream(line.getBytes(StandardCharsets.US_ASCII)), null);
+    }
 }
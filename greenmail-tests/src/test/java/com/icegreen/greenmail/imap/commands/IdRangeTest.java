@@ -60,4 +60,14 @@ class IdRangeTest {
         assertThat(new IdRange(2, 4)).isEqualTo(sequenceSet.get(1));
         assertThat(sequenceSet.get(2)).isEqualTo(new IdRange(8));
     }
+
+    @Test
+    void testMissingUids() {
+        long[] uids = {2, 3, 7};
+        assertThat(IdRange.idRangesToString(IdRange.missingUids(
+            new IdRange[]{new IdRange(1, VALUE_WILDCARD)}, uids, 9))).isEqualTo("1,4:6,8:9");
+        assertThat(IdRange.idRangesToString(IdRange.missingUids(
+            new IdRange[]{new IdRange(2, 3), new IdRange(5, 7)}, uids, 9))).isEqualTo("5:6");
+        assertThat(IdRange.missingUids(new IdRange[]{new IdRange(8, 20)}, uids, 7)).isEmpty();
+    }
 }
@@ -3,6 +3,8 @@ package com.icegreen.greenmail.imap.commands;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -166,6 +168,65 @@ class ImapProtocolTest {
         }
     }
 
+    @Test
+    void testFetchWholeMessageAsLiteral() throws MessagingException {
+        store.connect("foo@localhost", "pwd");
+        try {
+            IMAPFolder folder = (IMAPFolder) store.getFolder("INBOX");
+            folder.open(Folder.READ_ONLY);
+            final long uid = folder.getUID(folder.getMessage(1));
+            final ByteBuffer stored = greenMail.getManagers().getImapHostManager()
+                .getFolder(user, "INBOX").getMessage(uid).getContent().getBuffer();
+            final byte[] expected = new byte[stored.remaining()];
+            stored.get(expected);
+
+            Response[] ret = (Response[]) folder.doCommand(
+                protocol -> protocol.command("UID FETCH " + uid + " (RFC822.SIZE BODY.PEEK[] BODY.PEEK[]<10.20>)", null));
+            assertThat(ret[0]).isInstanceOf(FetchResponse.class);
+            FetchResponse fetchResponse = (FetchResponse) ret[0];
+            assertThat(fetchResponse.getItemCount()).isEqualTo(4); // RFC822.SIZE, UID and two BODY
+
+            Map<Integer, BODY> bodies = new HashMap<>(); // By origin, as order of items is not defined
+            for (int i = 0; i < fetchResponse.getItemCount(); i++) {
+                if (fetchResponse.getItem(i) instanceof BODY) {
+                    BODY body = (BODY) fetchResponse.getItem(i);
+                    bodies.put(body.getOrigin(), body);
+                }
+            }
+            assertThat(bodies.get(-1).getByteArray().getNewBytes()).isEqualTo(expected);
+            assertThat(bodies.get(10).getByteArray().getNewBytes()).isEqualTo(Arrays.copyOfRange(expected, 10, 30));
+            assertThat(ret[ret.length - 1].isOK()).isTrue();
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void testFetchPartialText() throws MessagingException {
+        store.connect("foo@localhost", "pwd");
+        try {
+            IMAPFolder folder = (IMAPFolder) store.getFolder("INBOX");
+            folder.open(Folder.READ_ONLY);
+            final long uid = folder.getUID(folder.getMessage(1));
+
+            Response[] ret = (Response[]) folder.doCommand(
+                protocol -> protocol.command("UID FETCH " + uid + " (BODY.PEEK[TEXT]<5.7>)", null));
+            FetchResponse fetchResponse = (FetchResponse) ret[0];
+            BODY body = fetchResponse.getItem(BODY.class);
+            assertThat(body.getOrigin()).isEqualTo(5);
+            assertThat(new String(body.getByteArray().getNewBytes())).isEqualTo("message");
+
+            // Range exceeding the body
+            ret = (Response[]) folder.doCommand(
+                protocol -> protocol.command("UID FETCH " + uid + " (BODY.PEEK[TEXT]<13.100>)", null));
+            fetchResponse = (FetchResponse) ret[0];
+            body = fetchResponse.getItem(BODY.class);
+            assertThat(new String(body.getByteArray().getNewBytes())).startsWith("content");
+        } finally {
+            store.close();
+        }
+    }
+
     @Test
     void testSearchSequenceSet() throws MessagingException {
         store.connect("foo@localhost", "pwd");
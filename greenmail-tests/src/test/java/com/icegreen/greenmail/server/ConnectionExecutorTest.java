@@ -0,0 +1,65 @@
+package com.icegreen.greenmail.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+/**
+ * Tests configuring the executor running client connection handlers.
+ */
+class ConnectionExecutorTest {
+    private static final AtomicInteger configuredThreads = new AtomicInteger();
+
+    @RegisterExtension
+    static final GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP)
+        .withConfiguration(GreenMailConfiguration.aConfig().withConnectionExecutor(
+            () -> Executors.newCachedThreadPool(r -> {
+                configuredThreads.incrementAndGet();
+                return new Thread(r);
+            })));
+
+    @Test
+    void testConfiguredExecutor() {
+        int threadsBefore = configuredThreads.get();
+        GreenMailUtil.sendTextEmailTest("to@localhost", "from@localhost", "subject", "body");
+        assertThat(greenMail.waitForIncomingEmail(5000, 1)).isTrue();
+        assertThat(configuredThreads.get()).isGreaterThan(threadsBefore);
+    }
+
+    @Test
+    void testServerSetupExecutorShutdownOnStop() {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        GreenMail server = new GreenMail(ServerSetupTest.SMTP.dynamicPort().connectionExecutor(() -> executor));
+        server.start();
+        try {
+            GreenMailUtil.sendTextEmail("to@localhost", "from@localhost", "subject", "body",
+                server.getSmtp().getServerSetup());
+            assertThat(server.getReceivedMessages()).hasSize(1);
+        } finally {
+            server.stop();
+        }
+        assertThat(executor.isShutdown()).isTrue();
+    }
+
+    @Test
+    void testDefaultExecutor() {
+        ExecutorService executor = ConnectionExecutors.newDefaultExecutor();
+        try {
+            assertThat(executor).isNotNull();
+            assertThat(executor.isShutdown()).isFalse();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
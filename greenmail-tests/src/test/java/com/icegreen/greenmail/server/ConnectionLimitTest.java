@@ -0,0 +1,84 @@
+package com.icegreen.greenmail.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+/**
+ * Tests connection admission control.
+ */
+class ConnectionLimitTest {
+    @RegisterExtension
+    static final GreenMailExtension greenMail = new GreenMailExtension(new ServerSetup[]{
+        ServerSetupTest.SMTP.maxConnections(1),
+        ServerSetupTest.POP3.maxConnections(1),
+        ServerSetupTest.IMAP.maxAcceptRate(2)
+    });
+
+    @Test
+    void testSmtpMaxConnections() throws IOException {
+        assertRefusedAfter(greenMail.getSmtp(), 1, "220 ", "421 ");
+    }
+
+    @Test
+    void testPop3MaxConnections() throws IOException {
+        assertRefusedAfter(greenMail.getPop3(), 1, "+OK ", "-ERR ");
+    }
+
+    @Test
+    void testImapMaxAcceptRate() throws IOException {
+        final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        final AbstractServer imap = greenMail.getImap();
+        imap.setClock(now::get); // Fixed time, so that the accept window never rolls over while connecting
+        assertRefusedAfter(imap, 2, "* OK ", "* BYE ");
+
+        // Admits again in next window
+        now.addAndGet(1000L);
+        final ServerSetup setup = imap.getServerSetup();
+        try (Socket socket = new Socket(setup.getBindAddress(), setup.getPort())) {
+            assertThat(readLine(socket)).startsWith("* OK ");
+        }
+        assertThat(imap.getRejectedConnectionCount()).isEqualTo(1L);
+    }
+
+    private void assertRefusedAfter(AbstractServer server, int admitted, String greeting, String refusal)
+        throws IOException {
+        assertThat(server.getRejectedConnectionCount()).isZero();
+        final ServerSetup setup = server.getServerSetup();
+        Socket[] sockets = new Socket[admitted];
+        try {
+            for (int i = 0; i < admitted; i++) {
+                sockets[i] = new Socket(setup.getBindAddress(), setup.getPort());
+                assertThat(readLine(sockets[i])).startsWith(greeting);
+            }
+            try (Socket refused = new Socket(setup.getBindAddress(), setup.getPort())) {
+                assertThat(readLine(refused)).startsWith(refusal);
+            }
+            assertThat(server.getRejectedConnectionCount()).isEqualTo(1L);
+        } finally {
+            for (Socket socket : sockets) {
+                if (null != socket) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    private String readLine(Socket socket) throws IOException {
+        socket.setSoTimeout(5000);
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))
+            .readLine();
+    }
+}
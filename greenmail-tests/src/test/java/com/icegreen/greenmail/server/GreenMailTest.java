@@ -3,12 +3,15 @@ package com.icegreen.greenmail.server;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
 import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.store.Store;
 import com.icegreen.greenmail.util.GreenMailUtil;
 import com.icegreen.greenmail.util.MimeMessageHelper;
 import com.icegreen.greenmail.util.ServerSetupTest;
@@ -37,6 +40,22 @@ class GreenMailTest {
         assertThat(finish - start).isGreaterThan(timePassedMin);
     }
 
+    @Test
+    void testAwaitIncomingEmail() throws Exception {
+        final Store store = greenMail.getManagers().getImapHostManager().getStore();
+        final CompletableFuture<Void> future = greenMail.awaitIncomingEmail(2);
+        GreenMailUtil.sendTextEmailTest("to@localhost", "from@localhost", "#1", "body");
+        assertThat(future).isNotDone();
+        GreenMailUtil.sendTextEmailTest("to@localhost", "from@localhost", "#2", "body");
+        future.get(5, TimeUnit.SECONDS);
+        assertThat(store.getMessageCount()).isEqualTo(2);
+        assertThat(greenMail.awaitIncomingEmail(2)).isDone();
+
+        greenMail.purgeEmailFromAllMailboxes();
+        assertThat(store.getMessageCount()).isZero();
+        assertThat(greenMail.awaitIncomingEmail(1)).isNotDone();
+    }
+
     @Test
     void getReceivedMessagesForDomainLowerCaseRecipientAddress() {
         final String to = "to@localhost";
@@ -0,0 +1,87 @@
+package com.icegreen.greenmail.smtp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.user.MessageDeliveryHandler;
+import com.icegreen.greenmail.user.UserManager;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+/**
+ * Tests delivering SMTP messages via the asynchronous delivery queue.
+ */
+class AsyncDeliveryTest {
+    @Test
+    void testConcurrentAsyncDelivery() throws Exception {
+        GreenMail greenMail = new GreenMail(ServerSetupTest.SMTP.dynamicPort())
+            .withConfiguration(GreenMailConfiguration.aConfig().withAsyncDelivery(2, 100, DeliveryBackpressure.BLOCK));
+        greenMail.start();
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            assertThat(greenMail.getManagers().getSmtpManager().isAsyncDelivery()).isTrue();
+            final ServerSetup setup = greenMail.getSmtp().getServerSetup();
+            List<Future<?>> sent = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                final int id = i;
+                sent.add(clients.submit(() -> GreenMailUtil.sendTextEmail("to" + id + "@localhost",
+                    "from@localhost", "subject " + id, "body", setup)));
+            }
+            for (Future<?> future : sent) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            assertThat(greenMail.waitForIncomingEmail(5000, 20)).isTrue();
+            assertThat(greenMail.getReceivedMessages()).hasSize(20);
+        } finally {
+            clients.shutdown();
+            greenMail.stop();
+        }
+    }
+
+    @Test
+    void testRejectWhenQueueFull() throws Exception {
+        GreenMail greenMail = new GreenMail(ServerSetupTest.SMTP.dynamicPort())
+            .withConfiguration(GreenMailConfiguration.aConfig().withAsyncDelivery(1, 1, DeliveryBackpressure.REJECT));
+        greenMail.start();
+        final CountDownLatch blockDelivery = new CountDownLatch(1);
+        try {
+            final UserManager userManager = greenMail.getUserManager();
+            final MessageDeliveryHandler handler = userManager.getMessageDeliveryHandler();
+            userManager.setMessageDeliveryHandler((msg, mailAddress) -> {
+                try {
+                    blockDelivery.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return handler.handle(msg, mailAddress);
+            });
+
+            final ServerSetup setup = greenMail.getSmtp().getServerSetup();
+            GreenMailUtil.sendTextEmail("to@localhost", "from@localhost", "in delivery", "body", setup);
+            GreenMailUtil.sendTextEmail("to@localhost", "from@localhost", "queued", "body", setup);
+            assertThatThrownBy(() ->
+                GreenMailUtil.sendTextEmail("to@localhost", "from@localhost", "rejected", "body", setup))
+                .hasStackTraceContaining("452");
+
+            blockDelivery.countDown();
+            assertThat(greenMail.waitForIncomingEmail(5000, 2)).isTrue();
+            assertThat(greenMail.getReceivedMessages()).hasSize(2);
+        } finally {
+            blockDelivery.countDown();
+            greenMail.stop();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.icegreen.greenmail.smtp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Tests buffering SMTP DATA, including spilling to a temporary file.
+ */
+class SmtpDataBufferTest {
+    @RegisterExtension
+    static final GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP.dataSpillThreshold(1024))
+        .withConfiguration(GreenMailConfiguration.aConfig().withRawMessageStorage());
+
+    @Test
+    void testInMemory() throws IOException {
+        try (SmtpDataBuffer buffer = new SmtpDataBuffer(-1)) {
+            byte[] content = createContent(100_000);
+            buffer.write(content);
+            assertThat(buffer.isSpilled()).isFalse();
+            assertThat(buffer.size()).isEqualTo(content.length);
+            assertThat(buffer.toByteArray()).isEqualTo(content);
+            try (InputStream is = buffer.getInputStream()) {
+                assertThat(is).hasBinaryContent(content);
+            }
+        }
+    }
+
+    @Test
+    void testSpillToFile() throws IOException {
+        final SmtpDataBuffer buffer = new SmtpDataBuffer(10);
+        byte[] content = createContent(1000);
+        for (int i = 0; i < 5; i++) {
+            buffer.write(content[i]);
+        }
+        assertThat(buffer.isSpilled()).isFalse();
+        buffer.write(content, 5, content.length - 5);
+        assertThat(buffer.isSpilled()).isTrue();
+        assertThat(buffer.size()).isEqualTo(content.length);
+        assertThat(buffer.toByteArray()).isEqualTo(content);
+        assertThat(buffer.getInputStream()).hasBinaryContent(content);
+
+        buffer.close();
+        assertThatThrownBy(buffer::getInputStream).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testReceiveSpilledMessage() throws MessagingException, IOException {
+        assertReceiveSpilledMessage();
+    }
+
+    @Test
+    void testReceiveSpilledMessageWithEagerStorage() throws MessagingException, IOException {
+        greenMail.getManagers().getImapHostManager().getStore().setRawMessageStorage(false);
+        assertReceiveSpilledMessage();
+    }
+
+    private void assertReceiveSpilledMessage() throws MessagingException, IOException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            body.append(". line ").append(i).append("\r\n"); // Dot stuffed by client
+        }
+        GreenMailUtil.sendTextEmailTest("to@localhost", "from@localhost", "spilled", body.toString());
+        assertThat(greenMail.waitForIncomingEmail(5000, 1)).isTrue();
+
+        MimeMessage message = greenMail.getReceivedMessages()[0];
+        assertThat(message.getSubject()).isEqualTo("spilled");
+        assertThat(GreenMailUtil.getBody(message).trim()).isEqualTo(body.toString().trim());
+    }
+
+    private byte[] createContent(int size) {
+        StringBuilder buf = new StringBuilder(size);
+        for (int i = 0; buf.length() < size; i++) {
+            buf.append("line ").append(i).append("\r\n");
+        }
+        return buf.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+}
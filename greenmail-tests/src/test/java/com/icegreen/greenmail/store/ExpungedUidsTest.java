@@ -0,0 +1,33 @@
+package com.icegreen.greenmail.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class ExpungedUidsTest {
+    @Test
+    void testSince() {
+        ExpungedUids expungedUids = new ExpungedUids();
+        expungedUids.add(5, 10);
+        expungedUids.add(3, 10);
+        expungedUids.add(7, 12);
+
+        assertThat(expungedUids.since(9)).containsExactly(3, 5, 7);
+        assertThat(expungedUids.since(10)).containsExactly(7);
+        assertThat(expungedUids.since(12)).isEmpty();
+    }
+
+    @Test
+    void testForgetsOldestBeyondMaxSize() {
+        ExpungedUids expungedUids = new ExpungedUids(4);
+        for (int i = 1; i <= 5; i++) {
+            expungedUids.add(i, i);
+        }
+
+        // Mod-sequences 1 and 2 are forgotten, so that older changes can not be resynchronized
+        assertThat(expungedUids.since(0)).isNull();
+        assertThat(expungedUids.since(1)).isNull();
+        assertThat(expungedUids.since(2)).containsExactly(3, 4, 5);
+        assertThat(expungedUids.since(4)).containsExactly(5);
+    }
+}
@@ -0,0 +1,142 @@
+package com.icegreen.greenmail.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.Flags;
+import jakarta.mail.internet.MimeMessage;
+
+class InMemoryStoreTest {
+
+    @Test
+    void testLookupIgnoringCase() throws FolderException {
+        InMemoryStore store = new InMemoryStore();
+        MailFolder userRoot = store.createMailbox(store.getMailbox("#mail"), "user1", false);
+        MailFolder inbox = store.createMailbox(userRoot, "INBOX", true);
+
+        assertThat(store.getMailbox("#mail.user1.INBOX")).isSameAs(inbox);
+        assertThat(store.getMailbox("#MAIL.User1.inbox")).isSameAs(inbox);
+        assertThat(store.getMailbox(userRoot, "Inbox")).isSameAs(inbox);
+        assertThat(store.getMailbox("#mail.user1.Drafts")).isNull();
+        assertThatThrownBy(() -> store.createMailbox(userRoot, "inbox", true))
+            .isInstanceOf(IllegalStateException.class);
+
+        store.createMailbox(userRoot, "Drafts", true);
+        assertThat(store.getChildren(userRoot)).extracting(MailFolder::getName).containsExactly("INBOX", "Drafts");
+    }
+
+    @Test
+    void testRenameAndDeleteInvalidateLookup() throws FolderException {
+        InMemoryStore store = new InMemoryStore();
+        MailFolder userRoot = store.createMailbox(store.getMailbox("#mail"), "user1", false);
+        MailFolder inbox = store.createMailbox(userRoot, "INBOX", true);
+        MailFolder foo = store.createMailbox(inbox, "foo", true);
+        MailFolder fooChild = store.createMailbox(foo, "child", true);
+        assertThat(store.getMailbox("#mail.user1.INBOX.foo.child")).isSameAs(fooChild);
+
+        store.renameMailbox(foo, "INBOX.bar");
+        assertThat(store.getMailbox("#mail.user1.INBOX.foo")).isNull();
+        assertThat(store.getMailbox("#mail.user1.INBOX.foo.child")).isNull();
+        assertThat(store.getMailbox("#mail.user1.INBOX.bar")).isSameAs(foo);
+        assertThat(store.getMailbox("#mail.user1.INBOX.bar.child")).isSameAs(fooChild);
+        assertThat(fooChild.getFullName()).isEqualTo("#mail.user1.INBOX.bar.child");
+
+        store.deleteMailbox(fooChild);
+        assertThat(store.getMailbox("#mail.user1.INBOX.bar.child")).isNull();
+        assertThat(store.getMailbox("#mail.user1.INBOX.bar")).isSameAs(foo);
+    }
+
+    @Test
+    void testRenameIntoParentWithChildOfOldName() throws FolderException {
+        InMemoryStore store = new InMemoryStore();
+        MailFolder userRoot = store.createMailbox(store.getMailbox("#mail"), "user1", false);
+        MailFolder inbox = store.createMailbox(userRoot, "INBOX", true);
+        MailFolder a = store.createMailbox(inbox, "a", true);
+        MailFolder b = store.createMailbox(inbox, "b", true);
+        MailFolder ax = store.createMailbox(a, "x", true);
+        MailFolder bx = store.createMailbox(b, "x", true);
+
+        store.renameMailbox(ax, "INBOX.b.y");
+        assertThat(store.getMailbox("#mail.user1.INBOX.b.x")).isSameAs(bx);
+        assertThat(store.getMailbox("#mail.user1.INBOX.b.y")).isSameAs(ax);
+        assertThat(store.getMailbox("#mail.user1.INBOX.a.x")).isNull();
+        assertThat(store.getChildren(b)).extracting(MailFolder::getName).containsExactly("x", "y");
+        assertThat(store.getChildren(a)).isEmpty();
+
+        // Renaming onto an existing name fails and keeps both
+        assertThatThrownBy(() -> store.renameMailbox(ax, "INBOX.b.X")).isInstanceOf(FolderException.class);
+        assertThat(store.getMailbox("#mail.user1.INBOX.b.x")).isSameAs(bx);
+        assertThat(store.getMailbox("#mail.user1.INBOX.b.y")).isSameAs(ax);
+    }
+
+    @Test
+    void testKeywordsPerStoreKeepingSpelling() throws FolderException {
+        InMemoryStore store = new InMemoryStore();
+        MailFolder userRoot = store.createMailbox(store.getMailbox("#mail"), "user1", false);
+        HierarchicalFolder inbox = (HierarchicalFolder) store.createMailbox(userRoot, "INBOX", true);
+        long uid1 = inbox.appendMessage(createMessage(), new Flags("Foo"), new Date());
+        long uid2 = inbox.appendMessage(createMessage(), new Flags("FOO"), new Date());
+
+        assertThat(inbox.getMessage(uid1).getFlags().getUserFlags()).containsExactly("Foo");
+        assertThat(inbox.getMessage(uid2).getFlags().getUserFlags()).containsExactly("FOO");
+        assertThat(inbox.getMessage(uid2).getFlags().contains("foo")).isTrue();
+        assertThat(inbox.getKeywords().find("foo")).isNotNegative();
+        assertThat(new InMemoryStore().getMailbox("#mail")).isInstanceOfSatisfying(HierarchicalFolder.class,
+            root -> assertThat(root.getKeywords().find("foo")).isNegative());
+
+        store.deleteAllMessages();
+        assertThat(inbox.getMessageCount()).isZero();
+        assertThat(inbox.getKeywords().find("foo")).isNegative();
+    }
+
+    @Test
+    void testListMailboxesWithWildcardsAnywhere() throws FolderException {
+        InMemoryStore store = new InMemoryStore();
+        MailFolder mailRoot = store.getMailbox("#mail");
+        for (String user : new String[]{"user1", "user2"}) {
+            MailFolder userRoot = store.createMailbox(mailRoot, user, false);
+            MailFolder inbox = store.createMailbox(userRoot, "INBOX", true);
+            MailFolder foo = store.createMailbox(inbox, "foo", true);
+            store.createMailbox(foo, "bar", true);
+            store.createMailbox(inbox, "fun", true);
+        }
+
+        assertThat(names(store, "#mail.user1.*"))
+            .containsExactly("INBOX", "INBOX.foo", "INBOX.foo.bar", "INBOX.fun");
+        assertThat(names(store, "#mail.user1.%")).containsExactly("INBOX");
+        assertThat(names(store, "#mail.user1.INBOX.%")).containsExactly("INBOX.foo", "INBOX.fun");
+        assertThat(names(store, "#mail.user1.IN%.f%n")).containsExactly("INBOX.fun");
+        assertThat(names(store, "#mail.user1.*bar")).containsExactly("INBOX.foo.bar");
+        assertThat(names(store, "#mail.user1.*o*")).containsExactly("INBOX", "INBOX.foo", "INBOX.foo.bar", "INBOX.fun");
+        assertThat(names(store, "#mail.user1.%.%.b%")).containsExactly("INBOX.foo.bar");
+        assertThat(names(store, "#mail.user1.inbox.FOO")).containsExactly("INBOX.foo");
+        assertThat(names(store, "#mail.user1.INBOX.missing.*")).isEmpty();
+
+        // Across users
+        assertThat(store.listMailboxes("#mail.%.INBOX.foo")).extracting(MailFolder::getFullName)
+            .containsExactly("#mail.user1.INBOX.foo", "#mail.user2.INBOX.foo");
+        // Relative to user namespace, excluding the namespace itself
+        assertThat(store.listMailboxes("*")).hasSize(10);
+        assertThat(store.listMailboxes("%")).extracting(MailFolder::getName).containsExactly("user1", "user2");
+    }
+
+    private List<String> names(InMemoryStore store, String pattern) {
+        final String prefix = "#mail.user1.";
+        final List<String> names = new ArrayList<>();
+        store.listMailboxes(pattern, folder -> names.add(folder.getFullName().substring(prefix.length())));
+        return names;
+    }
+
+    private MimeMessage createMessage() {
+        return GreenMailUtil.createTextEmail("to@localhost", "from@localhost", "subject", "body",
+            ServerSetupTest.SMTP);
+    }
+}
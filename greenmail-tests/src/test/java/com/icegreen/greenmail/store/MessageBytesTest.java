@@ -0,0 +1,44 @@
+package com.icegreen.greenmail.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import jakarta.mail.util.SharedByteArrayInputStream;
+
+class MessageBytesTest {
+    private static final byte[] HEADER = "Subject: test\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BODY = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    void testConcatenationOfArrayAndStream() throws IOException {
+        MessageBytes bytes = MessageBytes.concat(MessageBytes.of(HEADER, 0, HEADER.length),
+            MessageBytes.of(new SharedByteArrayInputStream(BODY), BODY.length));
+        assertThat(bytes.getSize()).isEqualTo(HEADER.length + BODY.length);
+
+        assertThat(read(bytes, 0, bytes.getSize())).isEqualTo("Subject: test\r\n\r\n0123456789");
+        assertThat(read(bytes, 9, 4)).isEqualTo("test");
+        assertThat(read(bytes, HEADER.length - 2, 5)).isEqualTo("\r\n012");
+        assertThat(read(bytes, HEADER.length + 7, 3)).isEqualTo("789");
+        assertThat(read(bytes, bytes.getSize(), 0)).isEmpty();
+        assertThatThrownBy(() -> read(bytes, 5, bytes.getSize())).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void testContentBody() throws IOException {
+        MessageContent content = MessageContent.of("Subject: test\r\n\r\nbody".getBytes(StandardCharsets.US_ASCII));
+        assertThat(read(content, 0, 7)).isEqualTo("Subject");
+        assertThat(read(content.getBody(), 1, 3)).isEqualTo("ody");
+    }
+
+    private String read(MessageBytes bytes, int offset, int length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bytes.writeTo(out, offset, length);
+        return out.toString(StandardCharsets.US_ASCII.name());
+    }
+}
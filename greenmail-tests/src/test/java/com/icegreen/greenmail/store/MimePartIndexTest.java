@@ -0,0 +1,72 @@
+package com.icegreen.greenmail.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class MimePartIndexTest {
+    private static final String MESSAGE = "Subject: outer\r\n" +
+        "Content-Type: multipart/mixed; boundary=\"outer\"\r\n" +
+        "\r\n" +
+        "preamble\r\n" +
+        "--outer\r\n" +
+        "Content-Type: text/plain\r\n" +
+        "\r\n" +
+        "first part\r\n" +
+        "--outer\r\n" +
+        "Content-Type: multipart/alternative; boundary=inner\r\n" +
+        "\r\n" +
+        "--inner\r\n" +
+        "\r\n" +
+        "plain\r\n" +
+        "--inner\r\n" +
+        "Content-Type: text/html\r\n" +
+        "\r\n" +
+        "<b>html</b>\r\n" +
+        "--inner--\r\n" +
+        "--outer\r\n" +
+        "Content-Type: message/rfc822\r\n" +
+        "\r\n" +
+        "Subject: inner\r\n" +
+        "\r\n" +
+        "encapsulated\r\n" +
+        "--outer--\r\n" +
+        "epilogue\r\n";
+
+    @Test
+    void testSections() throws IOException {
+        MessageContent content = MessageContent.of(MESSAGE.getBytes(StandardCharsets.US_ASCII));
+
+        assertThat(section(content, "1")).isEqualTo("first part");
+        assertThat(section(content, "1.MIME")).isEqualTo("Content-Type: text/plain\r\n\r\n");
+        assertThat(section(content, "2.1")).isEqualTo("plain");
+        assertThat(section(content, "2.2")).isEqualTo("<b>html</b>");
+        assertThat(section(content, "2.2.MIME")).isEqualTo("Content-Type: text/html\r\n\r\n");
+        assertThat(section(content, "3")).isEqualTo("Subject: inner\r\n\r\nencapsulated");
+        assertThat(section(content, "3.HEADER")).isEqualTo("Subject: inner\r\n\r\n");
+        assertThat(section(content, "3.TEXT")).isEqualTo("encapsulated");
+        assertThat(section(content, "3.1")).isEqualTo("encapsulated");
+
+        assertThat(content.getSection("4")).isNull();
+        assertThat(content.getSection("1.1")).isNull();
+        assertThat(content.getSection("3.HEADER.FIELDS (Subject)")).isNull();
+    }
+
+    @Test
+    void testSinglePartMessage() throws IOException {
+        MessageContent content = MessageContent.of("Subject: single\r\n\r\nbody\r\n".getBytes(StandardCharsets.US_ASCII));
+        assertThat(section(content, "1")).isEqualTo("body\r\n");
+        assertThat(content.getSection("2")).isNull();
+    }
+
+    private String section(MessageContent content, String sectionSpecifier) throws IOException {
+        MessageBytes bytes = content.getSection(sectionSpecifier);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bytes.writeTo(out, 0, bytes.getSize());
+        return out.toString(StandardCharsets.US_ASCII.name());
+    }
+}
@@ -0,0 +1,177 @@
+package com.icegreen.greenmail.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.BodyPart;
+import jakarta.mail.Flags;
+import jakarta.mail.Folder;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Multipart;
+import jakarta.mail.Store;
+import jakarta.mail.internet.MailDateFormat;
+import jakarta.mail.internet.MimeMessage;
+
+class RawStoredMessageTest {
+    @RegisterExtension
+    static final GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP_IMAP)
+        .withConfiguration(GreenMailConfiguration.aConfig().withRawMessageStorage());
+
+    @Test
+    void testContentAndLazyMimeMessage() throws Exception {
+        RawStoredMessage message = createMessage(1);
+
+        ByteBuffer content = message.getContent().getBuffer();
+        assertThat(content.isReadOnly()).isTrue();
+        assertThat(content.remaining()).isEqualTo(message.getContent().getSize());
+        String raw = StandardCharsets.US_ASCII.decode(content).toString();
+        assertThat(raw.substring(message.getContent().getBodyOffset())).isEqualTo("body");
+        assertThat(raw).contains("Subject: subject 1");
+
+        MimeMessage mimeMessage = message.getMimeMessage();
+        assertThat(mimeMessage.getSubject()).isEqualTo("subject 1");
+        assertThat(((StoredMessage.UidAwareMimeMessage) mimeMessage).getUid()).isEqualTo(1L);
+        assertThat(message.getMimeMessage()).isSameAs(mimeMessage);
+        assertThat(message.getAttributes().getSize()).isEqualTo(4);
+    }
+
+    @Test
+    void testFlagsSharedWithMimeMessage() throws MessagingException {
+        RawStoredMessage message = createMessage(1);
+        message.setFlag(Flags.Flag.SEEN, true);
+        assertThat(message.getMimeMessage().isSet(Flags.Flag.SEEN)).isTrue();
+
+        message.getMimeMessage().setFlag(Flags.Flag.FLAGGED, true);
+        assertThat(message.isSet(Flags.Flag.FLAGGED)).isTrue();
+
+        StoredMessage copy = message.copy(2);
+        assertThat(copy.getUid()).isEqualTo(2L);
+        assertThat(((RawStoredMessage) copy).getContent()).isSameAs(message.getContent());
+        assertThat(copy.isSet(Flags.Flag.SEEN)).isTrue();
+        copy.setFlag(Flags.Flag.SEEN, false);
+        assertThat(message.isSet(Flags.Flag.SEEN)).isTrue();
+        assertThat(copy.getMimeMessage().getSubject()).isEqualTo("subject 1");
+    }
+
+    @Test
+    void testFindBodyOffset() {
+        assertThat(MessageContent.findBodyOffset("A: b\r\n\r\nbody".getBytes(StandardCharsets.US_ASCII))).isEqualTo(8);
+        assertThat(MessageContent.findBodyOffset("A: b\n\nbody".getBytes(StandardCharsets.US_ASCII))).isEqualTo(6);
+        assertThat(MessageContent.findBodyOffset("A: b\r\n".getBytes(StandardCharsets.US_ASCII))).isEqualTo(6);
+        // Empty header
+        assertThat(MessageContent.findBodyOffset("\r\nbody".getBytes(StandardCharsets.US_ASCII))).isEqualTo(2);
+        assertThat(MessageContent.findBodyOffset("\nbody".getBytes(StandardCharsets.US_ASCII))).isEqualTo(1);
+        MessageContent headerless = MessageContent.of("\r\nbody".getBytes(StandardCharsets.US_ASCII));
+        assertThat(headerless.getBody().getSize()).isEqualTo(4);
+    }
+
+    @Test
+    void testDeliverAndFetch() throws MessagingException {
+        assertThat(greenMail.getManagers().getImapHostManager().getStore().isRawMessageStorage()).isTrue();
+        GreenMailUser user = greenMail.setUser("to@localhost", "pwd");
+        GreenMailUtil.sendTextEmailTest("to@localhost", "from@localhost", "raw subject", "raw body");
+        assertThat(greenMail.waitForIncomingEmail(5000, 1)).isTrue();
+        assertThat(greenMail.getReceivedMessages()[0].getSubject()).isEqualTo("raw subject");
+
+        Store store = greenMail.getImap().createStore();
+        store.connect(user.getLogin(), user.getPassword());
+        try {
+            Folder inbox = store.getFolder("INBOX");
+            inbox.open(Folder.READ_WRITE);
+            Message message = inbox.getMessage(1);
+            assertThat(message.getSubject()).isEqualTo("raw subject");
+            assertThat(GreenMailUtil.getBody(message)).isEqualTo("raw body");
+            message.setFlag(Flags.Flag.FLAGGED, true);
+            inbox.close(false);
+        } finally {
+            store.close();
+        }
+        assertThat(greenMail.getReceivedMessages()[0].isSet(Flags.Flag.FLAGGED)).isTrue();
+    }
+
+    @Test
+    void testFetchIndexedSections() throws MessagingException, IOException {
+        GreenMailUser user = greenMail.setUser("parts@localhost", "pwd");
+        GreenMailUtil.sendAttachmentEmail("parts@localhost", "from@localhost", "parts", "text part",
+            "attached".getBytes(StandardCharsets.US_ASCII), "application/octet-stream", "file.bin", "file",
+            greenMail.getSmtp().getServerSetup());
+        assertThat(greenMail.waitForIncomingEmail(5000, 1)).isTrue();
+
+        Store store = greenMail.getImap().createStore();
+        store.connect(user.getLogin(), user.getPassword());
+        try {
+            Folder inbox = store.getFolder("INBOX");
+            inbox.open(Folder.READ_ONLY);
+            Multipart multipart = (Multipart) inbox.getMessage(1).getContent();
+            assertThat(multipart.getCount()).isEqualTo(2);
+            assertThat(multipart.getBodyPart(0).getContent()).isEqualTo("text part");
+            BodyPart attachment = multipart.getBodyPart(1);
+            assertThat(attachment.getFileName()).isEqualTo("file.bin");
+            assertThat(attachment.getInputStream()).hasBinaryContent("attached".getBytes(StandardCharsets.US_ASCII));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void testShareContentAcrossRecipients() throws MessagingException {
+        greenMail.setUser("to1@localhost", "pwd");
+        greenMail.setUser("to2@localhost", "pwd");
+        MimeMessage mimeMessage = GreenMailUtil.createTextEmail("to1@localhost", "from@localhost",
+            "shared subject", "shared body", greenMail.getSmtp().getServerSetup());
+        mimeMessage.addRecipients(Message.RecipientType.CC, "to2@localhost");
+        GreenMailUtil.sendMimeMessage(mimeMessage);
+        assertThat(greenMail.waitForIncomingEmail(5000, 2)).isTrue();
+
+        List<StoredMessage> messages = greenMail.getManagers().getImapHostManager().getAllMessages();
+        assertThat(messages).hasSize(2);
+        RawStoredMessage first = (RawStoredMessage) messages.get(0);
+        RawStoredMessage second = (RawStoredMessage) messages.get(1);
+        assertThat(first.getContent()).isSameAs(second.getContent());
+        assertThat(first.getAttributes().getEnvelope()).isEqualTo(second.getAttributes().getEnvelope());
+
+        // Flags stay per stored message
+        first.setFlag(Flags.Flag.SEEN, true);
+        assertThat(second.isSet(Flags.Flag.SEEN)).isFalse();
+        assertThat(second.getMimeMessage().getSubject()).isEqualTo("shared subject");
+    }
+
+    @Test
+    void testReceivedDatePerStoredMessage() {
+        MessageContent content = MessageContent.of(
+            "From: from@localhost\r\nSubject: undated\r\n\r\nbody".getBytes(StandardCharsets.US_ASCII));
+        Keywords keywords = new Keywords();
+        Date firstDate = new Date(1000000000000L);
+        Date secondDate = new Date(1500000000000L);
+        RawStoredMessage first = new RawStoredMessage(content, new Flags(), firstDate, 1, keywords);
+        RawStoredMessage second = new RawStoredMessage(content, new Flags(), secondDate, 2, keywords);
+
+        // Envelope date falls back to the received date of each stored message, as content has no Date header
+        assertThat(first.getAttributes().getEnvelope())
+            .startsWith("(\"" + new MailDateFormat().format(firstDate) + "\"");
+        assertThat(second.getAttributes().getEnvelope())
+            .startsWith("(\"" + new MailDateFormat().format(secondDate) + "\"");
+        assertThat(second.getAttributes().getReceivedDate()).isEqualTo(secondDate);
+        assertThat(first.copy(3).getAttributes().getEnvelope()).isEqualTo(first.getAttributes().getEnvelope());
+    }
+
+    private RawStoredMessage createMessage(long uid) {
+        MimeMessage message = GreenMailUtil.createTextEmail("to@localhost", "from@localhost",
+            "subject " + uid, "body", ServerSetupTest.SMTP);
+        return new RawStoredMessage(message, new Date(), uid);
+    }
+}
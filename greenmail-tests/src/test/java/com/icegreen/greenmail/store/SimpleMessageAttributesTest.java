@@ -0,0 +1,35 @@
+package com.icegreen.greenmail.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+
+class SimpleMessageAttributesTest {
+    @Test
+    void testEnvelopeAndBodyStructureAreCached() throws MessagingException {
+        MimeMessage message = MessageContent.of(("From: from@localhost\r\n" +
+            "To: to@localhost\r\n" +
+            "Subject: subject\r\n" +
+            "Message-ID: <\"quoted\\id\"@localhost>\r\n" +
+            "\r\n" +
+            "body").getBytes(StandardCharsets.US_ASCII)).toMimeMessage();
+        SimpleMessageAttributes attributes = new SimpleMessageAttributes(message, new Date());
+
+        byte[] envelope = attributes.getEnvelopeBytes();
+        assertThat(attributes.getEnvelopeBytes()).isSameAs(envelope);
+        assertThat(attributes.getEnvelope()).endsWith("\"<\\\"quoted\\\\id\\\"@localhost>\")");
+        // Escaping must not accumulate on repeated access
+        assertThat(attributes.getEnvelope()).isEqualTo(attributes.getEnvelope());
+
+        byte[] bodyStructure = attributes.getBodyStructureBytes(true);
+        assertThat(attributes.getBodyStructureBytes(true)).isSameAs(bodyStructure);
+        assertThat(attributes.getBodyStructureBytes(false)).isNotEqualTo(bodyStructure);
+        assertThat(attributes.getBodyStructure(false)).isEqualTo("(\"text\" \"plain\" NIL NIL NIL \"7BIT\" 4 1)");
+    }
+}
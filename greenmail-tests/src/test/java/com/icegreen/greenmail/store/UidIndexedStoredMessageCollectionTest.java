@@ -0,0 +1,263 @@
+package com.icegreen.greenmail.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.icegreen.greenmail.imap.commands.IdRange;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.Flags;
+import jakarta.mail.internet.MimeMessage;
+
+class UidIndexedStoredMessageCollectionTest {
+
+    @Test
+    void testLookupByUidAndMsn() throws FolderException {
+        UidIndexedStoredMessageCollection collection = createCollection(2, 4, 6, 8, 10);
+
+        assertThat(collection.size()).isEqualTo(5);
+        assertThat(collection.getMessageUids()).containsExactly(2, 4, 6, 8, 10);
+        assertThat(collection.getMsn(2)).isEqualTo(1);
+        assertThat(collection.getMsn(8)).isEqualTo(4);
+        assertThat(collection.get(4).getUid()).isEqualTo(10);
+        assertThat(collection.getByUid(6).getUid()).isEqualTo(6);
+        assertThat(collection.getByUid(7)).isNull();
+        assertThatThrownBy(() -> collection.getMsn(5)).isInstanceOf(FolderException.class);
+    }
+
+    @Test
+    void testAddOutOfOrder() {
+        UidIndexedStoredMessageCollection collection = createCollection(1, 5, 3);
+        assertThat(collection.getMessageUids()).containsExactly(1, 3, 5);
+        assertThatThrownBy(() -> collection.add(createMessage(3))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testRemoveCompactsTombstones() throws FolderException {
+        UidIndexedStoredMessageCollection collection = createCollection(1, 2, 3, 4, 5);
+
+        assertThat(collection.remove(2).getUid()).isEqualTo(2);
+        assertThat(collection.remove(4).getUid()).isEqualTo(4);
+        assertThat(collection.size()).isEqualTo(3);
+        assertThat(collection.getByUid(2)).isNull();
+        assertThatThrownBy(() -> collection.remove(2)).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(collection.getMsn(5)).isEqualTo(3);
+        assertThat(collection.getMessageUids()).containsExactly(1, 3, 5);
+
+        collection.add(createMessage(6));
+        assertThat(collection.getMsn(6)).isEqualTo(4);
+    }
+
+    @Test
+    void testResolveMessageSet() {
+        UidIndexedStoredMessageCollection collection = createCollection(2, 4, 6, 8, 10);
+
+        assertThat(collection.getMessages(new IdRange[]{new IdRange(4, 7), new IdRange(3, 5), new IdRange(10)}, true))
+            .extracting(SequencedMessage::getMsn, SequencedMessage::getUid)
+            .containsExactly(tuple(2, 4L), tuple(3, 6L), tuple(5, 10L));
+        assertThat(collection.getMessages(new IdRange[]{new IdRange(1, 4), new IdRange(2)}, false))
+            .extracting(SequencedMessage::getUid)
+            .containsExactly(2L, 4L, 6L, 8L);
+
+        // Wildcard always includes last message
+        assertThat(collection.getMessages(IdRange.parseRangeSequence("20:*").toArray(new IdRange[0]), true))
+            .extracting(SequencedMessage::getUid)
+            .containsExactly(10L);
+        assertThat(collection.getMessages(IdRange.parseRangeSequence("*").toArray(new IdRange[0]), false))
+            .extracting(SequencedMessage::getMsn)
+            .containsExactly(5);
+        assertThat(collection.getMessages(new IdRange[]{new IdRange(11, 20)}, true)).isEmpty();
+    }
+
+    @Test
+    void testExpunge() {
+        UidIndexedStoredMessageCollection collection = createCollection(1, 2, 3, 4, 5);
+        collection.get(1).setFlag(Flags.Flag.DELETED, true);
+        collection.get(3).setFlag(Flags.Flag.DELETED, true);
+        collection.get(4).setFlag(Flags.Flag.DELETED, true);
+
+        final List<Integer> expunged = new ArrayList<>();
+        List<FolderListener> listeners = Collections.synchronizedList(new ArrayList<>());
+        listeners.add(new FolderListener() {
+            @Override
+            public void expunged(int msn) {
+                expunged.add(msn);
+            }
+
+            @Override
+            public void added(int msn) {
+                // Not required
+            }
+
+            @Override
+            public void flagsUpdated(int msn, Flags flags, Long uid) {
+                // Not required
+            }
+
+            @Override
+            public void mailboxDeleted() {
+                // Not required
+            }
+        });
+
+        collection.expunge(listeners, new IdRange[]{new IdRange(1, 4)});
+        assertThat(expunged).containsExactly(4, 2);
+        assertThat(collection.getMessageUids()).containsExactly(1, 3, 5);
+
+        expunged.clear();
+        collection.expunge(listeners);
+        assertThat(expunged).containsExactly(3);
+        assertThat(collection.getMessageUids()).containsExactly(1, 3);
+    }
+
+    @Test
+    void testExpungeNotifiesOnceWithAllMessages() {
+        StoredMessageCollection listBased = new ListBasedStoredMessageCollection();
+        for (long uid = 1; uid <= 6; uid++) {
+            listBased.add(createMessage(uid));
+        }
+        for (StoredMessageCollection collection : Arrays.asList(createCollection(1, 2, 3, 4, 5, 6), listBased)) {
+            collection.get(0).setFlag(Flags.Flag.DELETED, true);
+            collection.get(2).setFlag(Flags.Flag.DELETED, true);
+            collection.get(3).setFlag(Flags.Flag.DELETED, true);
+
+            final List<int[]> notifiedMsns = new ArrayList<>();
+            final List<long[]> notifiedUids = new ArrayList<>();
+            List<FolderListener> listeners = Collections.synchronizedList(new ArrayList<>());
+            listeners.add(new FolderListener() {
+                @Override
+                public void expunged(int msn) {
+                    throw new IllegalStateException("Expected notification of all messages at once");
+                }
+
+                @Override
+                public void expunged(int[] msns, long[] uids) {
+                    notifiedMsns.add(msns);
+                    notifiedUids.add(uids);
+                }
+
+                @Override
+                public void added(int msn) {
+                    // Not required
+                }
+
+                @Override
+                public void flagsUpdated(int msn, Flags flags, Long uid) {
+                    // Not required
+                }
+
+                @Override
+                public void mailboxDeleted() {
+                    // Not required
+                }
+            });
+
+            assertThat(collection.expunge(listeners)).hasSize(3);
+            assertThat(notifiedMsns).hasSize(1);
+            assertThat(notifiedMsns.get(0)).containsExactly(4, 3, 1);
+            assertThat(notifiedUids.get(0)).containsExactly(4L, 3L, 1L);
+            assertThat(collection.getMessageUids()).containsExactly(2, 5, 6);
+
+            // Nothing to expunge, nothing to notify
+            collection.expunge(listeners);
+            assertThat(notifiedMsns).hasSize(1);
+        }
+    }
+
+    @Test
+    void testCountFlagsIncrementally() throws Exception {
+        UidIndexedStoredMessageCollection collection = createCollection(1, 2, 3, 4);
+        assertThat(collection.getUnseenCount()).isEqualTo(4);
+        assertThat(collection.getFirstUnseen()).isEqualTo(1);
+
+        collection.get(0).setFlag(Flags.Flag.SEEN, true);
+        collection.get(1).getMimeMessage().setFlag(Flags.Flag.SEEN, true); // Via mime message
+        collection.get(2).setFlags(new Flags(Flags.Flag.DELETED), true);
+        assertThat(collection.getUnseenCount()).isEqualTo(2);
+        assertThat(collection.getFirstUnseen()).isEqualTo(3);
+        assertThat(collection.getDeletedCount()).isEqualTo(1);
+
+        // Message becoming unseen again moves the cursor back
+        collection.get(0).setFlag(Flags.Flag.SEEN, false);
+        assertThat(collection.getFirstUnseen()).isEqualTo(1);
+        collection.get(0).setFlag(Flags.Flag.SEEN, true);
+
+        StoredMessage recent = createMessage(5);
+        recent.setFlag(Flags.Flag.RECENT, true);
+        collection.add(recent);
+        assertThat(collection.getRecentCount(true)).isEqualTo(1);
+        assertThat(collection.getRecentCount(false)).isZero();
+        assertThat(recent.isSet(Flags.Flag.RECENT)).isFalse();
+
+        collection.expunge(Collections.emptyList());
+        assertThat(collection.getDeletedCount()).isZero();
+        assertThat(collection.getUnseenCount()).isEqualTo(2);
+        assertThat(collection.getFirstUnseen()).isEqualTo(3); // uid 4
+
+        // Removed messages are no longer counted
+        StoredMessage removed = collection.remove(4);
+        removed.setFlag(Flags.Flag.SEEN, true);
+        assertThat(collection.getUnseenCount()).isEqualTo(1);
+        assertThat(collection.getFirstUnseen()).isEqualTo(3); // uid 5
+
+        collection.clear();
+        assertThat(collection.getUnseenCount()).isZero();
+        assertThat(collection.getFirstUnseen()).isEqualTo(-1);
+    }
+
+    @Test
+    void testFlagBitmaps() {
+        UidIndexedStoredMessageCollection collection = createCollection(1, 2, 3, 4, 5);
+        Flags seenAndFlagged = new Flags(Flags.Flag.SEEN);
+        seenAndFlagged.add(Flags.Flag.FLAGGED);
+        seenAndFlagged.add("Important");
+        collection.get(0).setFlags(seenAndFlagged, true);
+        collection.get(2).setFlag(Flags.Flag.SEEN, true);
+        collection.get(3).setFlags(new Flags(Flags.Flag.DELETED), true);
+
+        assertThat(collection.getMessagesWithFlags(new Flags(), new Flags(Flags.Flag.SEEN)))
+            .extracting(SequencedMessage::getMsn).containsExactly(2, 4, 5);
+        assertThat(collection.getMessagesWithFlags(seenAndFlagged, new Flags()))
+            .extracting(SequencedMessage::getUid).containsExactly(1L);
+        assertThat(collection.getMessagesWithFlags(new Flags(Flags.Flag.SEEN), new Flags(Flags.Flag.SEEN))).isEmpty();
+        assertThat(collection.get(0).getFlags().contains("important")).isTrue();
+
+        // Bitmaps follow compaction
+        collection.remove(2);
+        assertThat(collection.getMessagesWithFlags(new Flags(Flags.Flag.DELETED), new Flags()))
+            .extracting(SequencedMessage::getMsn, SequencedMessage::getUid).containsExactly(tuple(3, 4L));
+        assertThat(collection.expunge(Collections.emptyList())).extracting(StoredMessage::getUid).containsExactly(4L);
+        assertThat(collection.getMessagesWithFlags(new Flags(), new Flags(Flags.Flag.SEEN)))
+            .extracting(SequencedMessage::getUid).containsExactly(5L);
+
+        // Inserting before existing messages shifts the bitmaps
+        collection.add(createMessage(0));
+        assertThat(collection.getMessagesWithFlags(new Flags(Flags.Flag.FLAGGED), new Flags()))
+            .extracting(SequencedMessage::getMsn).containsExactly(2);
+        assertThat(collection.getFirstUnseen()).isEqualTo(1);
+    }
+
+    private UidIndexedStoredMessageCollection createCollection(long... uids) {
+        UidIndexedStoredMessageCollection collection = new UidIndexedStoredMessageCollection();
+        for (long uid : uids) {
+            collection.add(createMessage(uid));
+        }
+        return collection;
+    }
+
+    private StoredMessage createMessage(long uid) {
+        MimeMessage message = GreenMailUtil.createTextEmail("to@localhost", "from@localhost",
+            "subject " + uid, "body", ServerSetupTest.SMTP);
+        return new StoredMessage(message, new Date(), uid);
+    }
+}